@@ -11,8 +11,12 @@ package org.openmrs.module.adminui;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.BaseModuleActivator;
 import org.openmrs.module.ModuleActivator;
+import org.openmrs.module.adminui.account.AccountService;
+import org.openmrs.module.adminui.customdatatype.CustomDatatypeRegistry;
+import org.openmrs.module.adminui.location.AdminUiLocationService;
 
 /**
  * This class contains the logic that is run every time this module is either started or stopped.
@@ -32,6 +36,12 @@ public class AdminUiActivator extends BaseModuleActivator {
 	 * @see ModuleActivator#contextRefreshed()
 	 */
 	public void contextRefreshed() {
+		try {
+			Context.getRegisteredComponent("adminCustomDatatypeRegistry", CustomDatatypeRegistry.class).refresh();
+		}
+		catch (Exception e) {
+			log.error("Failed to look up the custom datatypes, they will be looked up when first needed", e);
+		}
 		log.info("adminui Module refreshed");
 	}
 	
@@ -46,6 +56,23 @@ public class AdminUiActivator extends BaseModuleActivator {
 	 * @see ModuleActivator#started()
 	 */
 	public void started() {
+		try {
+			Context.getService(AccountService.class).buildSearchIndex();
+		}
+		catch (Exception e) {
+			log.error("Failed to build the account search index, accounts will be searched in the database", e);
+		}
+		try {
+			// the advice keeps the paths up to date once they are built, they can be rebuilt from the
+			// location hierarchy page if locations were changed while the module was stopped
+			AdminUiLocationService locationService = Context.getService(AdminUiLocationService.class);
+			if (locationService.getLocationPathCount() == 0) {
+				locationService.rebuildLocationPaths();
+			}
+		}
+		catch (Exception e) {
+			log.error("Failed to build the location paths, the location tree queries fail until they are rebuilt", e);
+		}
 		log.info("adminui Module started");
 	}
 	
@@ -21,4 +21,14 @@ public class AdminUiConstants {
 	
 	public static final String PRIVILEGE_LEVEL_FULL_ROLE = ROLE_PREFIX_PRIVILEGE_LEVEL + "Full";
 	
+	public static final String GP_ACCOUNT_IMPORT_CHUNK_SIZE = "adminui.accountImport.chunkSize";
+	
+	public static final String GP_PASSWORD_HASHING_POOL_SIZE = "adminui.passwordHashing.poolSize";
+	
+	public static final String GP_PASSWORD_HASHING_QUEUE_SIZE = "adminui.passwordHashing.queueSize";
+	
+	public static final String GP_LOCATION_IMPORT_CHUNK_SIZE = "adminui.locationImport.chunkSize";
+	
+	public static final String GP_LOCATION_NEARBY_DISTANCE = "adminui.location.nearbyDistance";
+	
 }
@@ -0,0 +1,65 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui;
+
+import java.util.List;
+
+/**
+ * A single page of results together with the total number of rows matching the query the page
+ * was taken from
+ */
+public class PagedResult<T> {
+
+	public static final int DEFAULT_PAGE_SIZE = 10;
+
+	public static final int MAX_PAGE_SIZE = 100;
+
+	private final List<T> results;
+
+	private final long totalCount;
+
+	public PagedResult(List<T> results, long totalCount) {
+		this.results = results;
+		this.totalCount = totalCount;
+	}
+
+	/**
+	 * @return the rows in this page
+	 */
+	public List<T> getResults() {
+		return results;
+	}
+
+	/**
+	 * @return the number of rows matching the query across all pages
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Gets the number of rows to load for a requested page size, e.g the iDisplayLength of a
+	 * DataTable which is -1 when all rows are requested
+	 *
+	 * @param requested the requested page size
+	 * @return {@link #DEFAULT_PAGE_SIZE} if the requested size is not positive, else the requested
+	 *         size but at most {@link #MAX_PAGE_SIZE}
+	 * @should return the default page size if the requested size is not positive
+	 * @should limit the page size to the maximum
+	 * @should return the requested page size if it is within the maximum
+	 */
+	public static int getPageSize(int requested) {
+		if (requested <= 0) {
+			return DEFAULT_PAGE_SIZE;
+		}
+		return Math.min(requested, MAX_PAGE_SIZE);
+	}
+
+}
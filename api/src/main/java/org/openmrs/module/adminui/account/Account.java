@@ -10,9 +10,13 @@
 package org.openmrs.module.adminui.account;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
@@ -46,6 +50,21 @@ public class Account {
 	
 	private HashMap<User, String> confirmPasswords;
 	
+	private Map<User, HashedPassword> hashedPasswords = new IdentityHashMap<User, HashedPassword>();
+	
+	/**
+	 * Whether a submitted value differed from the loaded person's, only then does {@link #save()}
+	 * pass an existing person to the person service
+	 */
+	private boolean personChanged = false;
+	
+	/**
+	 * The existing users a submitted value differed for, only they are passed to the user service
+	 */
+	private Set<User> changedUsers = Collections.newSetFromMap(new IdentityHashMap<User, Boolean>());
+	
+	private Set<String> unknownRoleNames = new LinkedHashSet<String>();
+	
 	private AccountService accountService;
 	
 	private UserService userService;
@@ -56,14 +75,69 @@ public class Account {
 	
 	private ProviderManagementService providerManagementService;
 	
+	/**
+	 * Creates an account without users or providers, e.g for a new person. The account of an
+	 * existing person is got from {@link AccountService#getAccountByPerson(Person)}.
+	 */
 	public Account(Person person, AccountService accountService, UserService userService, ProviderService providerService,
 	    ProviderManagementService providerManagementService, PersonService personService) {
+		this(person, null, null, accountService, userService, providerService, providerManagementService, personService);
+	}
+	
+	/**
+	 * Creates an account for a person whose users and providers were already fetched, e.g in bulk
+	 * for many persons, so that no further query is run for them
+	 *
+	 * @param users the person's users, may be null
+	 * @param providers the person's providers, may be null
+	 */
+	public Account(Person person, List<User> users, List<Provider> providers, AccountService accountService,
+	    UserService userService, ProviderService providerService, ProviderManagementService providerManagementService,
+	    PersonService personService) {
 		this.accountService = accountService;
 		this.userService = userService;
 		this.providerService = providerService;
 		this.providerManagementService = providerManagementService;
 		this.personService = personService;
 		this.person = person;
+		loadUsers(users);
+		loadProviders(providers);
+	}
+	
+	/**
+	 * Adds the person's non retired users
+	 */
+	private void loadUsers(List<User> users) {
+		if (users != null) {
+			for (User user : users) {
+				if (!user.isRetired()) {
+					userSet.add(user);
+				}
+			}
+		}
+		if (!userSet.isEmpty()) {
+			userChecked = true;
+		}
+	}
+	
+	/**
+	 * Adds the person's non retired providers, {@link #save()} only saves the providers that are
+	 * added after that
+	 */
+	private void loadProviders(List<Provider> providers) {
+		if (providers != null) {
+			for (Provider provider : providers) {
+				if (!provider.isRetired()) {
+					if (providerSet == null) {
+						providerSet = new LinkedHashSet<Provider>();
+					}
+					providerSet.add(provider);
+				}
+			}
+		}
+		if (providerSet != null) {
+			providerChecked = true;
+		}
 	}
 	
 	public Person getPerson() {
@@ -81,6 +155,7 @@ public class Account {
 	private void initializePersonNameIfNecessary() {
 		if (person.getPersonName() == null) {
 			person.addName(new PersonName());
+			personChanged = true;
 		}
 	}
 	
@@ -98,7 +173,10 @@ public class Account {
 	
 	public void setGivenName(String givenName) {
 		initializePersonNameIfNecessary();
-		person.getPersonName().setGivenName(givenName);
+		if (!StringUtils.equals(givenName, person.getPersonName().getGivenName())) {
+			person.getPersonName().setGivenName(givenName);
+			personChanged = true;
+		}
 	}
 	
 	public String getGivenName() {
@@ -107,7 +185,10 @@ public class Account {
 	
 	public void setFamilyName(String familyName) {
 		initializePersonNameIfNecessary();
-		person.getPersonName().setFamilyName(familyName);
+		if (!StringUtils.equals(familyName, person.getPersonName().getFamilyName())) {
+			person.getPersonName().setFamilyName(familyName);
+			personChanged = true;
+		}
 	}
 	
 	public String getFamilyName() {
@@ -115,7 +196,10 @@ public class Account {
 	}
 	
 	public void setGender(String gender) {
-		person.setGender(gender);
+		if (!StringUtils.equals(gender, person.getGender())) {
+			person.setGender(gender);
+			personChanged = true;
+		}
 	}
 	
 	public String getGender() {
@@ -140,9 +224,15 @@ public class Account {
 		return providerChecked;
 	}
 	
+	/**
+	 * Makes sure the account has the specified number of users, users loaded with the account count
+	 * towards it so only the missing ones are created
+	 *
+	 * @param countUsers the number of users the account should have
+	 */
 	public void createRequiredUsers(int countUsers) {
 		if (userChecked) {
-			for (int i = 1; i <= countUsers; i++) {
+			for (int i = userSet.size() + 1; i <= countUsers; i++) {
 				User user = generateNewUser();
 				userSet.add(user);
 			}
@@ -153,7 +243,10 @@ public class Account {
 		usernames = new ArrayList<String>(username);
 		for (int i = 0; i < userSet.size(); i++) {
 			User user = userSet.get(i);
-			user.setUsername(username.get(i));
+			if (!StringUtils.equals(username.get(i), user.getUsername())) {
+				user.setUsername(username.get(i));
+				changedUsers.add(user);
+			}
 		}
 	}
 	
@@ -171,6 +264,22 @@ public class Account {
 		return user != null ? passwords.get(i) : null;
 	}
 	
+	/**
+	 * Sets the hash of a new user's password, computed ahead of the save e.g. in parallel for many
+	 * accounts. The user is still created through {@link UserService#saveUser(User, String)} and the
+	 * hash is then stored as the user's password.
+	 *
+	 * @param i the index of the user
+	 * @param hashedPassword the hash of the user's password and its salt
+	 */
+	public void setHashedPassword(int i, HashedPassword hashedPassword) {
+		hashedPasswords.put(userSet.get(i), hashedPassword);
+	}
+	
+	public HashedPassword getHashedPassword(int i) {
+		return hashedPasswords.get(userSet.get(i));
+	}
+	
 	public void setConfirmPasswords(ArrayList<String> confirmPassword) {
 		confirmPasswords = new HashMap<User, String>();
 		for (int i = 0; i < userSet.size(); i++) {
@@ -181,15 +290,11 @@ public class Account {
 	
 	public String getConfirmPassword(int i) {
 		User user = userSet.get(i);
-		return user != null ? confirmPasswords.get(i) : null;
+		return user != null && confirmPasswords != null ? confirmPasswords.get(user) : null;
 	}
 	
 	public void setPrivilegeLevels(ArrayList<String> privilegeLevel) {
-		for (int i = 0; i < userSet.size(); i++) {
-			User user = userSet.get(i);
-			Role role = userService.getRole(privilegeLevel.get(i));
-			user.addRole(role);
-		}
+		setRoles(privilegeLevel, null);
 	}
 	
 	public Role getPrivilegeLevel(int i) {
@@ -205,16 +310,97 @@ public class Account {
 	}
 	
 	public void setCapabilities(ArrayList<String[]> roles) {
+		setRoles(null, roles);
+	}
+	
+	/**
+	 * Sets the privilege level and capabilities of each user, the role names of all the users are
+	 * resolved together from the role index. Privilege levels or capabilities a user already has
+	 * but that were not submitted are removed. Names that don't match a role are not added and are
+	 * reported by {@link #getUnknownRoleNames()} instead.
+	 *
+	 * @param privilegeLevels the privilege level role name of each user, may be null
+	 * @param capabilities the capability role names of each user, may be null
+	 */
+	public void setRoles(ArrayList<String> privilegeLevels, ArrayList<String[]> capabilities) {
+		setRoles(privilegeLevels, capabilities, null);
+	}
+	
+	/**
+	 * Like {@link #setRoles(ArrayList, ArrayList)} with roles that were already resolved, e.g once
+	 * for many accounts
+	 *
+	 * @param rolesByName the roles keyed by name, null to resolve them from the role names
+	 */
+	public void setRoles(ArrayList<String> privilegeLevels, ArrayList<String[]> capabilities,
+	                     Map<String, Role> rolesByName) {
+		List<Set<String>> roleNamesByUser = new ArrayList<Set<String>>();
+		Set<String> allRoleNames = new HashSet<String>();
+		for (int i = 0; i < userSet.size(); i++) {
+			Set<String> roleNames = new LinkedHashSet<String>();
+			if (privilegeLevels != null && StringUtils.isNotBlank(privilegeLevels.get(i))) {
+				roleNames.add(privilegeLevels.get(i));
+			}
+			if (capabilities != null && capabilities.get(i) != null) {
+				for (String roleName : capabilities.get(i)) {
+					if (StringUtils.isNotBlank(roleName)) {
+						roleNames.add(roleName);
+					}
+				}
+			}
+			roleNamesByUser.add(roleNames);
+			allRoleNames.addAll(roleNames);
+		}
+		
+		if (rolesByName == null) {
+			rolesByName = accountService.getRolesByName(allRoleNames);
+		}
 		for (int i = 0; i < userSet.size(); i++) {
 			User user = userSet.get(i);
-			String[] userRoles = roles.get(i);
-			for (String roleName : userRoles) {
-				Role role = userService.getRole(roleName);
-				user.addRole(role);
+			if (user.getRoles() != null) {
+				for (Role role : new ArrayList<Role>(user.getRoles())) {
+					boolean replaced = (privilegeLevels != null && role.getRole().startsWith(
+					    AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL))
+					        || (capabilities != null && role.getRole().startsWith(AdminUiConstants.ROLE_PREFIX_CAPABILITY));
+					if (replaced && !roleNamesByUser.get(i).contains(role.getRole())) {
+						user.removeRole(role);
+						changedUsers.add(user);
+					}
+				}
+			}
+			for (String roleName : roleNamesByUser.get(i)) {
+				Role role = rolesByName.get(roleName);
+				if (role == null) {
+					unknownRoleNames.add(roleName);
+				} else if (!hasRole(user, roleName)) {
+					user.addRole(role);
+					changedUsers.add(user);
+				}
 			}
 		}
 	}
 	
+	/**
+	 * Unlike {@link User#hasRole(String)} this only looks at the roles assigned to the user directly
+	 */
+	private boolean hasRole(User user, String roleName) {
+		if (user.getRoles() != null) {
+			for (Role role : user.getRoles()) {
+				if (role.getRole().equals(roleName)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return the submitted role names that didn't match any role
+	 */
+	public Set<String> getUnknownRoleNames() {
+		return unknownRoleNames;
+	}
+	
 	public Set<Role> getCapabilities(int i) {
 		
 		User user = userSet.get(i);
@@ -246,21 +432,41 @@ public class Account {
 		return userSet.size();
 	}
 	
+	/**
+	 * Adds a new provider with each of the specified provider roles
+	 *
+	 * @param providerRoles the provider roles
+	 */
 	public void setProviderRoles(List<ProviderRole> providerRoles) {
+		if (providerSet == null) {
+			providerSet = new LinkedHashSet<Provider>();
+		}
+		for (ProviderRole providerRole : providerRoles) {
+			Provider provider = generateNewProvider();
+			provider.setProviderRole(providerRole);
+			providerSet.add(provider);
+		}
 	}
 	
 	public int getProvidersCount() {
-		return providerSet.size();
+		return providerSet != null ? providerSet.size() : 0;
 	}
 	
 	public Set<Provider> getProviders() {
 		return providerSet;
 	}
 	
+	/**
+	 * Saves the person, users and providers of the account through the OpenMRS services so that
+	 * their validators and save handlers run. The setters compare the submitted values with the
+	 * loaded ones, an existing person or user is only saved when one of them differed. Providers that
+	 * were loaded with the account are not changed by it and are left alone.
+	 */
 	public void save() {
 		
-		if (person != null) {
+		if (person != null && (person.getPersonId() == null || personChanged)) {
 			personService.savePerson(person);
+			personChanged = false;
 		}
 		
 		if (userChecked && userSet.size() > 0) {
@@ -268,20 +474,36 @@ public class Account {
 				User user = userSet.get(i);
 				if (user != null) {
 					boolean existingUser = (user.getUserId() != null);
-					userService.saveUser(user, passwords.get(i));
+					String password = passwords != null ? passwords.get(i) : null;
+					boolean changePassword = existingUser && StringUtils.isNotBlank(password)
+					        && StringUtils.isNotBlank(getConfirmPassword(i));
+					
+					HashedPassword hashedPassword = existingUser ? null : hashedPasswords.get(user);
+					if (!existingUser || changedUsers.remove(user)) {
+						userService.saveUser(user, password);
+					}
+					if (hashedPassword != null) {
+						userService.changeHashedPassword(user, hashedPassword.getHash(), hashedPassword.getSalt());
+					}
 					
 					// the saveUser(user, password) method will *only* set a password for a new user, it won't change an existing one
-					if (existingUser && StringUtils.isNotBlank(passwords.get(i))
-					        && StringUtils.isNotBlank(confirmPasswords.get(i))) {
-						userService.changePassword(user, passwords.get(i));
+					if (changePassword) {
+						userService.changePassword(user, password);
 					}
 				}
 			}
 		}
 		
-		if (providerChecked && !providerSet.isEmpty()) {
+		if (providerChecked && providerSet != null) {
 			for (Provider provider : providerSet) {
-				providerService.saveProvider(provider);
+				if (provider.getId() == null) {
+					providerService.saveProvider(provider);
+					if (StringUtils.isBlank(provider.getIdentifier())) {
+						// derived from the provider id so that it is unique
+						provider.setIdentifier(String.valueOf(provider.getProviderId()));
+						providerService.saveProvider(provider);
+					}
+				}
 			}
 		}
 		
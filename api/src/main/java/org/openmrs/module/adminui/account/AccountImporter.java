@@ -0,0 +1,427 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Person;
+import org.openmrs.Role;
+import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.module.adminui.util.CsvReader;
+import org.openmrs.module.providermanagement.ProviderRole;
+import org.openmrs.module.providermanagement.api.ProviderManagementService;
+import org.springframework.validation.BindException;
+import org.springframework.validation.Errors;
+
+/**
+ * Creates accounts in bulk from a CSV file. The file is read one row at a time and the accounts
+ * are saved in chunks of {@link AdminUiConstants#GP_ACCOUNT_IMPORT_CHUNK_SIZE} rows, each chunk in
+ * its own transaction after which the session is cleared, so memory use doesn't grow with the size
+ * of the file.
+ * <p>
+ * The first row names the columns, {@link #COLUMN_GIVEN_NAME}, {@link #COLUMN_FAMILY_NAME} and
+ * {@link #COLUMN_GENDER} are required. A user is created when a username is given, capabilities are
+ * separated by {@link #CAPABILITY_SEPARATOR} and role names may be given with or without their
+ * prefix.
+ * <p>
+ * The passwords of each chunk are hashed in parallel by the {@link PasswordHasher} before the chunk
+ * is saved, the users are still created through the user service and then given the precomputed
+ * hashes.
+ */
+public class AccountImporter {
+
+	public static final String COLUMN_GIVEN_NAME = "givenName";
+
+	public static final String COLUMN_FAMILY_NAME = "familyName";
+
+	public static final String COLUMN_GENDER = "gender";
+
+	public static final String COLUMN_USERNAME = "username";
+
+	public static final String COLUMN_PASSWORD = "password";
+
+	public static final String COLUMN_PRIVILEGE_LEVEL = "privilegeLevel";
+
+	public static final String COLUMN_CAPABILITIES = "capabilities";
+
+	public static final String COLUMN_PROVIDER_ROLE = "providerRole";
+
+	public static final String CAPABILITY_SEPARATOR = "|";
+
+	private static final int DEFAULT_CHUNK_SIZE = 100;
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	private AccountService accountService;
+
+	private AdministrationService administrationService;
+
+	private ProviderManagementService providerManagementService;
+
+	private AdminUiAccountValidator accountValidator;
+
+	private PasswordHasher passwordHasher;
+
+	/**
+	 * @param accountService the transactional accountService to set
+	 */
+	public void setAccountService(AccountService accountService) {
+		this.accountService = accountService;
+	}
+
+	/**
+	 * @param administrationService the administrationService to set
+	 */
+	public void setAdministrationService(AdministrationService administrationService) {
+		this.administrationService = administrationService;
+	}
+
+	/**
+	 * @param providerManagementService the providerManagementService to set
+	 */
+	public void setProviderManagementService(ProviderManagementService providerManagementService) {
+		this.providerManagementService = providerManagementService;
+	}
+
+	/**
+	 * @param accountValidator the accountValidator to set
+	 */
+	public void setAccountValidator(AdminUiAccountValidator accountValidator) {
+		this.accountValidator = accountValidator;
+	}
+
+	/**
+	 * @param passwordHasher the passwordHasher to set
+	 */
+	public void setPasswordHasher(PasswordHasher passwordHasher) {
+		this.passwordHasher = passwordHasher;
+	}
+
+	/**
+	 * Imports the accounts in the specified CSV, rows that fail validation or can't be saved are
+	 * reported in the result and don't stop the remaining rows from being imported. The reader is not
+	 * closed.
+	 *
+	 * @param csv the CSV to read the accounts from
+	 * @return the number of imported accounts and the errors of the rows that were not imported
+	 * @throws IOException if the CSV can't be read
+	 * @should save the accounts in chunks of the configured size
+	 * @should report the rows that fail validation and import the others
+	 * @should save the accounts of a failed chunk one by one
+	 * @should resolve the roles of a chunk with a single lookup
+	 * @should create the users with the passwords hashed before the chunk is saved
+	 * @should fail if a required column is missing
+	 */
+	public AccountImportResult importAccounts(Reader csv) throws IOException {
+		AccountImportResult result = new AccountImportResult();
+		CsvReader reader = new CsvReader(csv);
+
+		String[] header = reader.readNext();
+		if (header == null) {
+			return result;
+		}
+		Map<String, Integer> columns = new HashMap<String, Integer>();
+		for (int i = 0; i < header.length; i++) {
+			columns.put(header[i].trim(), i);
+		}
+		for (String required : new String[] { COLUMN_GIVEN_NAME, COLUMN_FAMILY_NAME, COLUMN_GENDER }) {
+			if (!columns.containsKey(required)) {
+				throw new APIException("The account CSV has no " + required + " column");
+			}
+		}
+
+		ImportContext context = new ImportContext(columns, result);
+		int chunkSize = getChunkSize();
+		List<Row> chunk = new ArrayList<Row>(chunkSize);
+		String[] values;
+		while ((values = reader.readNext()) != null) {
+			if (values.length == 1 && StringUtils.isBlank(values[0])) {
+				continue;
+			}
+			result.rowRead();
+			chunk.add(new Row(reader.getRecordNumber(), values));
+			if (chunk.size() == chunkSize) {
+				importChunk(chunk, context);
+				chunk.clear();
+			}
+		}
+		importChunk(chunk, context);
+
+		return result;
+	}
+
+	private void importChunk(List<Row> chunk, ImportContext context) {
+		List<Row> validRows = new ArrayList<Row>();
+		List<Account> accounts = new ArrayList<Account>();
+		ChunkRoles roles = resolveRoles(chunk, context);
+		for (Row row : chunk) {
+			Account account = createAccount(row, context, roles);
+			Errors errors = new BindException(account, "account");
+			validate(account, row, context, errors);
+			if (errors.hasErrors()) {
+				context.result.addErrors(row.number, errors.getAllErrors());
+			} else {
+				validRows.add(row);
+				accounts.add(account);
+			}
+		}
+		if (accounts.isEmpty()) {
+			return;
+		}
+		Map<Row, HashedPassword> hashedPasswords = hashPasswords(validRows, accounts);
+
+		try {
+			accountService.saveAccounts(accounts);
+			context.result.imported(accounts.size());
+		}
+		catch (Exception e) {
+			log.warn("Failed to save a chunk of " + accounts.size() + " accounts, saving them one at a time", e);
+			// the failed transaction may have left ids on the entities, so the accounts are built again
+			// from roles resolved again in the current session
+			roles = resolveRoles(validRows, context);
+			for (Row row : validRows) {
+				Account account = createAccount(row, context, roles);
+				if (hashedPasswords.containsKey(row)) {
+					account.setHashedPassword(0, hashedPasswords.get(row));
+				}
+				try {
+					accountService.saveAccounts(Collections.singletonList(account));
+					context.result.imported(1);
+				}
+				catch (Exception ex) {
+					Errors errors = new BindException(account, "account");
+					errors.reject("adminui.account.error.save.fail");
+					context.result.addErrors(row.number, errors.getAllErrors());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hashes the passwords of the accounts' new users in parallel and sets the hashes on the accounts
+	 *
+	 * @return the hashes by the row of their account, for when the accounts are built again
+	 */
+	private Map<Row, HashedPassword> hashPasswords(List<Row> rows, List<Account> accounts) {
+		List<String> passwords = new ArrayList<String>();
+		for (Account account : accounts) {
+			if (account.getUsersCount() > 0) {
+				passwords.add(account.getPassword(0));
+			}
+		}
+		Map<Row, HashedPassword> hashedPasswordsByRow = new HashMap<Row, HashedPassword>();
+		if (passwords.isEmpty()) {
+			return hashedPasswordsByRow;
+		}
+		Iterator<HashedPassword> hashedPasswords = passwordHasher.hash(passwords).iterator();
+		for (int i = 0; i < accounts.size(); i++) {
+			if (accounts.get(i).getUsersCount() > 0) {
+				HashedPassword hashedPassword = hashedPasswords.next();
+				accounts.get(i).setHashedPassword(0, hashedPassword);
+				hashedPasswordsByRow.put(rows.get(i), hashedPassword);
+			}
+		}
+		return hashedPasswordsByRow;
+	}
+
+	/**
+	 * Resolves the roles and provider roles named by the rows with one lookup for the whole chunk,
+	 * in the session the chunk is saved in
+	 */
+	private ChunkRoles resolveRoles(List<Row> rows, ImportContext context) {
+		Set<String> roleNames = new HashSet<String>();
+		Set<Integer> providerRoleIds = new HashSet<Integer>();
+		for (Row row : rows) {
+			String privilegeLevel = row.get(context.columns, COLUMN_PRIVILEGE_LEVEL);
+			if (StringUtils.isNotBlank(privilegeLevel)) {
+				roleNames.add(withPrefix(privilegeLevel, AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL));
+			}
+			roleNames.addAll(Arrays.asList(getCapabilityNames(row, context)));
+			Integer providerRoleId = context.getProviderRoleId(row.get(context.columns, COLUMN_PROVIDER_ROLE));
+			if (providerRoleId != null) {
+				providerRoleIds.add(providerRoleId);
+			}
+		}
+
+		ChunkRoles roles = new ChunkRoles();
+		roles.rolesByName = accountService.getRolesByName(roleNames);
+		for (Integer providerRoleId : providerRoleIds) {
+			roles.providerRolesById.put(providerRoleId, providerManagementService.getProviderRole(providerRoleId));
+		}
+		return roles;
+	}
+
+	private Account createAccount(Row row, ImportContext context, ChunkRoles roles) {
+		Account account = accountService.getAccountByPerson(new Person());
+		account.setGivenName(row.get(context.columns, COLUMN_GIVEN_NAME));
+		account.setFamilyName(row.get(context.columns, COLUMN_FAMILY_NAME));
+		account.setGender(row.get(context.columns, COLUMN_GENDER));
+
+		String username = row.get(context.columns, COLUMN_USERNAME);
+		if (StringUtils.isNotBlank(username)) {
+			account.setUserEnabled(true);
+			account.createRequiredUsers(1);
+			account.setUsernames(asList(username));
+			account.setPasswords(asList(row.get(context.columns, COLUMN_PASSWORD)));
+			account.setConfirmPasswords(asList(row.get(context.columns, COLUMN_PASSWORD)));
+
+			ArrayList<String> privilegeLevels = null;
+			String privilegeLevel = row.get(context.columns, COLUMN_PRIVILEGE_LEVEL);
+			if (StringUtils.isNotBlank(privilegeLevel)) {
+				privilegeLevels = asList(withPrefix(privilegeLevel, AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL));
+			}
+			ArrayList<String[]> capabilities = null;
+			String[] capabilityNames = getCapabilityNames(row, context);
+			if (capabilityNames.length > 0) {
+				capabilities = new ArrayList<String[]>();
+				capabilities.add(capabilityNames);
+			}
+			if (privilegeLevels != null || capabilities != null) {
+				account.setRoles(privilegeLevels, capabilities, roles.rolesByName);
+			}
+		}
+
+		Integer providerRoleId = context.getProviderRoleId(row.get(context.columns, COLUMN_PROVIDER_ROLE));
+		ProviderRole providerRole = providerRoleId != null ? roles.providerRolesById.get(providerRoleId) : null;
+		if (providerRole != null) {
+			account.setProviderEnabled(true);
+			account.setProviderRoles(Collections.singletonList(providerRole));
+		}
+		return account;
+	}
+
+	private void validate(Account account, Row row, ImportContext context, Errors errors) {
+		accountValidator.validate(account, errors);
+
+		String username = row.get(context.columns, COLUMN_USERNAME);
+		if (StringUtils.isNotBlank(username) && StringUtils.isBlank(row.get(context.columns, COLUMN_PASSWORD))) {
+			errors.reject("adminui.account.import.error.passwordRequired", new Object[] { username }, null);
+		}
+		String providerRoleName = row.get(context.columns, COLUMN_PROVIDER_ROLE);
+		if (StringUtils.isNotBlank(providerRoleName) && context.getProviderRoleId(providerRoleName) == null) {
+			errors.reject("adminui.account.error.unknownProviderRole", new Object[] { providerRoleName }, null);
+		}
+	}
+
+	private int getChunkSize() {
+		String value = administrationService.getGlobalProperty(AdminUiConstants.GP_ACCOUNT_IMPORT_CHUNK_SIZE);
+		if (StringUtils.isNotBlank(value)) {
+			try {
+				int chunkSize = Integer.parseInt(value.trim());
+				if (chunkSize > 0) {
+					return chunkSize;
+				}
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid value for " + AdminUiConstants.GP_ACCOUNT_IMPORT_CHUNK_SIZE + ": " + value);
+			}
+		}
+		return DEFAULT_CHUNK_SIZE;
+	}
+
+	private String[] getCapabilityNames(Row row, ImportContext context) {
+		String capabilityNames = row.get(context.columns, COLUMN_CAPABILITIES);
+		if (StringUtils.isBlank(capabilityNames)) {
+			return new String[0];
+		}
+		String[] names = StringUtils.split(capabilityNames, CAPABILITY_SEPARATOR);
+		for (int i = 0; i < names.length; i++) {
+			names[i] = withPrefix(names[i], AdminUiConstants.ROLE_PREFIX_CAPABILITY);
+		}
+		return names;
+	}
+
+	private String withPrefix(String roleName, String prefix) {
+		roleName = roleName.trim();
+		return roleName.startsWith(prefix) ? roleName : prefix + roleName;
+	}
+
+	private ArrayList<String> asList(String value) {
+		ArrayList<String> list = new ArrayList<String>();
+		list.add(value);
+		return list;
+	}
+
+	private class ImportContext {
+
+		private final Map<String, Integer> columns;
+
+		private final AccountImportResult result;
+
+		/**
+		 * Only the ids are kept across chunks, each chunk gets the provider roles of its own session
+		 */
+		private Map<String, Integer> providerRoleIdsByName;
+
+		ImportContext(Map<String, Integer> columns, AccountImportResult result) {
+			this.columns = columns;
+			this.result = result;
+		}
+
+		Integer getProviderRoleId(String name) {
+			if (StringUtils.isBlank(name)) {
+				return null;
+			}
+			if (providerRoleIdsByName == null) {
+				providerRoleIdsByName = new HashMap<String, Integer>();
+				for (ProviderRole providerRole : providerManagementService.getAllProviderRoles(false)) {
+					providerRoleIdsByName.put(providerRole.getName(), providerRole.getId());
+				}
+			}
+			return providerRoleIdsByName.get(name.trim());
+		}
+	}
+
+	/**
+	 * The roles and provider roles of the rows of a chunk
+	 */
+	private static class ChunkRoles {
+
+		private Map<String, Role> rolesByName;
+
+		private final Map<Integer, ProviderRole> providerRolesById = new HashMap<Integer, ProviderRole>();
+	}
+
+	private static class Row {
+
+		private final int number;
+
+		private final String[] values;
+
+		Row(int number, String[] values) {
+			this.number = number;
+			this.values = values;
+		}
+
+		String get(Map<String, Integer> columns, String column) {
+			Integer index = columns.get(column);
+			if (index == null || index >= values.length) {
+				return null;
+			}
+			return StringUtils.trimToNull(values[index]);
+		}
+	}
+
+}
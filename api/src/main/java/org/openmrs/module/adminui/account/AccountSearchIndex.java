@@ -0,0 +1,459 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In memory search index of the accounts by username, system id, given name and family name, each
+ * word in them is an indexed term. A query word matches the terms it is a prefix of, or when there
+ * are none the terms sharing enough trigrams with it, so a small typo still finds the account.
+ * <p>
+ * It is built once at module start by {@link AccountService#buildSearchIndex()} and then kept up to
+ * date one user at a time by {@link AccountSearchIndexAdvice} as users and persons are changed
+ * through the OpenMRS services, until it is built {@link #isBuilt()} returns false and searches
+ * should go to the database. Like the database search it holds the retired users but not the users
+ * of voided persons.
+ */
+public class AccountSearchIndex {
+
+	/**
+	 * The least Jaccard similarity between the trigrams of a query word and a term for them to match
+	 */
+	public static final double MIN_SIMILARITY = 0.3;
+
+	/**
+	 * Query words shorter than this only match by prefix, they have too few trigrams to compare
+	 */
+	private static final int MIN_FUZZY_LENGTH = 3;
+
+	private static final double EXACT_SCORE = 3;
+
+	private static final double PREFIX_SCORE = 2;
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private Data data = new Data();
+
+	private boolean built;
+
+	private List<Change> pendingChanges;
+
+	/**
+	 * @return true once the index was built, before that it is empty
+	 */
+	public boolean isBuilt() {
+		lock.readLock().lock();
+		try {
+			return built;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the number of indexed accounts
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return data.entries.size();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Starts building the index from scratch, the accounts are passed to the returned handler and
+	 * searches keep using the current index until {@link Builder#publish()} is called. Updates made
+	 * in the meantime are applied again to the new index when it is published.
+	 *
+	 * @return the handler to pass every account to
+	 */
+	public Builder newBuilder() {
+		lock.writeLock().lock();
+		try {
+			pendingChanges = new ArrayList<Change>();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		return new Builder();
+	}
+
+	/**
+	 * Adds the account to the index or replaces the indexed values of the same user
+	 *
+	 * @param account the saved account of a single user
+	 */
+	public void update(final AccountSummary account) {
+		apply(new Change() {
+
+			@Override
+			public void apply(Data data) {
+				data.put(account);
+			}
+		});
+	}
+
+	/**
+	 * Removes a user from the index, nothing happens if it isn't indexed
+	 *
+	 * @param userId the id of the user
+	 */
+	public void remove(final Integer userId) {
+		apply(new Change() {
+
+			@Override
+			public void apply(Data data) {
+				data.remove(userId);
+			}
+		});
+	}
+
+	/**
+	 * Updates and removes the specified users once the current transaction commits, or right away if
+	 * there is none, so changes that are rolled back never show up in searches
+	 *
+	 * @param updated the values of the users to add or replace
+	 * @param removedUserIds the ids of the users to remove
+	 */
+	public void usersChanged(final List<AccountSummary> updated, final List<Integer> removedUserIds) {
+		final Runnable change = new Runnable() {
+
+			@Override
+			public void run() {
+				for (AccountSummary account : updated) {
+					update(account);
+				}
+				for (Integer userId : removedUserIds) {
+					remove(userId);
+				}
+			}
+		};
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					change.run();
+				}
+			});
+		} else {
+			change.run();
+		}
+	}
+
+	private void apply(Change change) {
+		lock.writeLock().lock();
+		try {
+			change.apply(data);
+			if (pendingChanges != null) {
+				pendingChanges.add(change);
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the accounts matching all the words in the query, the best matches first. Exact terms
+	 * rank above prefixes which rank above trigram matches by similarity, ties are ordered by user
+	 * id.
+	 *
+	 * @param query the words to look for, case insensitive
+	 * @return new summaries of the matching accounts without the privilege level and provider roles
+	 */
+	public List<AccountSummary> search(String query) {
+		List<String> words = tokenize(query);
+		if (words.isEmpty()) {
+			return new ArrayList<AccountSummary>();
+		}
+
+		lock.readLock().lock();
+		try {
+			Map<Integer, Double> scores = null;
+			for (String word : words) {
+				Map<Integer, Double> wordScores = data.match(word);
+				if (scores == null) {
+					scores = wordScores;
+				} else {
+					Map<Integer, Double> both = new HashMap<Integer, Double>();
+					for (Map.Entry<Integer, Double> entry : scores.entrySet()) {
+						Double score = wordScores.get(entry.getKey());
+						if (score != null) {
+							both.put(entry.getKey(), entry.getValue() + score);
+						}
+					}
+					scores = both;
+				}
+				if (scores.isEmpty()) {
+					break;
+				}
+			}
+
+			List<Map.Entry<Integer, Double>> ranked = new ArrayList<Map.Entry<Integer, Double>>(scores.entrySet());
+			Collections.sort(ranked, new Comparator<Map.Entry<Integer, Double>>() {
+
+				@Override
+				public int compare(Map.Entry<Integer, Double> a, Map.Entry<Integer, Double> b) {
+					int ret = b.getValue().compareTo(a.getValue());
+					return ret != 0 ? ret : a.getKey().compareTo(b.getKey());
+				}
+			});
+
+			List<AccountSummary> results = new ArrayList<AccountSummary>(ranked.size());
+			for (Map.Entry<Integer, Double> entry : ranked) {
+				results.add(data.entries.get(entry.getKey()).toSummary());
+			}
+			return results;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the lower case words of the value, empty if it is blank
+	 */
+	static List<String> tokenize(String value) {
+		List<String> words = new ArrayList<String>();
+		if (StringUtils.isNotBlank(value)) {
+			for (String word : StringUtils.split(value.trim().toLowerCase())) {
+				words.add(word);
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * @return the distinct trigrams of the term padded with two spaces in front and one at the end,
+	 *         so that the start of a term weighs more than its end
+	 */
+	static Set<String> trigrams(String term) {
+		String padded = "  " + term + " ";
+		Set<String> trigrams = new HashSet<String>();
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			trigrams.add(padded.substring(i, i + 3));
+		}
+		return trigrams;
+	}
+
+	/**
+	 * Collects the accounts of a new index, see {@link AccountSearchIndex#newBuilder()}
+	 */
+	public class Builder implements AccountSummaryHandler {
+
+		private final Data newData = new Data();
+
+		/**
+		 * @see AccountSummaryHandler#handle(AccountSummary)
+		 */
+		@Override
+		public void handle(AccountSummary account) {
+			newData.put(account);
+		}
+
+		/**
+		 * Replaces the current index with the new one
+		 */
+		public void publish() {
+			lock.writeLock().lock();
+			try {
+				if (pendingChanges != null) {
+					for (Change change : pendingChanges) {
+						change.apply(newData);
+					}
+				}
+				pendingChanges = null;
+				data = newData;
+				built = true;
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+			log.info("Indexed " + newData.entries.size() + " accounts for searching");
+		}
+	}
+
+	/**
+	 * A change made to the index, kept while the index is rebuilt to apply it again to the new one
+	 */
+	private interface Change {
+
+		void apply(Data data);
+	}
+
+	private static class Data {
+
+		private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+		/**
+		 * The user ids by term, sorted so that the terms with a prefix are a sub map
+		 */
+		private final TreeMap<String, Set<Integer>> userIdsByTerm = new TreeMap<String, Set<Integer>>();
+
+		private final Map<String, Set<String>> termsByTrigram = new HashMap<String, Set<String>>();
+
+		void put(AccountSummary account) {
+			remove(account.getUserId());
+
+			Entry entry = new Entry(account);
+			entries.put(entry.userId, entry);
+			for (String term : entry.terms) {
+				Set<Integer> userIds = userIdsByTerm.get(term);
+				if (userIds == null) {
+					userIds = new HashSet<Integer>();
+					userIdsByTerm.put(term, userIds);
+					for (String trigram : trigrams(term)) {
+						Set<String> terms = termsByTrigram.get(trigram);
+						if (terms == null) {
+							terms = new HashSet<String>();
+							termsByTrigram.put(trigram, terms);
+						}
+						terms.add(term);
+					}
+				}
+				userIds.add(entry.userId);
+			}
+		}
+
+		void remove(Integer userId) {
+			Entry previous = entries.remove(userId);
+			if (previous != null) {
+				for (String term : previous.terms) {
+					removeTerm(term, previous.userId);
+				}
+			}
+		}
+
+		private void removeTerm(String term, Integer userId) {
+			Set<Integer> userIds = userIdsByTerm.get(term);
+			userIds.remove(userId);
+			if (userIds.isEmpty()) {
+				userIdsByTerm.remove(term);
+				for (String trigram : trigrams(term)) {
+					Set<String> terms = termsByTrigram.get(trigram);
+					terms.remove(term);
+					if (terms.isEmpty()) {
+						termsByTrigram.remove(trigram);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the best score of each account with a term matching the word, trigrams are only
+		 *         compared when no term starts with the word
+		 */
+		Map<Integer, Double> match(String word) {
+			Map<Integer, Double> scores = new HashMap<Integer, Double>();
+			SortedMap<String, Set<Integer>> withPrefix = userIdsByTerm.subMap(word, word + Character.MAX_VALUE);
+			for (Map.Entry<String, Set<Integer>> entry : withPrefix.entrySet()) {
+				addScores(scores, entry.getValue(), entry.getKey().equals(word) ? EXACT_SCORE : PREFIX_SCORE);
+			}
+
+			if (scores.isEmpty() && word.length() >= MIN_FUZZY_LENGTH) {
+				Set<String> wordTrigrams = trigrams(word);
+				Map<String, Integer> shared = new HashMap<String, Integer>();
+				for (String trigram : wordTrigrams) {
+					Set<String> terms = termsByTrigram.get(trigram);
+					if (terms != null) {
+						for (String term : terms) {
+							Integer count = shared.get(term);
+							shared.put(term, count == null ? 1 : count + 1);
+						}
+					}
+				}
+				for (Map.Entry<String, Integer> entry : shared.entrySet()) {
+					int common = entry.getValue();
+					double similarity = (double) common
+					        / (wordTrigrams.size() + trigrams(entry.getKey()).size() - common);
+					if (similarity >= MIN_SIMILARITY) {
+						addScores(scores, userIdsByTerm.get(entry.getKey()), similarity);
+					}
+				}
+			}
+			return scores;
+		}
+
+		private void addScores(Map<Integer, Double> scores, Set<Integer> userIds, double score) {
+			for (Integer userId : userIds) {
+				Double current = scores.get(userId);
+				if (current == null || current < score) {
+					scores.put(userId, score);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The indexed values of a user, copied so that the index holds no entities
+	 */
+	private static class Entry {
+
+		private final Integer userId;
+
+		private final String username;
+
+		private final String systemId;
+
+		private final Integer personId;
+
+		private final String givenName;
+
+		private final String familyName;
+
+		private final String gender;
+
+		private final Set<String> terms = new LinkedHashSet<String>();
+
+		Entry(AccountSummary account) {
+			userId = account.getUserId();
+			username = account.getUsername();
+			systemId = account.getSystemId();
+			personId = account.getPersonId();
+			givenName = account.getGivenName();
+			familyName = account.getFamilyName();
+			gender = account.getGender();
+			for (String value : new String[] { username, systemId, givenName, familyName }) {
+				terms.addAll(tokenize(value));
+			}
+		}
+
+		AccountSummary toSummary() {
+			return new AccountSummary(userId, username, systemId, personId, givenName, familyName, gender);
+		}
+	}
+
+}
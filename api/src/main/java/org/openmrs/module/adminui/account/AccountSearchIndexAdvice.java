@@ -0,0 +1,100 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.openmrs.User;
+import org.openmrs.api.PersonService;
+import org.openmrs.api.UserService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Keeps the {@link AccountSearchIndex} up to date when users are saved, retired, unretired or
+ * purged through the {@link UserService} and when persons are saved, voided or unvoided through the
+ * {@link PersonService}, it is registered as advice around both services in config.xml. The index
+ * only applies the change once the transaction commits.
+ */
+public class AccountSearchIndexAdvice implements AfterReturningAdvice {
+	
+	private static final Pattern USER_METHODS = Pattern.compile("(save|retire|unretire)User");
+	
+	private static final Pattern PERSON_METHODS = Pattern.compile("(save|void|unvoid)Person");
+	
+	/**
+	 * @see org.springframework.aop.AfterReturningAdvice#afterReturning(Object, Method, Object[],
+	 *      Object)
+	 * @should index a saved user
+	 * @should remove a purged user
+	 * @should remove the users of a voided person
+	 */
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		List<User> users;
+		if (USER_METHODS.matcher(method.getName()).matches()) {
+			users = Collections.singletonList((User) (returnValue != null ? returnValue : args[0]));
+		} else if (PERSON_METHODS.matcher(method.getName()).matches()) {
+			Person person = (Person) (returnValue != null ? returnValue : args[0]);
+			if (person.getPersonId() == null) {
+				return;
+			}
+			users = getUserService().getUsersByPerson(person, true);
+		} else if ("purgeUser".equals(method.getName())) {
+			getSearchIndex().usersChanged(new ArrayList<AccountSummary>(),
+			    Collections.singletonList(((User) args[0]).getUserId()));
+			return;
+		} else {
+			return;
+		}
+		
+		List<AccountSummary> updated = new ArrayList<AccountSummary>();
+		List<Integer> removedUserIds = new ArrayList<Integer>();
+		for (User user : users) {
+			if (user.getUserId() == null || AdminUiConstants.DAEMON_USER_UUID.equals(user.getUuid())) {
+				continue;
+			}
+			if (user.getPerson().isVoided()) {
+				removedUserIds.add(user.getUserId());
+			} else {
+				updated.add(toSummary(user));
+			}
+		}
+		if (!updated.isEmpty() || !removedUserIds.isEmpty()) {
+			getSearchIndex().usersChanged(updated, removedUserIds);
+		}
+	}
+	
+	/**
+	 * Copies the values of the user now, while its session is still open
+	 */
+	private AccountSummary toSummary(User user) {
+		Person person = user.getPerson();
+		PersonName name = person.getPersonName();
+		return new AccountSummary(user.getUserId(), user.getUsername(), user.getSystemId(), person.getPersonId(),
+		        name != null ? name.getGivenName() : null, name != null ? name.getFamilyName() : null, person.getGender());
+	}
+	
+	AccountSearchIndex getSearchIndex() {
+		return Context.getRegisteredComponent("adminAccountSearchIndex", AccountSearchIndex.class);
+	}
+	
+	UserService getUserService() {
+		return Context.getUserService();
+	}
+	
+}
@@ -9,14 +9,30 @@
  */
 package org.openmrs.module.adminui.account;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.Person;
 import org.openmrs.Role;
+import org.openmrs.User;
 import org.openmrs.module.adminui.AdminUiActivator;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.module.adminui.PagedResult;
+import org.openmrs.module.providermanagement.Provider;
 
 public interface AccountService {
 	
+	String SORT_BY_NAME = "name";
+	
+	String SORT_BY_USERNAME = "username";
+	
+	String SORT_BY_GENDER = "gender";
+	
+	String SORT_BY_PERSON_ID = "personId";
+	
+
 	/**
 	 * Save the account details to the database
 	 *
@@ -26,14 +42,71 @@ public interface AccountService {
 	void saveAccount(Account account);
 	
 	/**
+	 * Saves the specified accounts in a single transaction, then flushes and clears the session so
+	 * that the saved entities don't pile up in it when this is called for each chunk of a bulk import.
+	 *
+	 * @param accounts the accounts to save
+	 * @should save all the accounts and clear the session
+	 */
+	void saveAccounts(List<Account> accounts);
+	
+	/**
+	 * Gets the accounts of all users, each with all its users and providers. The users and the
+	 * providers are each loaded with a single query however many accounts there are.
+	 *
 	 * @return
 	 * @should get all unique accounts
+	 * @should include all the providers of each account
 	 */
 	List<Account> getAllAccounts();
 	
+	/**
+	 * Gets a single page of user accounts as {@link AccountSummary} rows, this should be used
+	 * instead of {@link #getAllAccounts()} whenever the accounts are to be displayed since it only
+	 * loads the rows in the page and the number of queries it runs doesn't depend on the page size.
+	 * Retired users are included, the users of voided persons aren't.
+	 *
+	 * <p>
+	 * Once the {@link AccountSearchIndex} is built queries are answered from it, so each word of the
+	 * query may also match a username, system id, given name or family name with a small typo, and
+	 * when sortBy is null the best matches come first
+	 *
+	 * @param query words that must each start a word of the username, system id, given name or
+	 *            family name, null to match all
+	 * @param sortBy one of {@link #SORT_BY_NAME}, {@link #SORT_BY_USERNAME},
+	 *            {@link #SORT_BY_GENDER} or {@link #SORT_BY_PERSON_ID}, defaults to
+	 *            {@link #SORT_BY_NAME}
+	 * @param startIndex the index of the first account to return
+	 * @param length the maximum number of accounts to return
+	 * @return the page of accounts and the total number of accounts matching the query
+	 * @should return the page of accounts and the total count
+	 * @should search the search index once it is built
+	 * @should fill in the privilege level and provider roles
+	 * @should call each dao method once regardless of the page size
+	 */
+	PagedResult<AccountSummary> getAccounts(String query, String sortBy, int startIndex, int length);
+	
+	/**
+	 * Streams every account, with all its roles and provider roles, to the handler in user id order,
+	 * reading a batch of accounts at a time. Unlike {@link #getAllAccounts()} only the current batch
+	 * is held, so memory use doesn't depend on the number of accounts.
+	 *
+	 * @param handler receives each account
+	 * @throws IOException if the handler fails to write an account
+	 */
+	void exportAccounts(AccountSummaryHandler handler) throws IOException;
+	
+	/**
+	 * Builds the {@link AccountSearchIndex} from a single pass over the accounts, it is called when
+	 * the module starts and after that the index is kept up to date as accounts are saved
+	 *
+	 * @should index all the accounts
+	 */
+	void buildSearchIndex();
+	
 	/**
 	 * Gets all Capabilities, i.e roles with the {@link AdminUiActivator#ROLE_PREFIX_CAPABILITY}
-	 * prefix
+	 * prefix. The names come from the {@link RoleIndex} and the roles are read with one query
 	 *
 	 * @return a list of Roles
 	 * @should return all roles with the capability prefix
@@ -42,12 +115,48 @@ public interface AccountService {
 	
 	/**
 	 * Gets all Privilege Levels, i.e roles with the
+	 * {@link AdminUiConstants#ROLE_PREFIX_PRIVILEGE_LEVEL} prefix. The names come from the
+	 * {@link RoleIndex} and the roles are read with one query
 	 *
 	 * @return a list of Roles
 	 * @should return all roles with the privilege level prefix
 	 */
 	List<Role> getAllPrivilegeLevels();
 	
+	/**
+	 * Looks up all the roles with the specified names in the {@link RoleIndex} and reads the known
+	 * ones with one query, this should be used instead of calling
+	 * {@link org.openmrs.api.UserService#getRole(String)} once per name
+	 *
+	 * @param names the role names to look up
+	 * @return the roles keyed by name, names that don't match a role are left out
+	 * @should return the roles keyed by name
+	 * @should not hit the database when there are no names
+	 */
+	Map<String, Role> getRolesByName(Collection<String> names);
+	
+	/**
+	 * Gets the non retired users of the specified persons with a single query, accounts are
+	 * assembled from it instead of looking up the users of each person
+	 *
+	 * @param personIds the ids of the persons
+	 * @return the users keyed by person id, persons without users are left out
+	 * @should return the users keyed by person id
+	 * @should not hit the database when there are no person ids
+	 */
+	Map<Integer, List<User>> getUsersByPersonId(Collection<Integer> personIds);
+	
+	/**
+	 * Gets the non retired providers of the specified persons with a single query, accounts are
+	 * assembled from it instead of looking up the providers of each person
+	 *
+	 * @param personIds the ids of the persons, null for the providers of all persons
+	 * @return the providers keyed by person id, persons without providers are left out
+	 * @should return the providers keyed by person id
+	 * @should not hit the database when there are no person ids
+	 */
+	Map<Integer, List<Provider>> getProvidersByPersonId(Collection<Integer> personIds);
+	
 	/**
 	 * Gets an account for the Specified person object
 	 *
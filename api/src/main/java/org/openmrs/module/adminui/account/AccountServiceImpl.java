@@ -9,25 +9,40 @@
  */
 package org.openmrs.module.adminui.account;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.lang.StringUtils;
 import org.openmrs.Person;
 import org.openmrs.Role;
 import org.openmrs.User;
+import org.openmrs.api.APIException;
 import org.openmrs.api.PersonService;
 import org.openmrs.api.ProviderService;
 import org.openmrs.api.UserService;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.module.adminui.PagedResult;
+import org.openmrs.module.adminui.account.db.AccountDAO;
+import org.openmrs.module.providermanagement.Provider;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 import org.springframework.transaction.annotation.Transactional;
 
 @Transactional
 public class AccountServiceImpl extends BaseOpenmrsService implements AccountService {
 	
+	private AccountDAO dao;
+	
 	private UserService userService;
 	
 	private PersonService personService;
@@ -36,6 +51,17 @@ public class AccountServiceImpl extends BaseOpenmrsService implements AccountSer
 	
 	private ProviderManagementService providerManagementService;
 	
+	private RoleIndex roleIndex;
+	
+	private AccountSearchIndex searchIndex;
+	
+	/**
+	 * @param dao the dao to set
+	 */
+	public void setDao(AccountDAO dao) {
+		this.dao = dao;
+	}
+	
 	/**
 	 * @param userService the userService to set
 	 */
@@ -64,6 +90,20 @@ public class AccountServiceImpl extends BaseOpenmrsService implements AccountSer
 		this.personService = personService;
 	}
 	
+	/**
+	 * @param roleIndex the roleIndex to set
+	 */
+	public void setRoleIndex(RoleIndex roleIndex) {
+		this.roleIndex = roleIndex;
+	}
+	
+	/**
+	 * @param searchIndex the searchIndex to set
+	 */
+	public void setSearchIndex(AccountSearchIndex searchIndex) {
+		this.searchIndex = searchIndex;
+	}
+	
 	/**
 	 * @see org.openmrs.module.adminui.account.AccountService#saveAccount(Account)
 	 */
@@ -73,11 +113,23 @@ public class AccountServiceImpl extends BaseOpenmrsService implements AccountSer
 		account.save();
 	}
 	
+	/**
+	 * @see org.openmrs.module.adminui.account.AccountService#saveAccounts(java.util.List)
+	 */
+	@Override
+	@Transactional
+	public void saveAccounts(List<Account> accounts) {
+		for (Account account : accounts) {
+			account.save();
+		}
+		dao.flushAndClearSession();
+	}
+	
 	@Override
 	@Transactional(readOnly = true)
 	public List<Account> getAllAccounts() {
 		
-		Map<Person, Account> byPerson = new LinkedHashMap<Person, Account>();
+		Map<Person, List<User>> usersByPerson = new LinkedHashMap<Person, List<User>>();
 		
 		for (User user : userService.getAllUsers()) {
 			//exclude daemon user
@@ -85,52 +137,108 @@ public class AccountServiceImpl extends BaseOpenmrsService implements AccountSer
 				continue;
 			
 			if (!user.getPerson().isVoided()) {
-				byPerson.put(user.getPerson(), new Account(user.getPerson(), this, userService, providerService,
-				        providerManagementService, personService));
+				List<User> users = usersByPerson.get(user.getPerson());
+				if (users == null) {
+					users = new ArrayList<User>();
+					usersByPerson.put(user.getPerson(), users);
+				}
+				users.add(user);
 			}
 		}
 		
-		/*	Currently, OpenMRS core API doesn't support to view account associated with multiple providers. 
-		 * To implement it, below function will do the task, but supportive functions need to be added.
-		 */
-		
-		/*for (Provider provider : providerService.getAllProviders()) {
-
-		    // skip the baked-in unknown provider
-		    if (provider.equals(emrApiProperties.getUnknownProvider())) {
-		        continue;
-		    }
-
-		    if (provider.getPerson() == null)
-		        throw new APIException("Providers not associated to a person are not supported");
-
-		    AccountDomainWrapper account = byPerson.get(provider.getPerson());
-		    if (account == null && !provider.getPerson().isVoided()) {
-		        byPerson.put(provider.getPerson(), new AccountDomainWrapper(provider.getPerson(), this, userService,
-		                providerService, providerManagementService, personService, providerIdentifierGenerator));
-		    }
-		}*/
+		Map<Integer, List<Provider>> providersByPersonId = dao.getProvidersByPersonId(null);
 		
 		List<Account> accounts = new ArrayList<Account>();
-		for (Account account : byPerson.values()) {
-			accounts.add(account);
+		for (Map.Entry<Person, List<User>> entry : usersByPerson.entrySet()) {
+			Person person = entry.getKey();
+			accounts.add(new Account(person, entry.getValue(), providersByPersonId.get(person.getPersonId()), this,
+			        userService, providerService, providerManagementService, personService));
 		}
 		
 		return accounts;
 	}
 	
+	/**
+	 * @see org.openmrs.module.adminui.account.AccountService#getAccounts(String, String, int, int)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public PagedResult<AccountSummary> getAccounts(String query, String sortBy, int startIndex, int length) {
+		List<AccountSummary> summaries;
+		long totalCount;
+		if (StringUtils.isNotBlank(query) && searchIndex != null && searchIndex.isBuilt()) {
+			List<AccountSummary> matches = searchIndex.search(query);
+			if (sortBy != null) {
+				Collections.sort(matches, new AccountSummaryComparator(sortBy));
+			}
+			int fromIndex = Math.min(Math.max(startIndex, 0), matches.size());
+			int toIndex = Math.min(fromIndex + Math.max(length, 0), matches.size());
+			summaries = new ArrayList<AccountSummary>(matches.subList(fromIndex, toIndex));
+			totalCount = matches.size();
+		} else {
+			summaries = dao.getAccountSummaries(query, sortBy, startIndex, length);
+			totalCount = -1;
+		}
+		
+		Set<Integer> userIds = new HashSet<Integer>();
+		Set<Integer> personIds = new HashSet<Integer>();
+		for (AccountSummary summary : summaries) {
+			userIds.add(summary.getUserId());
+			personIds.add(summary.getPersonId());
+		}
+		
+		Map<Integer, List<String>> privilegeLevels = dao.getRoleNamesByUserId(userIds,
+		    AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL);
+		Map<Integer, List<String>> providerRoles = dao.getProviderRoleNamesByPersonId(personIds);
+		for (AccountSummary summary : summaries) {
+			List<String> levels = privilegeLevels.get(summary.getUserId());
+			if (levels != null) {
+				summary.setPrivilegeLevel(levels.get(0));
+			}
+			List<String> roles = providerRoles.get(summary.getPersonId());
+			if (roles != null) {
+				summary.setProviderRoles(roles);
+			}
+		}
+		
+		if (totalCount < 0) {
+			totalCount = dao.getAccountSummaryCount(query);
+		}
+		return new PagedResult<AccountSummary>(summaries, totalCount);
+	}
+	
+	/**
+	 * @see org.openmrs.module.adminui.account.AccountService#exportAccounts(AccountSummaryHandler)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public void exportAccounts(AccountSummaryHandler handler) throws IOException {
+		dao.scrollAccountSummaries(handler);
+	}
+	
+	/**
+	 * @see org.openmrs.module.adminui.account.AccountService#buildSearchIndex()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public void buildSearchIndex() {
+		AccountSearchIndex.Builder builder = searchIndex.newBuilder();
+		try {
+			dao.scrollAccountSummaries(builder);
+		}
+		catch (IOException e) {
+			throw new APIException("Failed to build the account search index", e);
+		}
+		builder.publish();
+	}
+	
 	/**
 	 * @see org.openmrs.module.adminui.account.AccountService#getAllCapabilities()
 	 */
 	@Override
 	@Transactional(readOnly = true)
 	public List<Role> getAllCapabilities() {
-		List<Role> capabilities = new ArrayList<Role>();
-		for (Role candidate : userService.getAllRoles()) {
-			if (candidate.getName().startsWith(AdminUiConstants.ROLE_PREFIX_CAPABILITY))
-				capabilities.add(candidate);
-		}
-		return capabilities;
+		return dao.getRoles(roleIndex.getRoleNamesWithPrefix(AdminUiConstants.ROLE_PREFIX_CAPABILITY));
 	}
 	
 	/**
@@ -139,12 +247,53 @@ public class AccountServiceImpl extends BaseOpenmrsService implements AccountSer
 	@Override
 	@Transactional(readOnly = true)
 	public List<Role> getAllPrivilegeLevels() {
-		List<Role> privilegeLevels = new ArrayList<Role>();
-		for (Role candidate : userService.getAllRoles()) {
-			if (candidate.getName().startsWith(AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL))
-				privilegeLevels.add(candidate);
+		return dao.getRoles(roleIndex.getRoleNamesWithPrefix(AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL));
+	}
+	
+	/**
+	 * @see org.openmrs.module.adminui.account.AccountService#getRolesByName(java.util.Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<String, Role> getRolesByName(Collection<String> names) {
+		Map<String, Role> ret = new HashMap<String, Role>();
+		if (names == null || names.isEmpty()) {
+			return ret;
+		}
+		List<String> knownNames = new ArrayList<String>();
+		for (String name : new LinkedHashSet<String>(names)) {
+			if (roleIndex.hasRole(name)) {
+				knownNames.add(name);
+			}
 		}
-		return privilegeLevels;
+		for (Role role : dao.getRoles(knownNames)) {
+			ret.put(role.getRole(), role);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @see org.openmrs.module.adminui.account.AccountService#getUsersByPersonId(java.util.Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, List<User>> getUsersByPersonId(Collection<Integer> personIds) {
+		if (personIds.isEmpty()) {
+			return new HashMap<Integer, List<User>>();
+		}
+		return dao.getUsersByPersonId(new HashSet<Integer>(personIds));
+	}
+	
+	/**
+	 * @see org.openmrs.module.adminui.account.AccountService#getProvidersByPersonId(java.util.Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, List<Provider>> getProvidersByPersonId(Collection<Integer> personIds) {
+		if (personIds != null && personIds.isEmpty()) {
+			return new HashMap<Integer, List<Provider>>();
+		}
+		return dao.getProvidersByPersonId(personIds != null ? new HashSet<Integer>(personIds) : null);
 	}
 	
 	/**
@@ -153,7 +302,53 @@ public class AccountServiceImpl extends BaseOpenmrsService implements AccountSer
 	@Override
 	@Transactional(readOnly = true)
 	public Account getAccountByPerson(Person person) {
-		return new Account(person, this, userService, providerService, providerManagementService, personService);
+		List<User> users = null;
+		List<Provider> providers = null;
+		if (person.getPersonId() != null) {
+			Set<Integer> personIds = Collections.singleton(person.getPersonId());
+			users = getUsersByPersonId(personIds).get(person.getPersonId());
+			providers = getProvidersByPersonId(personIds).get(person.getPersonId());
+		}
+		return new Account(person, users, providers, this, userService, providerService, providerManagementService,
+		        personService);
+	}
+	
+	/**
+	 * Orders the accounts found by the search index like the database query would
+	 */
+	private static class AccountSummaryComparator implements Comparator<AccountSummary> {
+		
+		private final String sortBy;
+		
+		AccountSummaryComparator(String sortBy) {
+			this.sortBy = sortBy;
+		}
+		
+		@Override
+		public int compare(AccountSummary a, AccountSummary b) {
+			int ret;
+			if (SORT_BY_USERNAME.equals(sortBy)) {
+				ret = compareValues(a.getUsername(), b.getUsername());
+			} else if (SORT_BY_PERSON_ID.equals(sortBy)) {
+				ret = a.getPersonId().compareTo(b.getPersonId());
+			} else {
+				ret = SORT_BY_GENDER.equals(sortBy) ? compareValues(a.getGender(), b.getGender()) : 0;
+				if (ret == 0) {
+					ret = compareValues(a.getFamilyName(), b.getFamilyName());
+				}
+				if (ret == 0) {
+					ret = compareValues(a.getGivenName(), b.getGivenName());
+				}
+			}
+			return ret != 0 ? ret : a.getUserId().compareTo(b.getUserId());
+		}
+		
+		private int compareValues(String a, String b) {
+			if (a == null || b == null) {
+				return a == null ? (b == null ? 0 : -1) : 1;
+			}
+			return a.compareToIgnoreCase(b);
+		}
 	}
 	
 }
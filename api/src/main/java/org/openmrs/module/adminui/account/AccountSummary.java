@@ -0,0 +1,113 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read only view of a user account made of plain values, unlike {@link Account} it holds no
+ * references to entities or services so it is cheap to create for listings
+ */
+public class AccountSummary {
+
+	private final Integer userId;
+
+	private final String username;
+
+	private final String systemId;
+
+	private final Integer personId;
+
+	private final String givenName;
+
+	private final String familyName;
+
+	private final String gender;
+
+	private String privilegeLevel;
+
+	private List<String> providerRoles = new ArrayList<String>();
+
+	private List<String> roles = new ArrayList<String>();
+
+	public AccountSummary(Integer userId, String username, String systemId, Integer personId, String givenName,
+	    String familyName, String gender) {
+		this.userId = userId;
+		this.username = username;
+		this.systemId = systemId;
+		this.personId = personId;
+		this.givenName = givenName;
+		this.familyName = familyName;
+		this.gender = gender;
+	}
+
+	public Integer getUserId() {
+		return userId;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getSystemId() {
+		return systemId;
+	}
+
+	public Integer getPersonId() {
+		return personId;
+	}
+
+	public String getGivenName() {
+		return givenName;
+	}
+
+	public String getFamilyName() {
+		return familyName;
+	}
+
+	public String getGender() {
+		return gender;
+	}
+
+	/**
+	 * @return the name of the user's privilege level role, or null if it has none
+	 */
+	public String getPrivilegeLevel() {
+		return privilegeLevel;
+	}
+
+	public void setPrivilegeLevel(String privilegeLevel) {
+		this.privilegeLevel = privilegeLevel;
+	}
+
+	/**
+	 * @return the names of the provider roles of the person's providers
+	 */
+	public List<String> getProviderRoles() {
+		return providerRoles;
+	}
+
+	public void setProviderRoles(List<String> providerRoles) {
+		this.providerRoles = providerRoles;
+	}
+
+	/**
+	 * @return the names of all the user's roles, only filled in when exporting accounts
+	 */
+	public List<String> getRoles() {
+		return roles;
+	}
+
+	public void setRoles(List<String> roles) {
+		this.roles = roles;
+	}
+
+}
@@ -0,0 +1,26 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import java.io.IOException;
+
+/**
+ * Receives the accounts streamed by {@link AccountService#exportAccounts(AccountSummaryHandler)}
+ * one at a time
+ */
+public interface AccountSummaryHandler {
+
+	/**
+	 * @param summary the next account, it is not referenced anymore once this returns
+	 * @throws IOException if the account can't be written out
+	 */
+	void handle(AccountSummary summary) throws IOException;
+
+}
@@ -68,6 +68,7 @@ public class AdminUiAccountValidator implements Validator {
 	 * @should reject an empty given name
 	 * @should reject an empty gender
 	 * @should reject if none of the checkbox (user or provider) ticked
+	 * @should reject role names that don't match a role
 	 * @see org.springframework.validation.Validator#validate(java.lang.Object,
 	 *      org.springframework.validation.Errors)
 	 **/
@@ -82,6 +83,7 @@ public class AdminUiAccountValidator implements Validator {
 		checkIfGivenAndFamilyNameAreNotNull(errors, account);
 		checkIfGenderIsNull(errors, account);
 		checkIfUserAndProviderAreNull(errors, account);
+		checkIfRolesAreKnown(errors, account);
 		
 	}
 	
@@ -110,4 +112,10 @@ public class AdminUiAccountValidator implements Validator {
 		}
 	}
 	
+	private void checkIfRolesAreKnown(Errors errors, Account account) {
+		for (String roleName : account.getUnknownRoleNames()) {
+			errors.reject("adminui.account.error.unknownRole", new Object[] { roleName }, null);
+		}
+	}
+	
 }
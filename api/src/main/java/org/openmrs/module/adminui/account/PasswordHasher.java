@@ -0,0 +1,159 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.util.Security;
+
+/**
+ * Hashes the passwords of accounts created in bulk on a bounded pool of worker threads. The pool
+ * size and queue limit are read from {@link AdminUiConstants#GP_PASSWORD_HASHING_POOL_SIZE} and
+ * {@link AdminUiConstants#GP_PASSWORD_HASHING_QUEUE_SIZE} when the pool is first used. When the
+ * queue is full the calling thread hashes the password itself, so a bulk job slows down instead of
+ * taking more threads away from interactive requests.
+ */
+public class PasswordHasher {
+
+	private static final int DEFAULT_QUEUE_SIZE = 100;
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	private AdministrationService administrationService;
+
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * @param administrationService the administrationService to set
+	 */
+	public void setAdministrationService(AdministrationService administrationService) {
+		this.administrationService = administrationService;
+	}
+
+	/**
+	 * Hashes each of the specified passwords with its own random salt
+	 *
+	 * @param passwords the passwords to hash
+	 * @return the hashed passwords in the same order
+	 * @should hash each password with its own salt
+	 * @should return the hashes in the order of the passwords
+	 * @should hash the passwords on several threads at once
+	 */
+	public List<HashedPassword> hash(List<String> passwords) {
+		ThreadPoolExecutor executor = getExecutor();
+		List<Future<HashedPassword>> futures = new ArrayList<Future<HashedPassword>>(passwords.size());
+		for (final String password : passwords) {
+			futures.add(executor.submit(new Callable<HashedPassword>() {
+
+				@Override
+				public HashedPassword call() throws Exception {
+					return hash(password);
+				}
+			}));
+		}
+
+		List<HashedPassword> hashedPasswords = new ArrayList<HashedPassword>(passwords.size());
+		try {
+			for (Future<HashedPassword> future : futures) {
+				hashedPasswords.add(future.get());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIException("Interrupted while hashing passwords", e);
+		}
+		catch (ExecutionException e) {
+			throw new APIException("Failed to hash a password", e.getCause());
+		}
+		return hashedPasswords;
+	}
+
+	/**
+	 * Hashes a password with a new random salt the same way core does when it saves a new user, called
+	 * on the worker threads
+	 *
+	 * @param password the password to hash
+	 * @return the hash and its salt
+	 */
+	protected HashedPassword hash(String password) {
+		String salt = Security.getRandomToken();
+		return new HashedPassword(Security.encodeString(password + salt), salt);
+	}
+
+	/**
+	 * Stops the worker threads, called when the module's context is closed
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			int poolSize = getIntegerProperty(AdminUiConstants.GP_PASSWORD_HASHING_POOL_SIZE, Math.max(1, Runtime
+			        .getRuntime().availableProcessors() / 2));
+			int queueSize = getIntegerProperty(AdminUiConstants.GP_PASSWORD_HASHING_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+			executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+			        new ArrayBlockingQueue<Runnable>(queueSize), new HashingThreadFactory(),
+			        new ThreadPoolExecutor.CallerRunsPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			if (log.isDebugEnabled()) {
+				log.debug("Hashing passwords on " + poolSize + " threads with a queue of " + queueSize);
+			}
+		}
+		return executor;
+	}
+
+	private int getIntegerProperty(String name, int defaultValue) {
+		String value = administrationService.getGlobalProperty(name);
+		if (StringUtils.isNotBlank(value)) {
+			try {
+				int intValue = Integer.parseInt(value.trim());
+				if (intValue > 0) {
+					return intValue;
+				}
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid value for " + name + ": " + value);
+			}
+		}
+		return defaultValue;
+	}
+
+	private static class HashingThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "adminui-password-hashing-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -0,0 +1,257 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Role;
+import org.openmrs.api.UserService;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In memory index of the names of all roles, by the {@link AdminUiConstants} role prefixes. It is
+ * built from a single {@link UserService#getAllRoles()} call the first time it is used and then
+ * kept up to date one role at a time by {@link RoleIndexAdvice} when roles are saved or purged.
+ * <p>
+ * Only the names are kept, the roles themselves belong to the session they were loaded in, so
+ * callers get the roles of their own session from the names. The index is replaced as a whole on
+ * every change so readers never need to lock.
+ */
+public class RoleIndex {
+
+	private static final String[] PREFIXES = { AdminUiConstants.ROLE_PREFIX_CAPABILITY,
+	        AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL };
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	private UserService userService;
+
+	private volatile Snapshot snapshot;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong rebuildCount = new AtomicLong();
+
+	private volatile long lastRebuildTime;
+
+	private final AtomicLong totalRebuildTime = new AtomicLong();
+
+	/**
+	 * @param userService the userService to set
+	 */
+	public void setUserService(UserService userService) {
+		this.userService = userService;
+	}
+
+	/**
+	 * @param prefix one of the AdminUiConstants.ROLE_PREFIX_* prefixes
+	 * @return the names of the roles that start with the prefix sorted
+	 */
+	public List<String> getRoleNamesWithPrefix(String prefix) {
+		List<String> names = getSnapshot().namesByPrefix.get(prefix);
+		if (names == null) {
+			throw new IllegalArgumentException("Roles are not indexed by the prefix: " + prefix);
+		}
+		return new ArrayList<String>(names);
+	}
+
+	/**
+	 * @param name the name of a role
+	 * @return true if there is a role with the specified name
+	 */
+	public boolean hasRole(String name) {
+		return getSnapshot().names.contains(name);
+	}
+
+	/**
+	 * Adds the specified role to the index once the current transaction commits, or right away if
+	 * there is none, so a role that is rolled back is never indexed
+	 *
+	 * @param name the name of the saved role
+	 */
+	public void roleSaved(final String name) {
+		afterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				update(name, true);
+			}
+		});
+	}
+
+	/**
+	 * Removes the specified role from the index once the current transaction commits, or right away
+	 * if there is none
+	 *
+	 * @param name the name of the purged role
+	 */
+	public void rolePurged(final String name) {
+		afterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				update(name, false);
+			}
+		});
+	}
+
+	/**
+	 * Discards the index so that it is rebuilt from the database the next time it is used
+	 */
+	public synchronized void invalidate() {
+		snapshot = null;
+	}
+
+	/**
+	 * @return the number of lookups answered by an already built index
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the number of lookups that had to build the index first
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return the fraction of lookups answered by an already built index
+	 */
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return the number of times the index was built from the database
+	 */
+	public long getRebuildCount() {
+		return rebuildCount.get();
+	}
+
+	/**
+	 * @return the time in milliseconds the last build from the database took
+	 */
+	public long getLastRebuildTime() {
+		return lastRebuildTime;
+	}
+
+	/**
+	 * @return the total time in milliseconds spent building the index from the database
+	 */
+	public long getTotalRebuildTime() {
+		return totalRebuildTime.get();
+	}
+
+	private Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		if (current != null) {
+			hitCount.incrementAndGet();
+			return current;
+		}
+		synchronized (this) {
+			if (snapshot != null) {
+				hitCount.incrementAndGet();
+			} else {
+				missCount.incrementAndGet();
+				rebuild();
+			}
+			return snapshot;
+		}
+	}
+
+	private void afterCommit(final Runnable change) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					change.run();
+				}
+			});
+		} else {
+			change.run();
+		}
+	}
+
+	private synchronized void update(String name, boolean add) {
+		if (snapshot == null) {
+			return;
+		}
+		SortedSet<String> names = new TreeSet<String>(snapshot.names);
+		if (add) {
+			names.add(name);
+		} else {
+			names.remove(name);
+		}
+		publish(names);
+	}
+
+	private void rebuild() {
+		long start = System.currentTimeMillis();
+		SortedSet<String> names = new TreeSet<String>();
+		for (Role role : userService.getAllRoles()) {
+			names.add(role.getRole());
+		}
+		publish(names);
+
+		lastRebuildTime = System.currentTimeMillis() - start;
+		totalRebuildTime.addAndGet(lastRebuildTime);
+		rebuildCount.incrementAndGet();
+		if (log.isDebugEnabled()) {
+			log.debug("Indexed " + names.size() + " roles in " + lastRebuildTime + "ms");
+		}
+	}
+
+	private void publish(SortedSet<String> names) {
+		Map<String, List<String>> byPrefix = new HashMap<String, List<String>>();
+		for (String prefix : PREFIXES) {
+			List<String> withPrefix = new ArrayList<String>();
+			for (String name : names.tailSet(prefix)) {
+				if (!name.startsWith(prefix)) {
+					break;
+				}
+				withPrefix.add(name);
+			}
+			byPrefix.put(prefix, Collections.unmodifiableList(withPrefix));
+		}
+
+		snapshot = new Snapshot(Collections.unmodifiableSortedSet(names), byPrefix);
+	}
+
+	private static class Snapshot {
+
+		private final SortedSet<String> names;
+
+		private final Map<String, List<String>> namesByPrefix;
+
+		Snapshot(SortedSet<String> names, Map<String, List<String>> namesByPrefix) {
+			this.names = names;
+			this.namesByPrefix = namesByPrefix;
+		}
+	}
+
+}
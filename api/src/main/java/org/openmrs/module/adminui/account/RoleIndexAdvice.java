@@ -0,0 +1,44 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import java.lang.reflect.Method;
+
+import org.openmrs.Role;
+import org.openmrs.api.UserService;
+import org.openmrs.api.context.Context;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Keeps the {@link RoleIndex} up to date when roles are saved or purged through the
+ * {@link UserService}, it is registered as advice around the UserService in config.xml. The index
+ * only applies the change once the transaction commits.
+ */
+public class RoleIndexAdvice implements AfterReturningAdvice {
+	
+	/**
+	 * @see org.springframework.aop.AfterReturningAdvice#afterReturning(Object, Method, Object[],
+	 *      Object)
+	 */
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if ("saveRole".equals(method.getName())) {
+			Role role = (Role) (returnValue != null ? returnValue : args[0]);
+			getRoleIndex().roleSaved(role.getRole());
+		} else if ("purgeRole".equals(method.getName())) {
+			getRoleIndex().rolePurged(((Role) args[0]).getRole());
+		}
+	}
+	
+	private RoleIndex getRoleIndex() {
+		return Context.getRegisteredComponent("adminRoleIndex", RoleIndex.class);
+	}
+	
+}
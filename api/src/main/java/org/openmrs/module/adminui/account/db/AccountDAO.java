@@ -0,0 +1,109 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account.db;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.module.adminui.account.AccountService;
+import org.openmrs.module.adminui.account.AccountSummary;
+import org.openmrs.module.adminui.account.AccountSummaryHandler;
+import org.openmrs.module.providermanagement.Provider;
+
+/**
+ * Database access for {@link AccountService}
+ */
+public interface AccountDAO {
+
+	/**
+	 * Gets a page of account summaries for the users other than the daemon user whose person is not
+	 * voided, the privilege level and provider roles are not filled in.
+	 *
+	 * @param query words that must each start a word of the username, system id, given name or
+	 *            family name, may be null
+	 * @param sortBy one of the AccountService SORT_BY_* keys
+	 * @param startIndex the index of the first row to return
+	 * @param length the maximum number of rows to return
+	 * @return the account summaries in the page
+	 */
+	List<AccountSummary> getAccountSummaries(String query, String sortBy, int startIndex, int length);
+
+	/**
+	 * @param query words that must each start a word of the username, system id, given name or
+	 *            family name, may be null
+	 * @return the number of users matching the query
+	 * @see #getAccountSummaries(String, String, int, int)
+	 */
+	long getAccountSummaryCount(String query);
+
+	/**
+	 * Passes every account to the handler, with its privilege level, roles and provider roles filled
+	 * in, reading them in batches ordered by user id
+	 *
+	 * @param handler receives each account
+	 * @throws IOException if the handler fails
+	 * @see org.openmrs.module.adminui.account.AccountService#exportAccounts(AccountSummaryHandler)
+	 */
+	void scrollAccountSummaries(AccountSummaryHandler handler) throws IOException;
+	
+	/**
+	 * Gets the names of the roles with the specified prefix of the specified users in a single query
+	 *
+	 * @param userIds the ids of the users
+	 * @param prefix the role name prefix
+	 * @return the role names keyed by user id
+	 */
+	Map<Integer, List<String>> getRoleNamesByUserId(Collection<Integer> userIds, String prefix);
+
+	/**
+	 * Gets the provider role names of the non retired providers of the specified persons in a single
+	 * query
+	 *
+	 * @param personIds the ids of the persons
+	 * @return the provider role names keyed by person id
+	 */
+	Map<Integer, List<String>> getProviderRoleNamesByPersonId(Collection<Integer> personIds);
+	
+	/**
+	 * Gets the non retired users of the specified persons in a single query
+	 *
+	 * @param personIds the ids of the persons
+	 * @return the users keyed by person id in the order they were created
+	 */
+	Map<Integer, List<User>> getUsersByPersonId(Collection<Integer> personIds);
+	
+	/**
+	 * Gets the non retired providers of the specified persons in a single query
+	 *
+	 * @param personIds the ids of the persons, null for all persons
+	 * @return the providers keyed by person id in the order they were created
+	 */
+	Map<Integer, List<Provider>> getProvidersByPersonId(Collection<Integer> personIds);
+	
+	/**
+	 * Gets the roles with the specified names with a single query
+	 *
+	 * @param names the names of the roles
+	 * @return the roles in the order of the names, names of roles that don't exist are skipped
+	 * @should get the roles with a single query
+	 * @should return the roles in the order of the names
+	 */
+	List<Role> getRoles(Collection<String> names);
+	
+	/**
+	 * Writes the pending changes to the database and evicts all entities from the current session
+	 */
+	void flushAndClearSession();
+
+}
@@ -0,0 +1,320 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account.db.hibernate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.Query;
+import org.hibernate.SessionFactory;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.module.adminui.account.AccountService;
+import org.openmrs.module.adminui.account.AccountSummary;
+import org.openmrs.module.adminui.account.AccountSummaryHandler;
+import org.openmrs.module.adminui.account.db.AccountDAO;
+import org.openmrs.module.providermanagement.Provider;
+
+public class HibernateAccountDAO implements AccountDAO {
+
+	private static final int EXPORT_BATCH_SIZE = 1000;
+
+	private static final String[] SEARCHED_PROPERTIES = { "u.username", "u.systemId", "pn.givenName", "pn.familyName" };
+
+	private SessionFactory sessionFactory;
+
+	/**
+	 * @param sessionFactory the sessionFactory to set
+	 */
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.account.db.AccountDAO#getAccountSummaries(String, String, int,
+	 *      int)
+	 */
+	@Override
+	public List<AccountSummary> getAccountSummaries(String query, String sortBy, int startIndex, int length) {
+		Query q = createAccountSummaryQuery("select u.userId, u.username, u.systemId, p.personId, pn.givenName,"
+		        + " pn.familyName, p.gender", query, getOrderBy(sortBy));
+		q.setFirstResult(startIndex);
+		q.setMaxResults(length);
+
+		List<AccountSummary> summaries = new ArrayList<AccountSummary>();
+		for (Object o : q.list()) {
+			Object[] row = (Object[]) o;
+			summaries.add(new AccountSummary((Integer) row[0], (String) row[1], (String) row[2], (Integer) row[3],
+			        (String) row[4], (String) row[5], (String) row[6]));
+		}
+		return summaries;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.account.db.AccountDAO#getAccountSummaryCount(String)
+	 */
+	@Override
+	public long getAccountSummaryCount(String query) {
+		Query q = createAccountSummaryQuery("select count(u.userId)", query, "");
+		return ((Number) q.uniqueResult()).longValue();
+	}
+
+	/**
+	 * Reads the accounts in batches ordered by user id, each batch starting after the last user of
+	 * the previous one. The roles and the provider roles of a batch are then read with one query
+	 * each, instead of joining them to the users, which returns a row for every combination of a
+	 * role and a provider role of a user.
+	 *
+	 * @see org.openmrs.module.adminui.account.db.AccountDAO#scrollAccountSummaries(AccountSummaryHandler)
+	 */
+	@Override
+	public void scrollAccountSummaries(AccountSummaryHandler handler) throws IOException {
+		Integer lastUserId = 0;
+		List<AccountSummary> batch;
+		do {
+			Query q = createAccountSummaryQuery("select u.userId, u.username, u.systemId, p.personId, pn.givenName,"
+			        + " pn.familyName, p.gender", null, " and u.userId > :lastUserId order by u.userId");
+			q.setInteger("lastUserId", lastUserId);
+			q.setMaxResults(EXPORT_BATCH_SIZE);
+			q.setReadOnly(true);
+
+			batch = new ArrayList<AccountSummary>();
+			List<Integer> userIds = new ArrayList<Integer>();
+			Set<Integer> personIds = new HashSet<Integer>();
+			for (Object o : q.list()) {
+				Object[] row = (Object[]) o;
+				batch.add(new AccountSummary((Integer) row[0], (String) row[1], (String) row[2], (Integer) row[3],
+				        (String) row[4], (String) row[5], (String) row[6]));
+				userIds.add((Integer) row[0]);
+				personIds.add((Integer) row[3]);
+			}
+			if (batch.isEmpty()) {
+				break;
+			}
+
+			Map<Integer, List<String>> rolesByUserId = getRoleNamesByUserId(userIds, "");
+			Map<Integer, List<String>> providerRolesByPersonId = getProviderRoleNamesByPersonId(personIds);
+			for (AccountSummary summary : batch) {
+				handler.handle(complete(summary, rolesByUserId.get(summary.getUserId()),
+				    providerRolesByPersonId.get(summary.getPersonId())));
+			}
+			lastUserId = batch.get(batch.size() - 1).getUserId();
+		}
+		while (batch.size() == EXPORT_BATCH_SIZE);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.account.db.AccountDAO#getRoleNamesByUserId(java.util.Collection,
+	 *      String)
+	 */
+	@Override
+	public Map<Integer, List<String>> getRoleNamesByUserId(Collection<Integer> userIds, String prefix) {
+		if (userIds.isEmpty()) {
+			return new HashMap<Integer, List<String>>();
+		}
+		Query q = sessionFactory.getCurrentSession().createQuery(
+		    "select u.userId, r.role from User u join u.roles r where u.userId in (:userIds) and r.role like :prefix"
+		            + " order by r.role");
+		q.setParameterList("userIds", userIds);
+		q.setString("prefix", prefix + "%");
+		return groupByKey(q.list());
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.account.db.AccountDAO#getProviderRoleNamesByPersonId(java.util.Collection)
+	 */
+	@Override
+	public Map<Integer, List<String>> getProviderRoleNamesByPersonId(Collection<Integer> personIds) {
+		if (personIds.isEmpty()) {
+			return new HashMap<Integer, List<String>>();
+		}
+		Query q = sessionFactory.getCurrentSession().createQuery(
+		    "select p.person.personId, pr.name from org.openmrs.module.providermanagement.Provider p"
+		            + " join p.providerRole pr where p.person.personId in (:personIds) and p.retired = false"
+		            + " order by pr.name");
+		q.setParameterList("personIds", personIds);
+		return groupByKey(q.list());
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.account.db.AccountDAO#getUsersByPersonId(java.util.Collection)
+	 */
+	@Override
+	public Map<Integer, List<User>> getUsersByPersonId(Collection<Integer> personIds) {
+		Map<Integer, List<User>> ret = new HashMap<Integer, List<User>>();
+		if (personIds.isEmpty()) {
+			return ret;
+		}
+		Query q = sessionFactory.getCurrentSession().createQuery(
+		    "select u from User u where u.person.personId in (:personIds) and u.retired = false order by u.userId");
+		q.setParameterList("personIds", personIds);
+		for (Object o : q.list()) {
+			User user = (User) o;
+			Integer personId = user.getPerson().getPersonId();
+			List<User> users = ret.get(personId);
+			if (users == null) {
+				users = new ArrayList<User>();
+				ret.put(personId, users);
+			}
+			users.add(user);
+		}
+		return ret;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.account.db.AccountDAO#getProvidersByPersonId(java.util.Collection)
+	 */
+	@Override
+	public Map<Integer, List<Provider>> getProvidersByPersonId(Collection<Integer> personIds) {
+		Map<Integer, List<Provider>> ret = new HashMap<Integer, List<Provider>>();
+		if (personIds != null && personIds.isEmpty()) {
+			return ret;
+		}
+		StringBuilder hql = new StringBuilder("select p from org.openmrs.module.providermanagement.Provider p");
+		hql.append(" left join fetch p.providerRole where p.retired = false and p.person is not null");
+		if (personIds != null) {
+			hql.append(" and p.person.personId in (:personIds)");
+		}
+		hql.append(" order by p.providerId");
+		
+		Query q = sessionFactory.getCurrentSession().createQuery(hql.toString());
+		if (personIds != null) {
+			q.setParameterList("personIds", personIds);
+		}
+		for (Object o : q.list()) {
+			Provider provider = (Provider) o;
+			Integer personId = provider.getPerson().getPersonId();
+			List<Provider> providers = ret.get(personId);
+			if (providers == null) {
+				providers = new ArrayList<Provider>();
+				ret.put(personId, providers);
+			}
+			providers.add(provider);
+		}
+		return ret;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.account.db.AccountDAO#getRoles(java.util.Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Role> getRoles(Collection<String> names) {
+		List<Role> roles = new ArrayList<Role>();
+		if (names.isEmpty()) {
+			return roles;
+		}
+		Query q = sessionFactory.getCurrentSession().createQuery("from Role r where r.role in (:names)");
+		q.setParameterList("names", names);
+		Map<String, Role> rolesByName = new HashMap<String, Role>();
+		for (Role role : (List<Role>) q.list()) {
+			rolesByName.put(role.getRole(), role);
+		}
+		for (String name : names) {
+			Role role = rolesByName.get(name);
+			if (role != null) {
+				roles.add(role);
+			}
+		}
+		return roles;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.account.db.AccountDAO#flushAndClearSession()
+	 */
+	@Override
+	public void flushAndClearSession() {
+		sessionFactory.getCurrentSession().flush();
+		sessionFactory.getCurrentSession().clear();
+	}
+
+	private AccountSummary complete(AccountSummary summary, List<String> roles, List<String> providerRoles) {
+		if (providerRoles != null) {
+			summary.setProviderRoles(providerRoles);
+		}
+		if (roles == null) {
+			return summary;
+		}
+		summary.setRoles(roles);
+		for (String role : roles) {
+			if (role.startsWith(AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL)) {
+				summary.setPrivilegeLevel(role);
+				break;
+			}
+		}
+		return summary;
+	}
+
+	/**
+	 * Matches the accounts the same way as the AccountSearchIndex without the typo tolerance, each
+	 * word of the query has to start a word of the username, system id, given name or family name
+	 */
+	private Query createAccountSummaryQuery(String select, String query, String orderBy) {
+		String[] words = StringUtils.isNotBlank(query) ? StringUtils.split(query.trim().toLowerCase())
+		        : new String[0];
+		StringBuilder hql = new StringBuilder(select);
+		hql.append(" from User u join u.person p left join p.names pn with pn.preferred = true and pn.voided = false");
+		hql.append(" where p.voided = false and u.uuid <> :daemonUserUuid");
+		for (int i = 0; i < words.length; i++) {
+			hql.append(" and (");
+			for (int j = 0; j < SEARCHED_PROPERTIES.length; j++) {
+				if (j > 0) {
+					hql.append(" or ");
+				}
+				hql.append("lower(").append(SEARCHED_PROPERTIES[j]).append(") like :start").append(i);
+				hql.append(" or lower(").append(SEARCHED_PROPERTIES[j]).append(") like :word").append(i);
+			}
+			hql.append(")");
+		}
+		hql.append(orderBy);
+
+		Query q = sessionFactory.getCurrentSession().createQuery(hql.toString());
+		q.setString("daemonUserUuid", AdminUiConstants.DAEMON_USER_UUID);
+		for (int i = 0; i < words.length; i++) {
+			q.setString("start" + i, words[i] + "%");
+			q.setString("word" + i, "% " + words[i] + "%");
+		}
+		return q;
+	}
+
+	private String getOrderBy(String sortBy) {
+		if (AccountService.SORT_BY_USERNAME.equals(sortBy)) {
+			return " order by u.username, u.userId";
+		} else if (AccountService.SORT_BY_GENDER.equals(sortBy)) {
+			return " order by p.gender, pn.familyName, pn.givenName, u.userId";
+		} else if (AccountService.SORT_BY_PERSON_ID.equals(sortBy)) {
+			return " order by p.personId, u.userId";
+		}
+		return " order by pn.familyName, pn.givenName, u.userId";
+	}
+
+	private Map<Integer, List<String>> groupByKey(List<?> rows) {
+		Map<Integer, List<String>> ret = new HashMap<Integer, List<String>>();
+		for (Object o : rows) {
+			Object[] row = (Object[]) o;
+			List<String> values = ret.get(row[0]);
+			if (values == null) {
+				values = new ArrayList<String>();
+				ret.put((Integer) row[0], values);
+			}
+			values.add((String) row[1]);
+		}
+		return ret;
+	}
+
+}
@@ -0,0 +1,151 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.customdatatype;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.customdatatype.CustomDatatypeUtil;
+
+/**
+ * The custom datatypes and datatype handlers the attribute type editors offer, with their display
+ * labels. Looking them up with {@link CustomDatatypeUtil} asks the Spring context for every bean of
+ * each type, so they are looked up once when the context is refreshed, i.e. when modules start or
+ * stop, by {@link org.openmrs.module.adminui.AdminUiActivator#contextRefreshed()}.
+ * <p>
+ * The lists are replaced as a whole on every refresh so readers never need to lock, and the maps
+ * and lists handed out can't be modified.
+ */
+public class CustomDatatypeRegistry {
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	private volatile Snapshot snapshot;
+
+	/**
+	 * @return the datatype classnames keyed to their labels, sorted by label
+	 */
+	public Map<String, String> getDatatypes() {
+		return getSnapshot().datatypes;
+	}
+
+	/**
+	 * @return the handler classnames keyed to their labels, sorted by label
+	 */
+	public Map<String, String> getHandlers() {
+		return getSnapshot().handlers;
+	}
+
+	/**
+	 * @return the datatype classnames sorted by label
+	 */
+	public List<String> getDatatypeClassnames() {
+		return getSnapshot().datatypeClassnames;
+	}
+
+	/**
+	 * @return the handler classnames sorted by label
+	 */
+	public List<String> getHandlerClassnames() {
+		return getSnapshot().handlerClassnames;
+	}
+
+	/**
+	 * Looks up the datatypes and handlers of the current context again
+	 */
+	public void refresh() {
+		refresh(CustomDatatypeUtil.getDatatypeClassnames(), CustomDatatypeUtil.getHandlerClassnames());
+	}
+
+	/**
+	 * Replaces the datatypes and handlers
+	 *
+	 * @should label and sort the datatypes and handlers
+	 * @should hand out maps that can't be modified
+	 */
+	void refresh(Collection<String> datatypeClassnames, Collection<String> handlerClassnames) {
+		snapshot = new Snapshot(labelAndSort(datatypeClassnames), labelAndSort(handlerClassnames));
+		log.info("Found " + datatypeClassnames.size() + " custom datatypes and " + handlerClassnames.size()
+		        + " datatype handlers");
+	}
+
+	private Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+		if (current == null) {
+			// the context was refreshed before the module started
+			synchronized (this) {
+				current = snapshot;
+				if (current == null) {
+					refresh();
+					current = snapshot;
+				}
+			}
+		}
+		return current;
+	}
+
+	private Map<String, String> labelAndSort(Collection<String> classnames) {
+		final Map<String, String> labels = new LinkedHashMap<String, String>();
+		for (String classname : classnames) {
+			labels.put(classname, beautify(classname));
+		}
+		List<String> sorted = new ArrayList<String>(labels.keySet());
+		Collections.sort(sorted, new Comparator<String>() {
+
+			@Override
+			public int compare(String a, String b) {
+				int ret = labels.get(a).compareToIgnoreCase(labels.get(b));
+				return ret != 0 ? ret : a.compareTo(b);
+			}
+		});
+
+		Map<String, String> ret = new LinkedHashMap<String, String>();
+		for (String classname : sorted) {
+			ret.put(classname, labels.get(classname));
+		}
+		return Collections.unmodifiableMap(ret);
+	}
+
+	/**
+	 * Beautifies a fully qualified java class name, e.g. org.openmrs.customdatatype.datatype.FreeTextDatatype
+	 * becomes Free Text Datatype
+	 */
+	static String beautify(String classname) {
+		String[] sections = StringUtils.splitByCharacterTypeCamelCase(classname.substring(classname.lastIndexOf(".") + 1));
+		return StringUtils.join(sections, " ");
+	}
+
+	private static class Snapshot {
+
+		private final Map<String, String> datatypes;
+
+		private final Map<String, String> handlers;
+
+		private final List<String> datatypeClassnames;
+
+		private final List<String> handlerClassnames;
+
+		Snapshot(Map<String, String> datatypes, Map<String, String> handlers) {
+			this.datatypes = datatypes;
+			this.handlers = handlers;
+			this.datatypeClassnames = Collections.unmodifiableList(new ArrayList<String>(datatypes.keySet()));
+			this.handlerClassnames = Collections.unmodifiableList(new ArrayList<String>(handlers.keySet()));
+		}
+	}
+
+}
@@ -0,0 +1,338 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+import org.openmrs.annotation.Authorized;
+import org.openmrs.api.APIException;
+import org.openmrs.module.adminui.PagedResult;
+import org.openmrs.util.PrivilegeConstants;
+
+/**
+ * Location queries the admin pages need that {@link org.openmrs.api.LocationService} can only
+ * answer by walking the locations one lazy load at a time
+ */
+public interface AdminUiLocationService {
+
+	String SORT_BY_NAME = "name";
+
+	String SORT_BY_DESCRIPTION = "description";
+
+	String SORT_BY_PARENT = "parent";
+
+	/**
+	 * Gets the tree of all locations, retired ones included, with their tag names. The locations
+	 * and their tags are read with two flat queries however large and deep the tree is.
+	 *
+	 * @return the location hierarchy
+	 * @should link the locations to their parents
+	 * @should run two queries regardless of the number of locations
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	LocationHierarchy getLocationHierarchy();
+
+	/**
+	 * Gets the direct children of a location, or the root locations, with their tag names and the
+	 * number of children each of them has. It runs the same two queries however large the tree is,
+	 * so a tree can be expanded one level at a time. The levels are cached until the
+	 * {@link LocationVersion} changes.
+	 *
+	 * @param parentLocationId the id of the parent location, null for the root locations
+	 * @return the child locations sorted by name, their own children are not loaded
+	 * @should return the children with their tags and child counts
+	 * @should load each level once per location version
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	List<LocationNode> getChildLocationNodes(Integer parentLocationId);
+
+	/**
+	 * Gets a page of the locations with a word in their name starting with the query, e.g. for a
+	 * typeahead. The names are searched in a prefix index that is only rebuilt, with one query, after
+	 * the locations change, so a search doesn't scan the location table.
+	 *
+	 * @param query the start of a word in the name, case insensitive, blank for all locations
+	 * @param includeRetired whether to include retired locations
+	 * @param startIndex the index of the first location to return
+	 * @param length the maximum number of locations to return
+	 * @return the page of matching locations sorted by name, with their parent location names
+	 * @should return a page of the locations with a word starting with the query
+	 * @should rebuild the index only when the locations change
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	PagedResult<LocationNode> searchLocations(String query, boolean includeRetired, int startIndex, int length);
+
+	/**
+	 * Gets a single page of the locations for a list, with their tag names. Only the locations in
+	 * the page are read, with one query, then the tags of just those locations with another and the
+	 * total number of matches with a count, so listing the locations costs the same however many
+	 * there are.
+	 *
+	 * @param query the start of the name, case insensitive, blank for all locations
+	 * @param locationTagId the id of a tag the locations must have, null for any
+	 * @param parentLocationId the id of the parent of the locations, null for any
+	 * @param includeRetired whether to include retired locations
+	 * @param sortBy one of {@link #SORT_BY_NAME}, {@link #SORT_BY_DESCRIPTION} or
+	 *            {@link #SORT_BY_PARENT}, defaults to {@link #SORT_BY_NAME}
+	 * @param startIndex the index of the first location to return
+	 * @param length the maximum number of locations to return
+	 * @return the page of locations, with their descriptions and parent location names, and the
+	 *         total number of matching locations
+	 * @should return the page of locations with their tags and the total count
+	 * @should fetch the tags of the page only
+	 * @should not count the locations when the first page is not full
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	PagedResult<LocationNode> getLocations(String query, Integer locationTagId, Integer parentLocationId,
+	                                       boolean includeRetired, String sortBy, int startIndex, int length);
+
+	/**
+	 * Gets the unretired locations nearest to a point, e.g. to spot duplicate or misplaced
+	 * locations. They are searched in a spatial index of the location positions that is only
+	 * rebuilt, with one query, after the locations change.
+	 *
+	 * @param latitude the latitude of the point in decimal degrees
+	 * @param longitude the longitude of the point in decimal degrees
+	 * @param count the maximum number of locations to return
+	 * @return the nearest locations with a position, nearest first
+	 * @should return the nearest locations from an index rebuilt only when the locations change
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	List<NearbyLocation> getNearestLocations(double latitude, double longitude, int count);
+
+	/**
+	 * Gets the unretired locations within a distance of a point, searched in the same spatial index
+	 * as {@link #getNearestLocations(double, double, int)}
+	 *
+	 * @param latitude the latitude of the point in decimal degrees
+	 * @param longitude the longitude of the point in decimal degrees
+	 * @param distance the maximum distance in metres
+	 * @return the locations within the distance, nearest first
+	 * @should return the locations within the distance
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	List<NearbyLocation> getLocationsWithinDistance(double latitude, double longitude, double distance);
+
+	/**
+	 * Gets the location tags with the specified ids in a single query, e.g. the tags checked on the
+	 * location form
+	 *
+	 * @param locationTagIds the ids of the tags
+	 * @return the tags, ids without a tag are left out
+	 * @should fetch all the tags with one query
+	 * @should not query for no ids
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	List<LocationTag> getLocationTags(Collection<Integer> locationTagIds);
+
+	/**
+	 * Gets the number of locations, retired ones included, that have each location tag. The counts
+	 * are read with one grouped query and kept until locations or tags change, so listing the tags
+	 * with their counts doesn't run a query per tag.
+	 *
+	 * @return the location counts keyed by location tag id, tags no location has are left out
+	 * @should count the locations of each tag with one query
+	 * @should recount the locations only when the locations change
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	Map<Integer, Integer> getLocationCountsByTagId();
+
+	/**
+	 * Purges a location tag that no location has, a tag in use is refused before anything is
+	 * deleted
+	 *
+	 * @param locationTag the tag to purge
+	 * @throws APIException if the tag is in use
+	 * @should purge a tag that is not in use
+	 * @should fail for a tag that is in use
+	 */
+	@Authorized(PrivilegeConstants.PURGE_LOCATION_TAGS)
+	void purgeLocationTag(LocationTag locationTag);
+
+	/**
+	 * Gets the ids of the unretired locations keyed by their lower case names, for resolving
+	 * locations referred to by name without a query for each of them
+	 *
+	 * @return the ids of the locations with each name, several locations can share a name
+	 * @should key the unretired locations by lower case name
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	Map<String, List<Integer>> getLocationIdsByName();
+
+	/**
+	 * Gets the ids of all locations keyed by uuid, for resolving locations referred to by uuid
+	 * without a query for each of them
+	 *
+	 * @return the location ids by uuid
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	Map<String, Integer> getLocationIdsByUuid();
+
+	/**
+	 * Saves the specified locations through the LocationService in a single transaction, then
+	 * flushes and clears the session so that saving many chunks of locations doesn't fill it up. A
+	 * location can refer to a location saved before it in the list as its parent.
+	 *
+	 * @param locations the locations to save
+	 * @should save all the locations and clear the session
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_LOCATIONS)
+	void saveLocations(List<Location> locations);
+
+	/**
+	 * Gets references to the locations with the specified ids from the current session without a
+	 * query, e.g. the parents of new locations. A location is only read once a property other than
+	 * its id is used.
+	 *
+	 * @param locationIds the ids of the locations
+	 * @return the references in the order of the ids
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	List<Location> loadLocations(Collection<Integer> locationIds);
+
+	/**
+	 * Gets references to the location tags with the specified ids from the current session without
+	 * a query, e.g. the tags of new locations
+	 *
+	 * @param locationTagIds the ids of the tags
+	 * @return the references in the order of the ids
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	List<LocationTag> loadLocationTags(Collection<Integer> locationTagIds);
+
+	/**
+	 * Evicts everything from the current session without writing the pending changes, e.g. after
+	 * {@link #saveLocations(List)} failed and left entities in the session that can't be saved
+	 */
+	void clearSession();
+
+	/**
+	 * Retires a location and every location under it that isn't retired yet, in one transaction of
+	 * bulk updates. The tree is read with a single query however large it is.
+	 *
+	 * @param locationId the id of the location at the top of the subtree
+	 * @param retireReason the reason for retiring the locations, required unless it is a dry run
+	 * @param dryRun whether to only count the locations that would be retired
+	 * @return the number of locations that were, or would be, retired
+	 * @should retire the unretired locations of the subtree
+	 * @should only count the locations on a dry run
+	 * @should fail without a reason
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_LOCATIONS)
+	int retireLocationSubtree(Integer locationId, String retireReason, boolean dryRun);
+
+	/**
+	 * Unretires a retired location and the locations under it that were retired along with it, at
+	 * the same date and with the same reason, in one transaction of bulk updates. Locations under it
+	 * that were retired on their own stay retired. The tree is read with a single query however
+	 * large it is.
+	 *
+	 * @param locationId the id of the location at the top of the subtree
+	 * @param dryRun whether to only count the locations that would be unretired
+	 * @return the number of locations that were, or would be, unretired
+	 * @should unretire the locations retired along with the location
+	 * @should leave the locations retired on their own retired
+	 * @should not unretire anything under a location that is not retired
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_LOCATIONS)
+	int unretireLocationSubtree(Integer locationId, boolean dryRun);
+
+	/**
+	 * Adds a tag to many locations at once, in one transaction of set based inserts into the
+	 * location tag table rather than by saving each location. The cached locations and anything
+	 * derived from them are invalidated once for the whole batch.
+	 *
+	 * @param locationTagId the id of the tag
+	 * @param locationIds the ids of the locations, those that already have the tag are left alone
+	 * @param dryRun whether to only count the locations the tag would be added to
+	 * @return the number of locations the tag was, or would be, added to
+	 * @should add the tag with one batch and change the location version once
+	 * @should not update anything for no locations
+	 * @should only count the locations without the tag on a dry run
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_LOCATIONS)
+	int addLocationTag(Integer locationTagId, Collection<Integer> locationIds, boolean dryRun);
+
+	/**
+	 * Removes a tag from many locations at once, in one transaction of set based deletes from the
+	 * location tag table rather than by saving each location. The cached locations and anything
+	 * derived from them are invalidated once for the whole batch.
+	 *
+	 * @param locationTagId the id of the tag
+	 * @param locationIds the ids of the locations, those without the tag are left alone
+	 * @param dryRun whether to only count the locations the tag would be removed from
+	 * @return the number of locations the tag was, or would be, removed from
+	 * @should remove the tag with one batch and change the location version once
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_LOCATIONS)
+	int removeLocationTag(Integer locationTagId, Collection<Integer> locationIds, boolean dryRun);
+
+	/**
+	 * Gets every location under a location, at any depth, with one indexed query on the
+	 * materialized location paths
+	 *
+	 * @param locationId the id of the location
+	 * @return the unlinked descendant nodes without tags, by depth then name
+	 * @throws APIException if the location has no path
+	 * @should get the locations under the location by path prefix
+	 * @should fail for a location without a path
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	List<LocationNode> getDescendantLocationNodes(Integer locationId);
+
+	/**
+	 * Updates the materialized path of a saved location, and of the locations under it if it moved
+	 * to another parent, with a single update. It is called from the {@link LocationVersionAdvice}
+	 * whenever a location is saved. A location whose parent has no path, or that is moved under
+	 * itself, is left without a path until the paths are rebuilt.
+	 *
+	 * @param location the saved location
+	 * @should add the path of a new location
+	 * @should move the paths of the subtree of a moved location
+	 * @should not rebuild the paths if the parent has none
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_LOCATIONS)
+	void refreshLocationPath(Location location);
+
+	/**
+	 * Removes the materialized path of a purged location
+	 *
+	 * @param location the purged location
+	 */
+	@Authorized(PrivilegeConstants.PURGE_LOCATIONS)
+	void removeLocationPath(Location location);
+
+	/**
+	 * Counts the materialized location paths, e.g. to find out whether they were ever built
+	 *
+	 * @return the number of locations with a path
+	 * @should count the location paths
+	 */
+	@Authorized(PrivilegeConstants.VIEW_LOCATIONS)
+	long getLocationPathCount();
+
+	/**
+	 * Rebuilds the materialized paths of all locations from the location table, with one query for
+	 * the tree and batched inserts. It runs when the module starts and there are no paths yet, e.g.
+	 * right after the path table was created, and an administrator can run it from the location
+	 * hierarchy page to repair the paths, e.g. after locations were changed while the module was
+	 * stopped.
+	 *
+	 * @return the number of location paths
+	 * @should write the path and depth of every location
+	 */
+	@Authorized(PrivilegeConstants.MANAGE_LOCATIONS)
+	int rebuildLocationPaths();
+
+}
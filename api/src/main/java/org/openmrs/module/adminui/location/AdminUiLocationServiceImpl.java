@@ -0,0 +1,608 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+import org.openmrs.api.APIException;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.adminui.PagedResult;
+import org.openmrs.module.adminui.location.db.AdminUiLocationDAO;
+import org.springframework.transaction.annotation.Transactional;
+
+@Transactional
+public class AdminUiLocationServiceImpl extends BaseOpenmrsService implements AdminUiLocationService {
+
+	private static final String PATH_SEPARATOR = "/";
+
+	/**
+	 * The length of the path column, deeper locations are left out of the paths
+	 */
+	private static final int MAX_PATH_LENGTH = 255;
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	private AdminUiLocationDAO dao;
+
+	private LocationService locationService;
+
+	private LocationVersion locationVersion;
+
+	private volatile VersionedNameIndex nameIndex;
+
+	private volatile VersionedTagCounts tagCounts;
+
+	private volatile VersionedSpatialIndex spatialIndex;
+
+	private volatile VersionedChildNodes childNodes;
+
+	/**
+	 * @param dao the dao to set
+	 */
+	public void setDao(AdminUiLocationDAO dao) {
+		this.dao = dao;
+	}
+
+	/**
+	 * @param locationService the locationService to set
+	 */
+	public void setLocationService(LocationService locationService) {
+		this.locationService = locationService;
+	}
+
+	/**
+	 * @param locationVersion the locationVersion to set
+	 */
+	public void setLocationVersion(LocationVersion locationVersion) {
+		this.locationVersion = locationVersion;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getLocationHierarchy()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public LocationHierarchy getLocationHierarchy() {
+		List<LocationNode> nodes = dao.getLocationNodes();
+		addTags(nodes, dao.getTagNamesByLocationId(null));
+		return new LocationHierarchy(nodes);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getChildLocationNodes(Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<LocationNode> getChildLocationNodes(Integer parentLocationId) {
+		long version = locationVersion.getVersion();
+		VersionedChildNodes current = childNodes;
+		if (current == null || current.version != version) {
+			current = new VersionedChildNodes(version);
+			childNodes = current;
+		}
+
+		List<LocationNode> nodes = current.nodesByParentId.get(parentLocationId);
+		if (nodes == null) {
+			nodes = dao.getChildLocationNodes(parentLocationId);
+			if (!nodes.isEmpty()) {
+				addTags(nodes, dao.getTagNamesByLocationId(getLocationIds(nodes)));
+			}
+			nodes = Collections.unmodifiableList(nodes);
+			current.nodesByParentId.put(parentLocationId, nodes);
+		}
+		return nodes;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#searchLocations(String, boolean,
+	 *      int, int)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public PagedResult<LocationNode> searchLocations(String query, boolean includeRetired, int startIndex, int length) {
+		List<LocationNode> matches = getNameIndex().search(query, includeRetired);
+		int from = Math.min(Math.max(startIndex, 0), matches.size());
+		int to = Math.min(from + Math.max(length, 0), matches.size());
+		return new PagedResult<LocationNode>(new ArrayList<LocationNode>(matches.subList(from, to)), matches.size());
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getLocations(String, Integer,
+	 *      Integer, boolean, String, int, int)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public PagedResult<LocationNode> getLocations(String query, Integer locationTagId, Integer parentLocationId,
+	                                              boolean includeRetired, String sortBy, int startIndex, int length) {
+		List<LocationNode> nodes = dao.getLocationNodes(query, locationTagId, parentLocationId, includeRetired, sortBy,
+		    startIndex, length);
+		if (!nodes.isEmpty()) {
+			addTags(nodes, dao.getTagNamesByLocationId(getLocationIds(nodes)));
+		}
+
+		// a first page that isn't full holds all the matches, so there is nothing left to count
+		long totalCount;
+		if (startIndex <= 0 && nodes.size() < length) {
+			totalCount = nodes.size();
+		} else {
+			totalCount = dao.getLocationNodeCount(query, locationTagId, parentLocationId, includeRetired);
+		}
+		return new PagedResult<LocationNode>(nodes, totalCount);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getNearestLocations(double,
+	 *      double, int)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<NearbyLocation> getNearestLocations(double latitude, double longitude, int count) {
+		return getSpatialIndex().getNearest(latitude, longitude, count);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getLocationsWithinDistance(double,
+	 *      double, double)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<NearbyLocation> getLocationsWithinDistance(double latitude, double longitude, double distance) {
+		return getSpatialIndex().getWithinDistance(latitude, longitude, distance);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getLocationTags(Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<LocationTag> getLocationTags(Collection<Integer> locationTagIds) {
+		if (locationTagIds == null || locationTagIds.isEmpty()) {
+			return new ArrayList<LocationTag>();
+		}
+		return dao.getLocationTags(locationTagIds);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getLocationCountsByTagId()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, Integer> getLocationCountsByTagId() {
+		long version = locationVersion.getVersion();
+		VersionedTagCounts current = tagCounts;
+		if (current == null || current.version != version) {
+			synchronized (this) {
+				current = tagCounts;
+				if (current == null || current.version != version) {
+					current = new VersionedTagCounts(version, Collections.unmodifiableMap(dao.getLocationCountsByTagId()));
+					tagCounts = current;
+				}
+			}
+		}
+		return current.counts;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#purgeLocationTag(LocationTag)
+	 */
+	@Override
+	@Transactional
+	public void purgeLocationTag(LocationTag locationTag) {
+		Integer count = getLocationCountsByTagId().get(locationTag.getLocationTagId());
+		if (count != null && count > 0) {
+			throw new APIException("The location tag " + locationTag.getName() + " is used by " + count + " locations");
+		}
+		locationService.purgeLocationTag(locationTag);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getLocationIdsByName()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<String, List<Integer>> getLocationIdsByName() {
+		Map<String, List<Integer>> ret = new HashMap<String, List<Integer>>();
+		for (LocationNode node : dao.getLocationNodes()) {
+			if (node.isRetired() || node.getName() == null) {
+				continue;
+			}
+			String key = node.getName().trim().toLowerCase();
+			List<Integer> ids = ret.get(key);
+			if (ids == null) {
+				ids = new ArrayList<Integer>(1);
+				ret.put(key, ids);
+			}
+			ids.add(node.getLocationId());
+		}
+		return ret;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getLocationIdsByUuid()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<String, Integer> getLocationIdsByUuid() {
+		return dao.getLocationIdsByUuid();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#saveLocations(List)
+	 */
+	@Override
+	@Transactional
+	public void saveLocations(List<Location> locations) {
+		for (Location location : locations) {
+			locationService.saveLocation(location);
+		}
+		dao.flushAndClearSession();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#loadLocations(Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<Location> loadLocations(Collection<Integer> locationIds) {
+		return dao.loadLocations(locationIds);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#loadLocationTags(Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<LocationTag> loadLocationTags(Collection<Integer> locationTagIds) {
+		return dao.loadLocationTags(locationTagIds);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#clearSession()
+	 */
+	@Override
+	public void clearSession() {
+		dao.clearSession();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#retireLocationSubtree(Integer,
+	 *      String, boolean)
+	 */
+	@Override
+	@Transactional
+	public int retireLocationSubtree(Integer locationId, String retireReason, boolean dryRun) {
+		if (!dryRun && StringUtils.isBlank(retireReason)) {
+			throw new APIException("A reason is required to retire locations");
+		}
+		return setSubtreeRetired(locationId, true, retireReason, dryRun);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#unretireLocationSubtree(Integer,
+	 *      boolean)
+	 */
+	@Override
+	@Transactional
+	public int unretireLocationSubtree(Integer locationId, boolean dryRun) {
+		return setSubtreeRetired(locationId, false, null, dryRun);
+	}
+
+	private int setSubtreeRetired(Integer locationId, boolean retired, String retireReason, boolean dryRun) {
+		LocationNode top = new LocationHierarchy(dao.getLocationNodes()).getNode(locationId);
+		if (top == null) {
+			throw new APIException("There is no location with id " + locationId);
+		}
+		List<Integer> locationIds = new ArrayList<Integer>();
+		List<LocationNode> stack = new ArrayList<LocationNode>();
+		stack.add(top);
+		while (!stack.isEmpty()) {
+			LocationNode node = stack.remove(stack.size() - 1);
+			if (node.isRetired() != retired) {
+				locationIds.add(node.getLocationId());
+			}
+			stack.addAll(node.getChildren());
+		}
+		if (!retired && !locationIds.isEmpty()) {
+			locationIds = getRetiredAlongWith(locationId, locationIds);
+		}
+		if (dryRun || locationIds.isEmpty()) {
+			return locationIds.size();
+		}
+
+		int updated = dao.setRetired(locationIds, retired, Context.getAuthenticatedUser(), new Date(), retireReason);
+		// the bulk updates bypass the LocationService and its advice
+		locationVersion.locationsChanged();
+		return updated;
+	}
+
+	/**
+	 * @return the ids of the locations that were retired at the same date and with the same reason
+	 *         as the specified location, none if it isn't retired
+	 */
+	private List<Integer> getRetiredAlongWith(Integer locationId, List<Integer> locationIds) {
+		Location location = locationService.getLocation(locationId);
+		if (location == null || !location.isRetired() || location.getDateRetired() == null) {
+			return new ArrayList<Integer>();
+		}
+		return dao.getLocationIdsRetiredWith(locationIds, location.getDateRetired(), location.getRetireReason());
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#addLocationTag(Integer,
+	 *      Collection, boolean)
+	 */
+	@Override
+	@Transactional
+	public int addLocationTag(Integer locationTagId, Collection<Integer> locationIds, boolean dryRun) {
+		return setLocationTag(locationTagId, locationIds, true, dryRun);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#removeLocationTag(Integer,
+	 *      Collection, boolean)
+	 */
+	@Override
+	@Transactional
+	public int removeLocationTag(Integer locationTagId, Collection<Integer> locationIds, boolean dryRun) {
+		return setLocationTag(locationTagId, locationIds, false, dryRun);
+	}
+
+	private int setLocationTag(Integer locationTagId, Collection<Integer> locationIds, boolean add, boolean dryRun) {
+		if (locationIds == null || locationIds.isEmpty()) {
+			return 0;
+		}
+		Set<Integer> ids = new LinkedHashSet<Integer>(locationIds);
+		if (dryRun) {
+			return dao.countLocationTagChanges(locationTagId, ids, add);
+		}
+		int updated;
+		if (add) {
+			updated = dao.addLocationTag(locationTagId, ids, Context.getAuthenticatedUser(), new Date());
+		} else {
+			updated = dao.removeLocationTag(locationTagId, ids, Context.getAuthenticatedUser(), new Date());
+		}
+		if (updated > 0) {
+			locationVersion.locationsChanged();
+		}
+		return updated;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getDescendantLocationNodes(Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<LocationNode> getDescendantLocationNodes(Integer locationId) {
+		List<LocationNode> nodes = dao.getLocationNodesByPathPrefix(getPath(locationId));
+		for (Iterator<LocationNode> i = nodes.iterator(); i.hasNext();) {
+			if (i.next().getLocationId().equals(locationId)) {
+				i.remove();
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#getLocationPathCount()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public long getLocationPathCount() {
+		return dao.countLocationPaths();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#refreshLocationPath(Location)
+	 */
+	@Override
+	@Transactional
+	public void refreshLocationPath(Location location) {
+		Integer locationId = location.getLocationId();
+		String parentPath = PATH_SEPARATOR;
+		if (location.getParentLocation() != null) {
+			parentPath = dao.getLocationPath(location.getParentLocation().getLocationId());
+			if (parentPath == null || parentPath.contains(PATH_SEPARATOR + locationId + PATH_SEPARATOR)) {
+				log.warn("The parent of location " + locationId + " has no path or is under it, the location is left"
+				        + " without a path until the paths are rebuilt");
+				return;
+			}
+		}
+		String newPath = parentPath + locationId + PATH_SEPARATOR;
+		if (newPath.length() > MAX_PATH_LENGTH) {
+			log.warn("The path of location " + locationId + " is too long to be indexed: " + newPath);
+			return;
+		}
+
+		String oldPath = dao.getLocationPath(locationId);
+		if (oldPath == null) {
+			dao.insertLocationPath(locationId, newPath, getDepth(newPath));
+		} else if (!oldPath.equals(newPath)) {
+			dao.moveLocationPaths(oldPath, newPath, getDepth(newPath) - getDepth(oldPath));
+		}
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#removeLocationPath(Location)
+	 */
+	@Override
+	@Transactional
+	public void removeLocationPath(Location location) {
+		dao.deleteLocationPath(location.getLocationId());
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.AdminUiLocationService#rebuildLocationPaths()
+	 */
+	@Override
+	@Transactional
+	public int rebuildLocationPaths() {
+		LocationHierarchy hierarchy = new LocationHierarchy(dao.getLocationNodes());
+		Map<Integer, String> paths = new HashMap<Integer, String>(hierarchy.size() * 4 / 3 + 1);
+		Map<Integer, Integer> depths = new HashMap<Integer, Integer>(hierarchy.size() * 4 / 3 + 1);
+		List<LocationNode> stack = new ArrayList<LocationNode>(hierarchy.getRoots());
+		List<String> parentPaths = new ArrayList<String>(Collections.nCopies(stack.size(), PATH_SEPARATOR));
+		while (!stack.isEmpty()) {
+			LocationNode node = stack.remove(stack.size() - 1);
+			String path = parentPaths.remove(parentPaths.size() - 1) + node.getLocationId() + PATH_SEPARATOR;
+			if (path.length() > MAX_PATH_LENGTH) {
+				log.warn("The path of location " + node.getLocationId() + " is too long to be indexed: " + path);
+				continue;
+			}
+			paths.put(node.getLocationId(), path);
+			depths.put(node.getLocationId(), getDepth(path));
+			for (LocationNode child : node.getChildren()) {
+				stack.add(child);
+				parentPaths.add(path);
+			}
+		}
+		if (paths.size() < hierarchy.size()) {
+			log.warn((hierarchy.size() - paths.size()) + " locations are left out of the location paths");
+		}
+		dao.replaceLocationPaths(paths, depths);
+		log.info("Rebuilt the paths of " + paths.size() + " locations");
+		return paths.size();
+	}
+
+	/**
+	 * @return the path of the location
+	 * @throws APIException if the location has no path
+	 */
+	private String getPath(Integer locationId) {
+		String path = dao.getLocationPath(locationId);
+		if (path == null) {
+			throw new APIException("There is no location path for id " + locationId);
+		}
+		return path;
+	}
+
+	/**
+	 * @return the number of ancestors of the location with the path
+	 */
+	private static int getDepth(String path) {
+		return StringUtils.countMatches(path, PATH_SEPARATOR) - 2;
+	}
+
+	private LocationNameIndex getNameIndex() {
+		long version = locationVersion.getVersion();
+		VersionedNameIndex current = nameIndex;
+		if (current == null || current.version != version) {
+			synchronized (this) {
+				current = nameIndex;
+				if (current == null || current.version != version) {
+					current = new VersionedNameIndex(version, new LocationNameIndex(dao.getLocationNodes()));
+					nameIndex = current;
+				}
+			}
+		}
+		return current.index;
+	}
+
+	private LocationSpatialIndex getSpatialIndex() {
+		long version = locationVersion.getVersion();
+		VersionedSpatialIndex current = spatialIndex;
+		if (current == null || current.version != version) {
+			synchronized (this) {
+				current = spatialIndex;
+				if (current == null || current.version != version) {
+					current = new VersionedSpatialIndex(version, new LocationSpatialIndex(dao.getLocationPoints()));
+					spatialIndex = current;
+				}
+			}
+		}
+		return current.index;
+	}
+
+	private List<Integer> getLocationIds(List<LocationNode> nodes) {
+		List<Integer> locationIds = new ArrayList<Integer>(nodes.size());
+		for (LocationNode node : nodes) {
+			locationIds.add(node.getLocationId());
+		}
+		return locationIds;
+	}
+
+	private void addTags(List<LocationNode> nodes, Map<Integer, List<String>> tags) {
+		for (LocationNode node : nodes) {
+			List<String> names = tags.get(node.getLocationId());
+			if (names != null) {
+				node.getTags().addAll(names);
+				Collections.sort(node.getTags(), String.CASE_INSENSITIVE_ORDER);
+			}
+		}
+	}
+
+	private static class VersionedTagCounts {
+
+		private final long version;
+
+		private final Map<Integer, Integer> counts;
+
+		VersionedTagCounts(long version, Map<Integer, Integer> counts) {
+			this.version = version;
+			this.counts = counts;
+		}
+	}
+
+	private static class VersionedSpatialIndex {
+
+		private final long version;
+
+		private final LocationSpatialIndex index;
+
+		VersionedSpatialIndex(long version, LocationSpatialIndex index) {
+			this.version = version;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * The levels of the tree loaded at a version, filled in as they are expanded
+	 */
+	private static class VersionedChildNodes {
+
+		private final long version;
+
+		private final Map<Integer, List<LocationNode>> nodesByParentId = Collections
+		        .synchronizedMap(new HashMap<Integer, List<LocationNode>>());
+
+		VersionedChildNodes(long version) {
+			this.version = version;
+		}
+	}
+
+	private static class VersionedNameIndex {
+
+		private final long version;
+
+		private final LocationNameIndex index;
+
+		VersionedNameIndex(long version, LocationNameIndex index) {
+			this.version = version;
+			this.index = index;
+		}
+	}
+
+}
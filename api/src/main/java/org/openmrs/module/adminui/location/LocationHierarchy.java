@@ -0,0 +1,93 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tree of all locations linked in memory from flat rows, see
+ * {@link AdminUiLocationService#getLocationHierarchy()}
+ */
+public class LocationHierarchy {
+
+	static final Comparator<LocationNode> BY_NAME = new Comparator<LocationNode>() {
+
+		@Override
+		public int compare(LocationNode a, LocationNode b) {
+			int ret = String.CASE_INSENSITIVE_ORDER.compare(a.getName(), b.getName());
+			return ret != 0 ? ret : a.getLocationId().compareTo(b.getLocationId());
+		}
+	};
+
+	private final List<LocationNode> roots = new ArrayList<LocationNode>();
+
+	private final Map<Integer, LocationNode> nodesById;
+
+	/**
+	 * Links the nodes to their parents through a map by id, so it takes linear time however deep the
+	 * tree is. A node whose parent is not among the nodes is a root.
+	 *
+	 * @param nodes all the locations, each with its tags
+	 */
+	public LocationHierarchy(Collection<LocationNode> nodes) {
+		nodesById = new HashMap<Integer, LocationNode>(nodes.size() * 4 / 3 + 1);
+		for (LocationNode node : nodes) {
+			nodesById.put(node.getLocationId(), node);
+		}
+		for (LocationNode node : nodes) {
+			LocationNode parent = node.getParentLocationId() != null ? nodesById.get(node.getParentLocationId()) : null;
+			if (parent != null) {
+				parent.getChildren().add(node);
+			} else {
+				roots.add(node);
+			}
+		}
+
+		Collections.sort(roots, BY_NAME);
+		for (LocationNode node : nodes) {
+			node.setChildCount(node.getChildren().size());
+			if (node.getChildren().size() > 1) {
+				Collections.sort(node.getChildren(), BY_NAME);
+			}
+			if (node.getTags().size() > 1) {
+				Collections.sort(node.getTags(), String.CASE_INSENSITIVE_ORDER);
+			}
+		}
+	}
+
+	/**
+	 * @return the locations without a parent sorted by name
+	 */
+	public List<LocationNode> getRoots() {
+		return roots;
+	}
+
+	/**
+	 * @param locationId the id of a location
+	 * @return the location's node or null if there is none
+	 */
+	public LocationNode getNode(Integer locationId) {
+		return nodesById.get(locationId);
+	}
+
+	/**
+	 * @return the number of locations in the hierarchy
+	 */
+	public int size() {
+		return nodesById.size();
+	}
+
+}
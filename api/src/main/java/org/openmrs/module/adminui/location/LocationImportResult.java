@@ -0,0 +1,74 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.validation.ObjectError;
+
+/**
+ * The outcome of a bulk location import, only the errors of the rows that failed are kept so its
+ * size doesn't depend on the number of rows that were imported
+ */
+public class LocationImportResult {
+
+	private int rowCount;
+
+	private int importedCount;
+
+	private final Map<Integer, List<ObjectError>> errorsByRow = new TreeMap<Integer, List<ObjectError>>();
+
+	/**
+	 * @return the number of data rows or JSON objects that were read
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the number of locations that were saved
+	 */
+	public int getImportedCount() {
+		return importedCount;
+	}
+
+	/**
+	 * @return the errors of the rows that were not imported keyed by row number, the header of a CSV
+	 *         being row 1 and the first object of a JSON document being row 1
+	 */
+	public Map<Integer, List<ObjectError>> getErrorsByRow() {
+		return errorsByRow;
+	}
+
+	public boolean hasErrors() {
+		return !errorsByRow.isEmpty();
+	}
+
+	void rowRead() {
+		rowCount++;
+	}
+
+	void imported(int count) {
+		importedCount += count;
+	}
+
+	void addErrors(int rowNumber, List<ObjectError> errors) {
+		List<ObjectError> rowErrors = errorsByRow.get(rowNumber);
+		if (rowErrors == null) {
+			rowErrors = new ArrayList<ObjectError>();
+			errorsByRow.put(rowNumber, rowErrors);
+		}
+		rowErrors.addAll(errors);
+	}
+
+}
@@ -0,0 +1,608 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.LocationService;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.module.adminui.util.CsvReader;
+import org.openmrs.validator.LocationValidator;
+import org.springframework.validation.BindException;
+import org.springframework.validation.Errors;
+import org.springframework.validation.ObjectError;
+
+/**
+ * Creates locations in bulk from a CSV file or a nested JSON document. A CSV row refers to its
+ * parent with a {@link #COLUMN_PARENT_NAME} or {@link #COLUMN_PARENT_UUID} column, either an
+ * existing location or another row, while a JSON object lists its child locations under
+ * {@link #FIELD_CHILDREN}. Tag names are separated by {@link #TAG_SEPARATOR} in a CSV and are an
+ * array in JSON.
+ * <p>
+ * The ids of the existing locations and tags are looked up in maps loaded once per import, and the
+ * rows are sorted so that every location is saved after its parent. They are then validated with
+ * the {@link LocationValidator} and saved in chunks of
+ * {@link AdminUiConstants#GP_LOCATION_IMPORT_CHUNK_SIZE} locations, each chunk in its own
+ * transaction after which the session is cleared. The parents and tags of a chunk are referred to
+ * by references loaded into the session of the chunk. The path of each saved location is kept up to
+ * date by the {@link LocationVersionAdvice} as it is saved.
+ * <p>
+ * Sorting the rows needs all of them, so the whole file is held in memory, a few hundred bytes per
+ * row. A file is limited to {@link #MAX_ROWS} locations, larger trees are imported in several files
+ * from the top down.
+ */
+public class LocationImporter {
+
+	public static final String COLUMN_NAME = "name";
+
+	public static final String COLUMN_DESCRIPTION = "description";
+
+	public static final String COLUMN_ADDRESS1 = "address1";
+
+	public static final String COLUMN_ADDRESS2 = "address2";
+
+	public static final String COLUMN_CITY_VILLAGE = "cityVillage";
+
+	public static final String COLUMN_STATE_PROVINCE = "stateProvince";
+
+	public static final String COLUMN_COUNTRY = "country";
+
+	public static final String COLUMN_POSTAL_CODE = "postalCode";
+
+	public static final String COLUMN_UUID = "uuid";
+
+	public static final String COLUMN_PARENT_NAME = "parentName";
+
+	public static final String COLUMN_PARENT_UUID = "parentUuid";
+
+	public static final String COLUMN_TAGS = "tags";
+
+	public static final String FIELD_CHILDREN = "children";
+
+	public static final String TAG_SEPARATOR = "|";
+
+	public static final int MAX_ROWS = 100000;
+
+	private static final String[] VALUE_COLUMNS = { COLUMN_NAME, COLUMN_DESCRIPTION, COLUMN_ADDRESS1, COLUMN_ADDRESS2,
+	        COLUMN_CITY_VILLAGE, COLUMN_STATE_PROVINCE, COLUMN_COUNTRY, COLUMN_POSTAL_CODE, COLUMN_UUID,
+	        COLUMN_PARENT_NAME, COLUMN_PARENT_UUID };
+
+	private static final int DEFAULT_CHUNK_SIZE = 500;
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	private AdminUiLocationService adminLocationService;
+
+	private LocationService locationService;
+
+	private AdministrationService administrationService;
+
+	private LocationValidator locationValidator;
+
+	/**
+	 * @param adminLocationService the transactional adminLocationService to set
+	 */
+	public void setAdminLocationService(AdminUiLocationService adminLocationService) {
+		this.adminLocationService = adminLocationService;
+	}
+
+	/**
+	 * @param locationService the locationService to set
+	 */
+	public void setLocationService(LocationService locationService) {
+		this.locationService = locationService;
+	}
+
+	/**
+	 * @param administrationService the administrationService to set
+	 */
+	public void setAdministrationService(AdministrationService administrationService) {
+		this.administrationService = administrationService;
+	}
+
+	/**
+	 * @param locationValidator the locationValidator to set
+	 */
+	public void setLocationValidator(LocationValidator locationValidator) {
+		this.locationValidator = locationValidator;
+	}
+
+	/**
+	 * Imports the locations in the specified CSV, whose first row names the columns. Rows that fail
+	 * validation or can't be saved are reported in the result, along with the rows under them, and
+	 * don't stop the other rows from being imported. The reader is not closed.
+	 *
+	 * @param csv the CSV to read the locations from
+	 * @return the number of imported locations and the errors of the rows that were not imported
+	 * @throws IOException if the CSV can't be read
+	 * @should save the parents before their children whatever the order of the rows
+	 * @should save the locations in chunks of the configured size
+	 * @should resolve the parents and tags from maps loaded once
+	 * @should report the rows that fail and the rows under them
+	 * @should report a cycle of parents
+	 * @should save the locations of a failed chunk one by one
+	 * @should clear the session before saving the locations of a failed chunk one by one
+	 * @should report a parent name shared by a row and an existing location
+	 * @should fail if the name column is missing
+	 * @should fail if the file has more than the maximum number of rows
+	 */
+	public LocationImportResult importCsv(Reader csv) throws IOException {
+		CsvReader reader = new CsvReader(csv);
+		String[] header = reader.readNext();
+		if (header == null) {
+			return new LocationImportResult();
+		}
+		Map<String, Integer> columns = new HashMap<String, Integer>();
+		for (int i = 0; i < header.length; i++) {
+			columns.put(header[i].trim(), i);
+		}
+		if (!columns.containsKey(COLUMN_NAME)) {
+			throw new APIException("The location CSV has no " + COLUMN_NAME + " column");
+		}
+
+		List<Row> rows = new ArrayList<Row>();
+		String[] values;
+		while ((values = reader.readNext()) != null) {
+			if (values.length == 1 && StringUtils.isBlank(values[0])) {
+				continue;
+			}
+			checkRowCount(rows);
+			Row row = new Row(reader.getRecordNumber());
+			for (String column : VALUE_COLUMNS) {
+				Integer index = columns.get(column);
+				if (index != null && index < values.length) {
+					row.values.put(column, StringUtils.trimToNull(values[index]));
+				}
+			}
+			Integer tagsIndex = columns.get(COLUMN_TAGS);
+			if (tagsIndex != null && tagsIndex < values.length) {
+				addTagNames(row, StringUtils.split(values[tagsIndex], TAG_SEPARATOR));
+			}
+			rows.add(row);
+		}
+		return importRows(rows);
+	}
+
+	/**
+	 * Imports the locations in the specified JSON, an object or an array of objects with the same
+	 * fields as the CSV columns and their child locations in a {@link #FIELD_CHILDREN} array. The
+	 * objects are numbered in the order they appear in the document. The reader is not closed.
+	 *
+	 * @param json the JSON to read the locations from
+	 * @return the number of imported locations and the errors of the objects that were not imported
+	 * @throws IOException if the JSON can't be read
+	 * @should save the nested locations under their parents
+	 * @should fail if the document is not an object or an array
+	 */
+	public LocationImportResult importJson(Reader json) throws IOException {
+		JsonNode root = new ObjectMapper().readTree(json);
+		List<Row> rows = new ArrayList<Row>();
+		if (root == null) {
+			return new LocationImportResult();
+		} else if (root.isArray()) {
+			for (JsonNode node : root) {
+				addJsonRow(node, null, rows);
+			}
+		} else if (root.isObject()) {
+			addJsonRow(root, null, rows);
+		} else {
+			throw new APIException("The location JSON must be an object or an array of objects");
+		}
+		return importRows(rows);
+	}
+
+	private void addJsonRow(JsonNode node, Row parent, List<Row> rows) {
+		if (!node.isObject()) {
+			throw new APIException("Location " + (rows.size() + 1) + " of the JSON is not an object");
+		}
+		checkRowCount(rows);
+		Row row = new Row(rows.size() + 1);
+		for (String column : VALUE_COLUMNS) {
+			JsonNode value = node.get(column);
+			if (value != null && value.isValueNode() && !value.isNull()) {
+				row.values.put(column, StringUtils.trimToNull(value.asText()));
+			}
+		}
+		JsonNode tags = node.get(COLUMN_TAGS);
+		if (tags != null && tags.isArray()) {
+			for (JsonNode tag : tags) {
+				addTagNames(row, new String[] { tag.asText() });
+			}
+		} else if (tags != null && tags.isTextual()) {
+			addTagNames(row, StringUtils.split(tags.asText(), TAG_SEPARATOR));
+		}
+		if (parent != null) {
+			row.setParent(parent);
+		}
+		rows.add(row);
+
+		JsonNode children = node.get(FIELD_CHILDREN);
+		if (children != null && children.isArray()) {
+			for (JsonNode child : children) {
+				addJsonRow(child, row, rows);
+			}
+		}
+	}
+
+	private void checkRowCount(List<Row> rows) {
+		if (rows.size() >= MAX_ROWS) {
+			throw new APIException("The location file has more than " + MAX_ROWS
+			        + " locations, split it into several files");
+		}
+	}
+
+	private void addTagNames(Row row, String[] names) {
+		if (names != null) {
+			for (String name : names) {
+				if (StringUtils.isNotBlank(name)) {
+					row.tagNames.add(name.trim());
+				}
+			}
+		}
+	}
+
+	private LocationImportResult importRows(List<Row> rows) {
+		ImportContext context = new ImportContext();
+		for (int i = 0; i < rows.size(); i++) {
+			context.result.rowRead();
+		}
+		resolveParents(rows, context);
+		List<Row> ordered = sortParentsFirst(rows, context);
+
+		int chunkSize = getChunkSize();
+		for (int from = 0; from < ordered.size(); from += chunkSize) {
+			int to = Math.min(from + chunkSize, ordered.size());
+			importChunk(ordered.subList(from, to), context);
+			log.info("Imported " + context.result.getImportedCount() + " locations, " + to + " of " + ordered.size()
+			        + " rows processed");
+		}
+		return context.result;
+	}
+
+	/**
+	 * Links the rows to the row or the existing location they name as their parent, the rows of a
+	 * JSON document are already linked to the objects they are nested in. A parent name shared by
+	 * several rows or locations, or by a row and an existing location, fails the row as ambiguous.
+	 */
+	private void resolveParents(List<Row> rows, ImportContext context) {
+		Map<String, Row> rowsByUuid = new HashMap<String, Row>();
+		Map<String, List<Row>> rowsByName = new HashMap<String, List<Row>>();
+		for (Row row : rows) {
+			String uuid = row.values.get(COLUMN_UUID);
+			if (uuid != null) {
+				if (rowsByUuid.containsKey(uuid) || context.locationIdsByUuid.containsKey(uuid)) {
+					fail(row, context, "adminui.location.import.error.duplicateUuid", uuid);
+				} else {
+					rowsByUuid.put(uuid, row);
+				}
+			}
+			String name = row.values.get(COLUMN_NAME);
+			if (name != null) {
+				List<Row> named = rowsByName.get(name.toLowerCase());
+				if (named == null) {
+					named = new ArrayList<Row>(1);
+					rowsByName.put(name.toLowerCase(), named);
+				}
+				named.add(row);
+			}
+		}
+
+		for (Row row : rows) {
+			if (row.parent != null) {
+				continue;
+			}
+			String parentUuid = row.values.get(COLUMN_PARENT_UUID);
+			String parentName = row.values.get(COLUMN_PARENT_NAME);
+			if (parentUuid != null) {
+				if (rowsByUuid.containsKey(parentUuid)) {
+					row.setParent(rowsByUuid.get(parentUuid));
+				} else if (context.locationIdsByUuid.containsKey(parentUuid)) {
+					row.parentLocationId = context.locationIdsByUuid.get(parentUuid);
+				} else {
+					fail(row, context, "adminui.location.import.error.parentNotFound", parentUuid);
+				}
+			} else if (parentName != null) {
+				List<Row> named = rowsByName.get(parentName.toLowerCase());
+				List<Integer> existing = context.locationIdsByName.get(parentName.toLowerCase());
+				if (named != null && named.size() == 1 && existing == null) {
+					row.setParent(named.get(0));
+				} else if (named == null && existing != null && existing.size() == 1) {
+					row.parentLocationId = existing.get(0);
+				} else if (named != null || existing != null) {
+					fail(row, context, "adminui.location.import.error.parentAmbiguous", parentName);
+				} else {
+					fail(row, context, "adminui.location.import.error.parentNotFound", parentName);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the rows breadth first from the ones without a parent among the rows, the rows that
+	 *         can't be reached that way are in or under a cycle of parents and are left out
+	 */
+	private List<Row> sortParentsFirst(List<Row> rows, ImportContext context) {
+		List<Row> ordered = new ArrayList<Row>(rows.size());
+		for (Row row : rows) {
+			if (row.parent == null) {
+				ordered.add(row);
+			}
+		}
+		for (int i = 0; i < ordered.size(); i++) {
+			ordered.addAll(ordered.get(i).children);
+		}
+		if (ordered.size() < rows.size()) {
+			Set<Row> reached = new HashSet<Row>(ordered);
+			for (Row row : rows) {
+				if (!reached.contains(row) && !row.failed) {
+					fail(row, context, "adminui.location.import.error.cycle");
+				}
+			}
+		}
+		return ordered;
+	}
+
+	private void importChunk(List<Row> chunk, ImportContext context) {
+		List<Row> validRows = new ArrayList<Row>();
+		List<Location> locations = new ArrayList<Location>();
+		References references = loadReferences(chunk, context);
+		for (Row row : chunk) {
+			if (row.failed) {
+				continue;
+			}
+			Location location = createLocation(row, context, references);
+			if (location != null && validate(location, row, context)) {
+				row.pending = location;
+				validRows.add(row);
+				locations.add(location);
+			}
+		}
+		if (locations.isEmpty()) {
+			return;
+		}
+
+		try {
+			adminLocationService.saveLocations(locations);
+			for (int i = 0; i < validRows.size(); i++) {
+				validRows.get(i).locationId = locations.get(i).getLocationId();
+			}
+			context.result.imported(locations.size());
+		}
+		catch (Exception e) {
+			log.warn("Failed to save a chunk of " + locations.size() + " locations, saving them one at a time", e);
+			// the failed transaction may have left ids on the entities and the entities in the session,
+			// so the session is cleared and the locations are built again from new references, which
+			// are loaded for each location as saving one clears the session
+			adminLocationService.clearSession();
+			for (Row row : validRows) {
+				row.pending = null;
+			}
+			for (Row row : validRows) {
+				Location location = createLocation(row, context,
+				    loadReferences(Collections.singletonList(row), context));
+				if (location == null) {
+					continue;
+				}
+				try {
+					adminLocationService.saveLocations(Collections.singletonList(location));
+					row.locationId = location.getLocationId();
+					context.result.imported(1);
+				}
+				catch (Exception ex) {
+					fail(row, context, "adminui.location.import.error.save.fail");
+				}
+			}
+		}
+		finally {
+			for (Row row : validRows) {
+				row.pending = null;
+			}
+		}
+	}
+
+	/**
+	 * Loads references to the saved parents and the tags of the rows into the current session
+	 */
+	private References loadReferences(List<Row> rows, ImportContext context) {
+		Set<Integer> locationIds = new HashSet<Integer>();
+		Set<Integer> locationTagIds = new HashSet<Integer>();
+		for (Row row : rows) {
+			if (row.failed) {
+				continue;
+			}
+			if (row.parent != null && row.parent.locationId != null) {
+				locationIds.add(row.parent.locationId);
+			} else if (row.parentLocationId != null) {
+				locationIds.add(row.parentLocationId);
+			}
+			for (String tagName : row.tagNames) {
+				Integer locationTagId = context.locationTagIdsByName.get(tagName.toLowerCase());
+				if (locationTagId != null) {
+					locationTagIds.add(locationTagId);
+				}
+			}
+		}
+
+		References references = new References();
+		if (!locationIds.isEmpty()) {
+			for (Location location : adminLocationService.loadLocations(locationIds)) {
+				references.locationsById.put(location.getLocationId(), location);
+			}
+		}
+		if (!locationTagIds.isEmpty()) {
+			for (LocationTag tag : adminLocationService.loadLocationTags(locationTagIds)) {
+				references.locationTagsById.put(tag.getLocationTagId(), tag);
+			}
+		}
+		return references;
+	}
+
+	/**
+	 * @return a new location for the row, or null if its parent was not imported or a tag doesn't
+	 *         exist, in which case the row is failed
+	 */
+	private Location createLocation(Row row, ImportContext context, References references) {
+		Location parent = null;
+		if (row.parent != null) {
+			if (row.parent.locationId != null) {
+				parent = references.locationsById.get(row.parent.locationId);
+			} else if (row.parent.pending != null) {
+				// saved earlier in the same transaction
+				parent = row.parent.pending;
+			} else {
+				fail(row, context, "adminui.location.import.error.parentFailed", row.parent.values.get(COLUMN_NAME));
+				return null;
+			}
+		} else if (row.parentLocationId != null) {
+			parent = references.locationsById.get(row.parentLocationId);
+		}
+
+		Set<LocationTag> tags = null;
+		for (String tagName : row.tagNames) {
+			Integer locationTagId = context.locationTagIdsByName.get(tagName.toLowerCase());
+			LocationTag tag = locationTagId != null ? references.locationTagsById.get(locationTagId) : null;
+			if (tag == null) {
+				fail(row, context, "adminui.location.import.error.unknownTag", tagName);
+				return null;
+			}
+			if (tags == null) {
+				tags = new HashSet<LocationTag>();
+			}
+			tags.add(tag);
+		}
+
+		Location location = new Location();
+		location.setName(row.values.get(COLUMN_NAME));
+		location.setDescription(row.values.get(COLUMN_DESCRIPTION));
+		location.setAddress1(row.values.get(COLUMN_ADDRESS1));
+		location.setAddress2(row.values.get(COLUMN_ADDRESS2));
+		location.setCityVillage(row.values.get(COLUMN_CITY_VILLAGE));
+		location.setStateProvince(row.values.get(COLUMN_STATE_PROVINCE));
+		location.setCountry(row.values.get(COLUMN_COUNTRY));
+		location.setPostalCode(row.values.get(COLUMN_POSTAL_CODE));
+		if (row.values.get(COLUMN_UUID) != null) {
+			location.setUuid(row.values.get(COLUMN_UUID));
+		}
+		location.setParentLocation(parent);
+		location.setTags(tags);
+		return location;
+	}
+
+	private boolean validate(Location location, Row row, ImportContext context) {
+		Errors errors = new BindException(location, "location");
+		locationValidator.validate(location, errors);
+		if (errors.hasErrors()) {
+			row.failed = true;
+			context.result.addErrors(row.number, errors.getAllErrors());
+			return false;
+		}
+		return true;
+	}
+
+	private void fail(Row row, ImportContext context, String code, Object... arguments) {
+		row.failed = true;
+		context.result.addErrors(row.number,
+		    Collections.singletonList(new ObjectError("location", new String[] { code }, arguments, null)));
+	}
+
+	private int getChunkSize() {
+		String value = administrationService.getGlobalProperty(AdminUiConstants.GP_LOCATION_IMPORT_CHUNK_SIZE);
+		if (StringUtils.isNotBlank(value)) {
+			try {
+				int chunkSize = Integer.parseInt(value.trim());
+				if (chunkSize > 0) {
+					return chunkSize;
+				}
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid value for " + AdminUiConstants.GP_LOCATION_IMPORT_CHUNK_SIZE + ": " + value);
+			}
+		}
+		return DEFAULT_CHUNK_SIZE;
+	}
+
+	/**
+	 * The ids of the existing locations and tags, loaded once per import
+	 */
+	private class ImportContext {
+
+		private final LocationImportResult result = new LocationImportResult();
+
+		private final Map<String, Integer> locationIdsByUuid = adminLocationService.getLocationIdsByUuid();
+
+		private final Map<String, List<Integer>> locationIdsByName = adminLocationService.getLocationIdsByName();
+
+		private final Map<String, Integer> locationTagIdsByName = new HashMap<String, Integer>();
+
+		ImportContext() {
+			for (LocationTag tag : locationService.getAllLocationTags(false)) {
+				locationTagIdsByName.put(tag.getName().toLowerCase(), tag.getLocationTagId());
+			}
+		}
+	}
+
+	/**
+	 * References to the saved parents and the tags of the locations saved in one session
+	 */
+	private static class References {
+
+		private final Map<Integer, Location> locationsById = new HashMap<Integer, Location>();
+
+		private final Map<Integer, LocationTag> locationTagsById = new HashMap<Integer, LocationTag>();
+	}
+
+	private static class Row {
+
+		private final int number;
+
+		private final Map<String, String> values = new HashMap<String, String>();
+
+		private final List<String> tagNames = new ArrayList<String>();
+
+		private final List<Row> children = new ArrayList<Row>();
+
+		private Row parent;
+
+		private Integer parentLocationId;
+
+		private Location pending;
+
+		private Integer locationId;
+
+		private boolean failed;
+
+		Row(int number) {
+			this.number = number;
+		}
+
+		void setParent(Row parent) {
+			this.parent = parent;
+			parent.children.add(this);
+		}
+	}
+
+}
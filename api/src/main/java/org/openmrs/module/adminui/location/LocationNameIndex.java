@@ -0,0 +1,126 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * An immutable prefix index of the location names. Every word of a name is a key, from where the
+ * word starts to the end of the name, and the keys are kept in one sorted array so the locations
+ * with a word starting with the query are a contiguous range found by binary search.
+ */
+public class LocationNameIndex {
+
+	private static final Comparator<Key> BY_TEXT = new Comparator<Key>() {
+
+		@Override
+		public int compare(Key a, Key b) {
+			return a.text.compareTo(b.text);
+		}
+	};
+
+	private final Key[] keys;
+
+	private final List<LocationNode> nodesByName;
+
+	/**
+	 * @param nodes all the locations, their parent location names are filled in
+	 */
+	public LocationNameIndex(Collection<LocationNode> nodes) {
+		Map<Integer, LocationNode> nodesById = new HashMap<Integer, LocationNode>(nodes.size() * 4 / 3 + 1);
+		for (LocationNode node : nodes) {
+			nodesById.put(node.getLocationId(), node);
+		}
+
+		List<Key> keyList = new ArrayList<Key>(nodes.size() * 2);
+		for (LocationNode node : nodes) {
+			LocationNode parent = node.getParentLocationId() != null ? nodesById.get(node.getParentLocationId()) : null;
+			node.setParentLocationName(parent != null ? parent.getName() : null);
+
+			String name = StringUtils.defaultString(node.getName()).toLowerCase();
+			for (int i = 0; i < name.length(); i++) {
+				if (Character.isLetterOrDigit(name.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(name.charAt(i - 1)))) {
+					keyList.add(new Key(name.substring(i), node));
+				}
+			}
+		}
+		keys = keyList.toArray(new Key[keyList.size()]);
+		Arrays.sort(keys, BY_TEXT);
+
+		nodesByName = new ArrayList<LocationNode>(nodes);
+		Collections.sort(nodesByName, LocationHierarchy.BY_NAME);
+	}
+
+	/**
+	 * Gets the locations with a word in their name starting with the query, or all of them for a
+	 * blank query
+	 *
+	 * @param query the start of a word, case insensitive
+	 * @param includeRetired whether to include retired locations
+	 * @return the matching locations sorted by name
+	 */
+	public List<LocationNode> search(String query, boolean includeRetired) {
+		List<LocationNode> ret = new ArrayList<LocationNode>();
+		if (StringUtils.isBlank(query)) {
+			for (LocationNode node : nodesByName) {
+				if (includeRetired || !node.isRetired()) {
+					ret.add(node);
+				}
+			}
+			return ret;
+		}
+
+		String prefix = query.trim().toLowerCase();
+		int i = Arrays.binarySearch(keys, new Key(prefix, null), BY_TEXT);
+		if (i < 0) {
+			i = -i - 1;
+		}
+		Set<LocationNode> matches = new LinkedHashSet<LocationNode>();
+		for (; i < keys.length && keys[i].text.startsWith(prefix); i++) {
+			if (includeRetired || !keys[i].node.isRetired()) {
+				matches.add(keys[i].node);
+			}
+		}
+		ret.addAll(matches);
+		Collections.sort(ret, LocationHierarchy.BY_NAME);
+		return ret;
+	}
+
+	/**
+	 * @return the number of indexed locations
+	 */
+	public int size() {
+		return nodesByName.size();
+	}
+
+	private static class Key {
+
+		private final String text;
+
+		private final LocationNode node;
+
+		Key(String text, LocationNode node) {
+			this.text = text;
+			this.node = node;
+		}
+	}
+
+}
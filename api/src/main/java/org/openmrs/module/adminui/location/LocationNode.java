@@ -0,0 +1,125 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A location in a {@link LocationHierarchy} made of plain values, unlike {@link org.openmrs.Location}
+ * walking its children never triggers a lazy load
+ */
+public class LocationNode {
+
+	private final Integer locationId;
+
+	private final Integer parentLocationId;
+
+	private final String name;
+
+	private final boolean retired;
+
+	private final List<String> tags = new ArrayList<String>();
+
+	private final List<LocationNode> children = new ArrayList<LocationNode>();
+
+	private int childCount;
+
+	private String parentLocationName;
+
+	private String description;
+
+	public LocationNode(Integer locationId, Integer parentLocationId, String name, boolean retired) {
+		this.locationId = locationId;
+		this.parentLocationId = parentLocationId;
+		this.name = name;
+		this.retired = retired;
+	}
+
+	public Integer getLocationId() {
+		return locationId;
+	}
+
+	/**
+	 * @return the id of the parent location, null for a root location
+	 */
+	public Integer getParentLocationId() {
+		return parentLocationId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isRetired() {
+		return retired;
+	}
+
+	/**
+	 * @return the names of the location's tags sorted by name
+	 */
+	public List<String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * @return the child locations sorted by name, only filled in for the nodes of a
+	 *         {@link LocationHierarchy}
+	 */
+	public List<LocationNode> getChildren() {
+		return children;
+	}
+
+	/**
+	 * @return the number of child locations, also known when the children are not loaded
+	 */
+	public int getChildCount() {
+		return childCount;
+	}
+
+	/**
+	 * @param childCount the childCount to set
+	 */
+	public void setChildCount(int childCount) {
+		this.childCount = childCount;
+	}
+
+	/**
+	 * @return the name of the parent location, only filled in for the results of
+	 *         {@link AdminUiLocationService#searchLocations(String, boolean, int, int)} and
+	 *         {@link AdminUiLocationService#getLocations(String, Integer, Integer, boolean, String, int, int)}
+	 */
+	public String getParentLocationName() {
+		return parentLocationName;
+	}
+
+	/**
+	 * @param parentLocationName the parentLocationName to set
+	 */
+	public void setParentLocationName(String parentLocationName) {
+		this.parentLocationName = parentLocationName;
+	}
+
+	/**
+	 * @return the description of the location, only filled in for the results of
+	 *         {@link AdminUiLocationService#getLocations(String, Integer, Integer, boolean, String, int, int)}
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * @param description the description to set
+	 */
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+}
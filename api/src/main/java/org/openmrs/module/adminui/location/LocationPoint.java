@@ -0,0 +1,84 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+/**
+ * The position of a location, made of plain values so a {@link LocationSpatialIndex} holds no
+ * entities
+ */
+public class LocationPoint {
+
+	private final Integer locationId;
+
+	private final String name;
+
+	private final double latitude;
+
+	private final double longitude;
+
+	public LocationPoint(Integer locationId, String name, double latitude, double longitude) {
+		this.locationId = locationId;
+		this.name = name;
+		this.latitude = latitude;
+		this.longitude = longitude;
+	}
+
+	/**
+	 * Parses the latitude and longitude of a location, which are kept as text
+	 *
+	 * @param locationId the id of the location
+	 * @param name the name of the location
+	 * @param latitude the latitude in decimal degrees
+	 * @param longitude the longitude in decimal degrees
+	 * @return the point, or null if a coordinate is missing, not a finite number or out of range
+	 */
+	public static LocationPoint valueOf(Integer locationId, String name, String latitude, String longitude) {
+		if (latitude == null || longitude == null) {
+			return null;
+		}
+		try {
+			double lat = Double.parseDouble(latitude.trim());
+			double lon = Double.parseDouble(longitude.trim());
+			if (Double.isNaN(lat) || Double.isInfinite(lat) || Double.isNaN(lon) || Double.isInfinite(lon)) {
+				return null;
+			}
+			if (Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+				return null;
+			}
+			return new LocationPoint(locationId, name, lat, lon);
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	public Integer getLocationId() {
+		return locationId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the latitude in decimal degrees
+	 */
+	public double getLatitude() {
+		return latitude;
+	}
+
+	/**
+	 * @return the longitude in decimal degrees
+	 */
+	public double getLongitude() {
+		return longitude;
+	}
+
+}
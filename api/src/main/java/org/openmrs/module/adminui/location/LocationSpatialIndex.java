@@ -0,0 +1,213 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * An immutable k-d tree of the location positions for finding the locations nearest to a point or
+ * within a distance of it in logarithmic time.
+ * <p>
+ * The positions are stored as points on the unit sphere rather than as latitudes and longitudes,
+ * so the straight line distance between two points grows with the great circle distance between
+ * them and searches need no special case near the poles or across the antimeridian.
+ */
+public class LocationSpatialIndex {
+
+	/**
+	 * The mean radius of the earth in metres
+	 */
+	public static final double EARTH_RADIUS = 6371008.8;
+
+	private static final Comparator<Candidate> FARTHEST_FIRST = new Comparator<Candidate>() {
+
+		@Override
+		public int compare(Candidate a, Candidate b) {
+			return Double.compare(b.distanceSquared, a.distanceSquared);
+		}
+	};
+
+	private static final Comparator<Candidate> NEAREST_FIRST = Collections.reverseOrder(FARTHEST_FIRST);
+
+	/**
+	 * The tree laid out in an array, the node of each range is at its middle with the nodes before
+	 * it on one side of its splitting plane and those after it on the other
+	 */
+	private final Entry[] tree;
+
+	/**
+	 * @param locations the positions of the locations
+	 */
+	public LocationSpatialIndex(Collection<LocationPoint> locations) {
+		tree = new Entry[locations.size()];
+		int i = 0;
+		for (LocationPoint location : locations) {
+			tree[i++] = new Entry(location);
+		}
+		build(0, tree.length, 0);
+	}
+
+	/**
+	 * Gets the locations nearest to a point
+	 *
+	 * @param latitude the latitude of the point in decimal degrees
+	 * @param longitude the longitude of the point in decimal degrees
+	 * @param count the maximum number of locations to return
+	 * @return the nearest locations, nearest first
+	 */
+	public List<NearbyLocation> getNearest(double latitude, double longitude, int count) {
+		if (count <= 0 || tree.length == 0) {
+			return new ArrayList<NearbyLocation>();
+		}
+		PriorityQueue<Candidate> nearest = new PriorityQueue<Candidate>(Math.min(count, tree.length), FARTHEST_FIRST);
+		findNearest(toUnitVector(latitude, longitude), count, 0, tree.length, 0, nearest);
+		return toResults(new ArrayList<Candidate>(nearest));
+	}
+
+	/**
+	 * Gets the locations within a distance of a point
+	 *
+	 * @param latitude the latitude of the point in decimal degrees
+	 * @param longitude the longitude of the point in decimal degrees
+	 * @param distance the maximum great circle distance in metres
+	 * @return the locations within the distance, nearest first
+	 */
+	public List<NearbyLocation> getWithinDistance(double latitude, double longitude, double distance) {
+		List<Candidate> found = new ArrayList<Candidate>();
+		if (distance >= 0 && tree.length > 0) {
+			double chord = 2 * Math.sin(Math.min(distance / EARTH_RADIUS, Math.PI) / 2);
+			findWithin(toUnitVector(latitude, longitude), chord * chord, 0, tree.length, 0, found);
+		}
+		return toResults(found);
+	}
+
+	/**
+	 * @return the number of indexed locations
+	 */
+	public int size() {
+		return tree.length;
+	}
+
+	private void build(int from, int to, final int axis) {
+		if (to - from < 2) {
+			return;
+		}
+		Arrays.sort(tree, from, to, new Comparator<Entry>() {
+
+			@Override
+			public int compare(Entry a, Entry b) {
+				return Double.compare(a.coordinates[axis], b.coordinates[axis]);
+			}
+		});
+		int middle = (from + to) >>> 1;
+		build(from, middle, (axis + 1) % 3);
+		build(middle + 1, to, (axis + 1) % 3);
+	}
+
+	private void findNearest(double[] point, int count, int from, int to, int axis, PriorityQueue<Candidate> nearest) {
+		if (from >= to) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		Entry entry = tree[middle];
+		double distanceSquared = entry.distanceSquared(point);
+		if (nearest.size() < count) {
+			nearest.add(new Candidate(entry, distanceSquared));
+		} else if (distanceSquared < nearest.peek().distanceSquared) {
+			nearest.poll();
+			nearest.add(new Candidate(entry, distanceSquared));
+		}
+
+		// search the side of the plane the point is on first, then the other side only if it can
+		// hold a point nearer than the farthest one found
+		double offset = point[axis] - entry.coordinates[axis];
+		int next = (axis + 1) % 3;
+		boolean before = offset < 0;
+		findNearest(point, count, before ? from : middle + 1, before ? middle : to, next, nearest);
+		if (nearest.size() < count || offset * offset < nearest.peek().distanceSquared) {
+			findNearest(point, count, before ? middle + 1 : from, before ? to : middle, next, nearest);
+		}
+	}
+
+	private void findWithin(double[] point, double maxDistanceSquared, int from, int to, int axis, List<Candidate> found) {
+		if (from >= to) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		Entry entry = tree[middle];
+		double distanceSquared = entry.distanceSquared(point);
+		if (distanceSquared <= maxDistanceSquared) {
+			found.add(new Candidate(entry, distanceSquared));
+		}
+
+		double offset = point[axis] - entry.coordinates[axis];
+		int next = (axis + 1) % 3;
+		if (offset <= 0 || offset * offset <= maxDistanceSquared) {
+			findWithin(point, maxDistanceSquared, from, middle, next, found);
+		}
+		if (offset >= 0 || offset * offset <= maxDistanceSquared) {
+			findWithin(point, maxDistanceSquared, middle + 1, to, next, found);
+		}
+	}
+
+	private List<NearbyLocation> toResults(List<Candidate> candidates) {
+		Collections.sort(candidates, NEAREST_FIRST);
+		List<NearbyLocation> ret = new ArrayList<NearbyLocation>(candidates.size());
+		for (Candidate candidate : candidates) {
+			double chord = Math.sqrt(candidate.distanceSquared);
+			ret.add(new NearbyLocation(candidate.entry.location, 2 * EARTH_RADIUS * Math.asin(Math.min(chord / 2, 1))));
+		}
+		return ret;
+	}
+
+	private static double[] toUnitVector(double latitude, double longitude) {
+		double lat = Math.toRadians(latitude);
+		double lon = Math.toRadians(longitude);
+		return new double[] { Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat) };
+	}
+
+	private static class Entry {
+
+		private final LocationPoint location;
+
+		private final double[] coordinates;
+
+		Entry(LocationPoint location) {
+			this.location = location;
+			this.coordinates = toUnitVector(location.getLatitude(), location.getLongitude());
+		}
+
+		double distanceSquared(double[] point) {
+			double dx = coordinates[0] - point[0];
+			double dy = coordinates[1] - point[1];
+			double dz = coordinates[2] - point[2];
+			return dx * dx + dy * dy + dz * dz;
+		}
+	}
+
+	private static class Candidate {
+
+		private final Entry entry;
+
+		private final double distanceSquared;
+
+		Candidate(Entry entry, double distanceSquared) {
+			this.entry = entry;
+			this.distanceSquared = distanceSquared;
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A version stamp of the locations and location tags, anything derived from them can be cached
+ * along with the version it was computed at and reused for as long as the version doesn't change.
+ * It is changed by {@link LocationVersionAdvice} when locations or tags are saved, retired or purged
+ * through the LocationService and by the module's own bulk updates.
+ * <p>
+ * It starts from the time the module started so that versions handed out before a restart, e.g.
+ * in ETags, are never mistaken for current ones.
+ */
+public class LocationVersion {
+
+	private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+	/**
+	 * @return the current version
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * @return the current version as a strong HTTP entity tag, to be read before what it stamps is
+	 *         loaded so that a change made meanwhile leaves the response stamped as outdated
+	 */
+	public String getETag() {
+		return "\"" + getVersion() + "\"";
+	}
+
+	/**
+	 * @param ifNoneMatch the If-None-Match header of a request, may be null
+	 * @param etag the entity tag of the current version
+	 * @return true if the header lists the entity tag, weak or not, or is *
+	 */
+	public static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.equals("*") || candidate.equals(etag) || candidate.equals("W/" + etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Changes the version once the current transaction completes, or right away if there is none.
+	 * Waiting for the transaction keeps a cache from being rebuilt from data that isn't committed yet
+	 * and then being stamped with the new version.
+	 */
+	public void locationsChanged() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCompletion(int status) {
+					version.incrementAndGet();
+				}
+			});
+		} else {
+			version.incrementAndGet();
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import java.lang.reflect.Method;
+import java.util.regex.Pattern;
+
+import org.openmrs.Location;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.context.Context;
+import org.springframework.aop.AfterReturningAdvice;
+
+/**
+ * Changes the {@link LocationVersion} when locations or location tags are saved, retired,
+ * unretired or purged through the {@link LocationService}, and keeps the materialized location
+ * paths up to date when locations are saved or purged. It is registered as advice around the
+ * LocationService in config.xml and runs in the transaction of the advised method.
+ */
+public class LocationVersionAdvice implements AfterReturningAdvice {
+	
+	private static final Pattern CHANGING_METHODS = Pattern.compile("(save|retire|unretire|purge)Location(Tag)?");
+	
+	/**
+	 * @see org.springframework.aop.AfterReturningAdvice#afterReturning(Object, Method, Object[],
+	 *      Object)
+	 * @should refresh the path of a saved location
+	 * @should remove the path of a purged location
+	 * @should only change the version for a saved location tag
+	 */
+	@Override
+	public void afterReturning(Object returnValue, Method method, Object[] args, Object target) throws Throwable {
+		if (!CHANGING_METHODS.matcher(method.getName()).matches()) {
+			return;
+		}
+		if ("saveLocation".equals(method.getName())) {
+			getAdminLocationService().refreshLocationPath((Location) (returnValue != null ? returnValue : args[0]));
+		} else if ("purgeLocation".equals(method.getName())) {
+			getAdminLocationService().removeLocationPath((Location) args[0]);
+		}
+		getLocationVersion().locationsChanged();
+	}
+	
+	AdminUiLocationService getAdminLocationService() {
+		return Context.getService(AdminUiLocationService.class);
+	}
+	
+	LocationVersion getLocationVersion() {
+		return Context.getRegisteredComponent("adminLocationVersion", LocationVersion.class);
+	}
+	
+}
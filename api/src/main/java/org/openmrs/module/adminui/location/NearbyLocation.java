@@ -0,0 +1,37 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+/**
+ * A location found near a point by a {@link LocationSpatialIndex}
+ */
+public class NearbyLocation {
+
+	private final LocationPoint location;
+
+	private final double distance;
+
+	public NearbyLocation(LocationPoint location, double distance) {
+		this.location = location;
+		this.distance = distance;
+	}
+
+	public LocationPoint getLocation() {
+		return location;
+	}
+
+	/**
+	 * @return the great circle distance to the point in metres
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+}
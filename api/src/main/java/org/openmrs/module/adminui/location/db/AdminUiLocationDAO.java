@@ -0,0 +1,251 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location.db;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+import org.openmrs.User;
+
+import org.openmrs.module.adminui.location.AdminUiLocationService;
+import org.openmrs.module.adminui.location.LocationNode;
+import org.openmrs.module.adminui.location.LocationPoint;
+
+/**
+ * Database access for {@link AdminUiLocationService}
+ */
+public interface AdminUiLocationDAO {
+
+	/**
+	 * The most location ids a single bulk update is given, to stay within the parameter limits of
+	 * the databases
+	 */
+	int MAX_IDS_PER_UPDATE = 1000;
+
+	/**
+	 * Gets every location, retired ones included, as an unlinked node without tags in a single query
+	 *
+	 * @return the location nodes
+	 */
+	List<LocationNode> getLocationNodes();
+
+	/**
+	 * Gets the direct children of a location as unlinked nodes without tags but with their child
+	 * counts in a single query
+	 *
+	 * @param parentLocationId the id of the parent location, null for the root locations
+	 * @return the child location nodes sorted by name
+	 */
+	List<LocationNode> getChildLocationNodes(Integer parentLocationId);
+
+	/**
+	 * Gets a page of the matching locations as unlinked nodes without tags, with their
+	 * descriptions and parent location names, in a single query
+	 *
+	 * @see AdminUiLocationService#getLocations(String, Integer, Integer, boolean, String, int, int)
+	 */
+	List<LocationNode> getLocationNodes(String query, Integer locationTagId, Integer parentLocationId,
+	                                    boolean includeRetired, String sortBy, int startIndex, int length);
+
+	/**
+	 * Counts the matching locations in a single query
+	 *
+	 * @see #getLocationNodes(String, Integer, Integer, boolean, String, int, int)
+	 */
+	long getLocationNodeCount(String query, Integer locationTagId, Integer parentLocationId, boolean includeRetired);
+
+	/**
+	 * Gets the positions of the unretired locations with a valid latitude and longitude in a single
+	 * query
+	 *
+	 * @return the location points
+	 */
+	List<LocationPoint> getLocationPoints();
+
+	/**
+	 * Gets the tag names of the specified locations in a single query
+	 *
+	 * @param locationIds the ids of the locations, null for all locations
+	 * @return the tag names keyed by location id, locations without tags are left out
+	 */
+	Map<Integer, List<String>> getTagNamesByLocationId(Collection<Integer> locationIds);
+
+	/**
+	 * Gets the location tags with the specified ids in a single query
+	 *
+	 * @param locationTagIds the ids of the tags
+	 * @return the tags, ids without a tag are left out
+	 */
+	List<LocationTag> getLocationTags(Collection<Integer> locationTagIds);
+
+	/**
+	 * Counts the locations of each location tag in a single grouped query
+	 *
+	 * @return the location counts keyed by location tag id, tags without locations are left out
+	 */
+	Map<Integer, Integer> getLocationCountsByTagId();
+
+	/**
+	 * Gets the ids of all locations keyed by uuid in a single query
+	 *
+	 * @return the location ids by uuid
+	 */
+	Map<String, Integer> getLocationIdsByUuid();
+
+	/**
+	 * Gets references to the locations with the specified ids from the current session, the
+	 * locations are only read once a property other than the id is used
+	 *
+	 * @param locationIds the ids of the locations
+	 * @return the references in the order of the ids
+	 */
+	List<Location> loadLocations(Collection<Integer> locationIds);
+
+	/**
+	 * Gets references to the location tags with the specified ids from the current session, the tags
+	 * are only read once a property other than the id is used
+	 *
+	 * @param locationTagIds the ids of the tags
+	 * @return the references in the order of the ids
+	 */
+	List<LocationTag> loadLocationTags(Collection<Integer> locationTagIds);
+
+	/**
+	 * Flushes the pending changes and evicts everything from the session
+	 */
+	void flushAndClearSession();
+
+	/**
+	 * Evicts everything from the session without flushing the pending changes
+	 */
+	void clearSession();
+
+	/**
+	 * Gets the ids of the specified locations that were retired at the specified date with the
+	 * specified reason, with queries of at most {@link #MAX_IDS_PER_UPDATE} locations each
+	 *
+	 * @param locationIds the ids of the locations
+	 * @param dateRetired the date the locations were retired
+	 * @param retireReason the reason the locations were retired for
+	 * @return the ids of the locations retired at the date with the reason
+	 */
+	List<Integer> getLocationIdsRetiredWith(Collection<Integer> locationIds, Date dateRetired, String retireReason);
+
+	/**
+	 * Retires or unretires the specified locations with bulk updates of at most
+	 * {@link #MAX_IDS_PER_UPDATE} locations each, bypassing the session
+	 *
+	 * @param locationIds the ids of the locations
+	 * @param retired whether to retire or unretire the locations
+	 * @param user the user retiring the locations, also recorded as the user who changed them
+	 * @param date the date the locations are retired or changed
+	 * @param retireReason the reason for retiring the locations, ignored when unretiring them
+	 * @return the number of updated locations
+	 */
+	int setRetired(Collection<Integer> locationIds, boolean retired, User user, Date date, String retireReason);
+
+	/**
+	 * Adds a tag to the specified locations that don't have it yet with set based inserts into the
+	 * location tag table, of at most {@link #MAX_IDS_PER_UPDATE} locations each, bypassing the
+	 * session. The tagged locations are recorded as changed by the user.
+	 *
+	 * @param locationTagId the id of the tag
+	 * @param locationIds the ids of the locations
+	 * @param user the user adding the tag
+	 * @param date the date the locations are changed
+	 * @return the number of locations the tag was added to
+	 */
+	int addLocationTag(Integer locationTagId, Collection<Integer> locationIds, User user, Date date);
+
+	/**
+	 * Removes a tag from the specified locations that have it with set based deletes from the
+	 * location tag table, of at most {@link #MAX_IDS_PER_UPDATE} locations each, bypassing the
+	 * session. The untagged locations are recorded as changed by the user.
+	 *
+	 * @param locationTagId the id of the tag
+	 * @param locationIds the ids of the locations
+	 * @param user the user removing the tag
+	 * @param date the date the locations are changed
+	 * @return the number of locations the tag was removed from
+	 */
+	int removeLocationTag(Integer locationTagId, Collection<Integer> locationIds, User user, Date date);
+
+	/**
+	 * Counts the specified locations that don't have a tag yet, or that have it, with queries of at
+	 * most {@link #MAX_IDS_PER_UPDATE} locations each
+	 *
+	 * @param locationTagId the id of the tag
+	 * @param locationIds the ids of the locations
+	 * @param add whether to count the locations the tag would be added to or removed from
+	 * @return the number of locations that would change
+	 */
+	int countLocationTagChanges(Integer locationTagId, Collection<Integer> locationIds, boolean add);
+
+	/**
+	 * Gets the materialized path of a location, the ids of its ancestors and its own id, each
+	 * followed by a slash and starting with one, e.g. /1/5/12/
+	 *
+	 * @param locationId the id of the location
+	 * @return the path or null if the location has none
+	 */
+	String getLocationPath(Integer locationId);
+
+	/**
+	 * Gets the locations whose paths start with the prefix with an indexed query
+	 *
+	 * @param pathPrefix the start of the paths
+	 * @return the unlinked location nodes without tags, by depth then name
+	 */
+	List<LocationNode> getLocationNodesByPathPrefix(String pathPrefix);
+
+	/**
+	 * @return the number of locations with a materialized path
+	 */
+	long countLocationPaths();
+
+	/**
+	 * Adds the path of a location that has none
+	 *
+	 * @param locationId the id of the location
+	 * @param path the location's path
+	 * @param depth the number of ancestors of the location
+	 */
+	void insertLocationPath(Integer locationId, String path, int depth);
+
+	/**
+	 * Deletes the path of a location
+	 *
+	 * @param locationId the id of the location
+	 */
+	void deleteLocationPath(Integer locationId);
+
+	/**
+	 * Moves a location and the locations under it to a new path with a single update
+	 *
+	 * @param oldPath the current path of the location
+	 * @param newPath the new path of the location
+	 * @param depthChange the difference between the new and the old depth of the location
+	 * @return the number of updated paths
+	 */
+	int moveLocationPaths(String oldPath, String newPath, int depthChange);
+
+	/**
+	 * Replaces the paths of all the locations with batched inserts
+	 *
+	 * @param paths the paths by location id
+	 * @param depths the depths by location id
+	 */
+	void replaceLocationPaths(Map<Integer, String> paths, Map<Integer, Integer> depths);
+
+}
@@ -0,0 +1,536 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.Work;
+import org.hibernate.type.StandardBasicTypes;
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+import org.openmrs.User;
+import org.openmrs.module.adminui.location.AdminUiLocationService;
+import org.openmrs.module.adminui.location.LocationNode;
+import org.openmrs.module.adminui.location.LocationPoint;
+import org.openmrs.module.adminui.location.db.AdminUiLocationDAO;
+
+public class HibernateAdminUiLocationDAO implements AdminUiLocationDAO {
+
+	private SessionFactory sessionFactory;
+
+	/**
+	 * @param sessionFactory the sessionFactory to set
+	 */
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getLocationNodes()
+	 */
+	@Override
+	public List<LocationNode> getLocationNodes() {
+		Query q = sessionFactory.getCurrentSession().createQuery(
+		    "select l.locationId, p.locationId, l.name, l.retired from Location l left join l.parentLocation p");
+		List<?> rows = q.list();
+		List<LocationNode> nodes = new ArrayList<LocationNode>(rows.size());
+		for (Object o : rows) {
+			Object[] row = (Object[]) o;
+			nodes.add(new LocationNode((Integer) row[0], (Integer) row[1], (String) row[2], Boolean.TRUE.equals(row[3])));
+		}
+		return nodes;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getChildLocationNodes(Integer)
+	 */
+	@Override
+	public List<LocationNode> getChildLocationNodes(Integer parentLocationId) {
+		StringBuilder hql = new StringBuilder("select l.locationId, l.name, l.retired, count(c.locationId)");
+		hql.append(" from Location l left join l.childLocations c");
+		hql.append(parentLocationId != null ? " where l.parentLocation.locationId = :parentLocationId"
+		        : " where l.parentLocation is null");
+		hql.append(" group by l.locationId, l.name, l.retired order by l.name, l.locationId");
+
+		Query q = sessionFactory.getCurrentSession().createQuery(hql.toString());
+		if (parentLocationId != null) {
+			q.setInteger("parentLocationId", parentLocationId);
+		}
+		List<LocationNode> nodes = new ArrayList<LocationNode>();
+		for (Object o : q.list()) {
+			Object[] row = (Object[]) o;
+			LocationNode node = new LocationNode((Integer) row[0], parentLocationId, (String) row[1],
+			        Boolean.TRUE.equals(row[2]));
+			node.setChildCount(((Number) row[3]).intValue());
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getLocationNodes(String, Integer,
+	 *      Integer, boolean, String, int, int)
+	 */
+	@Override
+	public List<LocationNode> getLocationNodes(String query, Integer locationTagId, Integer parentLocationId,
+	                                          boolean includeRetired, String sortBy, int startIndex, int length) {
+		Query q = createLocationNodeQuery("select l.locationId, p.locationId, l.name, l.retired, l.description, p.name",
+		    query, locationTagId, parentLocationId, includeRetired, getOrderBy(sortBy));
+		q.setFirstResult(startIndex);
+		q.setMaxResults(length);
+
+		List<?> rows = q.list();
+		List<LocationNode> nodes = new ArrayList<LocationNode>(rows.size());
+		for (Object o : rows) {
+			Object[] row = (Object[]) o;
+			LocationNode node = new LocationNode((Integer) row[0], (Integer) row[1], (String) row[2],
+			        Boolean.TRUE.equals(row[3]));
+			node.setDescription((String) row[4]);
+			node.setParentLocationName((String) row[5]);
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getLocationNodeCount(String,
+	 *      Integer, Integer, boolean)
+	 */
+	@Override
+	public long getLocationNodeCount(String query, Integer locationTagId, Integer parentLocationId, boolean includeRetired) {
+		Query q = createLocationNodeQuery("select count(l.locationId)", query, locationTagId, parentLocationId,
+		    includeRetired, "");
+		return ((Number) q.uniqueResult()).longValue();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getLocationPoints()
+	 */
+	@Override
+	public List<LocationPoint> getLocationPoints() {
+		List<?> rows = sessionFactory.getCurrentSession().createQuery(
+		    "select l.locationId, l.name, l.latitude, l.longitude from Location l where l.retired = false"
+		            + " and l.latitude is not null and l.longitude is not null").list();
+		List<LocationPoint> points = new ArrayList<LocationPoint>(rows.size());
+		for (Object o : rows) {
+			Object[] row = (Object[]) o;
+			LocationPoint point = LocationPoint.valueOf((Integer) row[0], (String) row[1], (String) row[2], (String) row[3]);
+			if (point != null) {
+				points.add(point);
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getTagNamesByLocationId(Collection)
+	 */
+	@Override
+	public Map<Integer, List<String>> getTagNamesByLocationId(Collection<Integer> locationIds) {
+		Map<Integer, List<String>> ret = new HashMap<Integer, List<String>>();
+		if (locationIds != null && locationIds.isEmpty()) {
+			return ret;
+		}
+		Query q = sessionFactory.getCurrentSession().createQuery(
+		    "select l.locationId, t.name from Location l join l.tags t"
+		            + (locationIds != null ? " where l.locationId in (:locationIds)" : ""));
+		if (locationIds != null) {
+			q.setParameterList("locationIds", locationIds);
+		}
+		for (Object o : q.list()) {
+			Object[] row = (Object[]) o;
+			List<String> names = ret.get(row[0]);
+			if (names == null) {
+				names = new ArrayList<String>();
+				ret.put((Integer) row[0], names);
+			}
+			names.add((String) row[1]);
+		}
+		return ret;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getLocationTags(Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<LocationTag> getLocationTags(Collection<Integer> locationTagIds) {
+		Query q = sessionFactory.getCurrentSession().createQuery(
+		    "from LocationTag t where t.locationTagId in (:locationTagIds)");
+		q.setParameterList("locationTagIds", locationTagIds);
+		return q.list();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getLocationCountsByTagId()
+	 */
+	@Override
+	public Map<Integer, Integer> getLocationCountsByTagId() {
+		List<?> rows = sessionFactory.getCurrentSession()
+		        .createQuery("select t.locationTagId, count(l.locationId) from Location l join l.tags t group by t.locationTagId")
+		        .list();
+		Map<Integer, Integer> ret = new HashMap<Integer, Integer>(rows.size() * 4 / 3 + 1);
+		for (Object o : rows) {
+			Object[] row = (Object[]) o;
+			ret.put((Integer) row[0], ((Number) row[1]).intValue());
+		}
+		return ret;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getLocationIdsByUuid()
+	 */
+	@Override
+	public Map<String, Integer> getLocationIdsByUuid() {
+		List<?> rows = sessionFactory.getCurrentSession().createQuery("select l.uuid, l.locationId from Location l").list();
+		Map<String, Integer> ret = new HashMap<String, Integer>(rows.size() * 4 / 3 + 1);
+		for (Object o : rows) {
+			Object[] row = (Object[]) o;
+			ret.put((String) row[0], (Integer) row[1]);
+		}
+		return ret;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#loadLocations(Collection)
+	 */
+	@Override
+	public List<Location> loadLocations(Collection<Integer> locationIds) {
+		List<Location> locations = new ArrayList<Location>(locationIds.size());
+		for (Integer locationId : locationIds) {
+			locations.add((Location) sessionFactory.getCurrentSession().load(Location.class, locationId));
+		}
+		return locations;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#loadLocationTags(Collection)
+	 */
+	@Override
+	public List<LocationTag> loadLocationTags(Collection<Integer> locationTagIds) {
+		List<LocationTag> tags = new ArrayList<LocationTag>(locationTagIds.size());
+		for (Integer locationTagId : locationTagIds) {
+			tags.add((LocationTag) sessionFactory.getCurrentSession().load(LocationTag.class, locationTagId));
+		}
+		return tags;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#flushAndClearSession()
+	 */
+	@Override
+	public void flushAndClearSession() {
+		sessionFactory.getCurrentSession().flush();
+		sessionFactory.getCurrentSession().clear();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#clearSession()
+	 */
+	@Override
+	public void clearSession() {
+		sessionFactory.getCurrentSession().clear();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getLocationIdsRetiredWith(Collection,
+	 *      Date, String)
+	 */
+	@Override
+	public List<Integer> getLocationIdsRetiredWith(Collection<Integer> locationIds, Date dateRetired, String retireReason) {
+		String hql = "select l.locationId from Location l where l.locationId in (:locationIds) and l.retired = true"
+		        + " and l.dateRetired = :dateRetired and "
+		        + (retireReason != null ? "l.retireReason = :retireReason" : "l.retireReason is null");
+		List<Integer> ids = new ArrayList<Integer>(locationIds);
+		List<Integer> ret = new ArrayList<Integer>();
+		for (int from = 0; from < ids.size(); from += MAX_IDS_PER_UPDATE) {
+			Query q = sessionFactory.getCurrentSession().createQuery(hql);
+			q.setParameterList("locationIds", ids.subList(from, Math.min(from + MAX_IDS_PER_UPDATE, ids.size())));
+			q.setTimestamp("dateRetired", dateRetired);
+			if (retireReason != null) {
+				q.setString("retireReason", retireReason);
+			}
+			for (Object id : q.list()) {
+				ret.add((Integer) id);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#setRetired(Collection, boolean,
+	 *      User, Date, String)
+	 */
+	@Override
+	public int setRetired(Collection<Integer> locationIds, boolean retired, User user, Date date, String retireReason) {
+		String hql = retired ? "update Location set retired = true, retiredBy = :user, dateRetired = :date,"
+		        + " retireReason = :retireReason, changedBy = :user, dateChanged = :date"
+		        + " where locationId in (:locationIds) and retired = false"
+		        : "update Location set retired = false, retiredBy = null, dateRetired = null, retireReason = null,"
+		                + " changedBy = :user, dateChanged = :date where locationId in (:locationIds) and retired = true";
+		List<Integer> ids = new ArrayList<Integer>(locationIds);
+		int updated = 0;
+		for (int from = 0; from < ids.size(); from += MAX_IDS_PER_UPDATE) {
+			Query q = sessionFactory.getCurrentSession().createQuery(hql);
+			q.setParameter("user", user);
+			q.setTimestamp("date", date);
+			if (retired) {
+				q.setString("retireReason", retireReason);
+			}
+			q.setParameterList("locationIds", ids.subList(from, Math.min(from + MAX_IDS_PER_UPDATE, ids.size())));
+			updated += q.executeUpdate();
+		}
+		return updated;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#addLocationTag(Integer,
+	 *      Collection, User, Date)
+	 */
+	@Override
+	public int addLocationTag(Integer locationTagId, Collection<Integer> locationIds, User user, Date date) {
+		return updateLocationTags(locationTagId, locationIds, user, date, "not exists",
+		    "insert into location_tag_map (location_id, location_tag_id) select l.location_id, :locationTagId"
+		            + " from location l where l.location_id in (:locationIds) and not exists (select 1 from"
+		            + " location_tag_map m where m.location_id = l.location_id and m.location_tag_id = :locationTagId)");
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#removeLocationTag(Integer,
+	 *      Collection, User, Date)
+	 */
+	@Override
+	public int removeLocationTag(Integer locationTagId, Collection<Integer> locationIds, User user, Date date) {
+		return updateLocationTags(locationTagId, locationIds, user, date, "exists",
+		    "delete from location_tag_map where location_tag_id = :locationTagId and location_id in (:locationIds)");
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#countLocationTagChanges(Integer,
+	 *      Collection, boolean)
+	 */
+	@Override
+	public int countLocationTagChanges(Integer locationTagId, Collection<Integer> locationIds, boolean add) {
+		String sql = "select count(*) from location l where l.location_id in (:locationIds) and "
+		        + (add ? "not exists" : "exists") + " (select 1 from location_tag_map m where m.location_id ="
+		        + " l.location_id and m.location_tag_id = :locationTagId)";
+		List<Integer> ids = new ArrayList<Integer>(locationIds);
+		int count = 0;
+		for (int from = 0; from < ids.size(); from += MAX_IDS_PER_UPDATE) {
+			SQLQuery q = sessionFactory.getCurrentSession().createSQLQuery(sql);
+			q.setInteger("locationTagId", locationTagId);
+			q.setParameterList("locationIds", ids.subList(from, Math.min(from + MAX_IDS_PER_UPDATE, ids.size())));
+			count += ((Number) q.uniqueResult()).intValue();
+		}
+		return count;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getLocationPath(Integer)
+	 */
+	@Override
+	public String getLocationPath(Integer locationId) {
+		return (String) sessionFactory.getCurrentSession()
+		        .createSQLQuery("select path from adminui_location_path where location_id = :locationId")
+		        .setInteger("locationId", locationId).uniqueResult();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#getLocationNodesByPathPrefix(String)
+	 */
+	@Override
+	public List<LocationNode> getLocationNodesByPathPrefix(String pathPrefix) {
+		SQLQuery q = sessionFactory.getCurrentSession().createSQLQuery(
+		    "select l.location_id, l.parent_location, l.name, l.retired from adminui_location_path p"
+		            + " join location l on l.location_id = p.location_id where p.path like :pathPrefix"
+		            + " order by p.depth, l.name, l.location_id");
+		q.addScalar("location_id", StandardBasicTypes.INTEGER);
+		q.addScalar("parent_location", StandardBasicTypes.INTEGER);
+		q.addScalar("name", StandardBasicTypes.STRING);
+		q.addScalar("retired", StandardBasicTypes.BOOLEAN);
+		q.setString("pathPrefix", pathPrefix + "%");
+		List<?> rows = q.list();
+		List<LocationNode> nodes = new ArrayList<LocationNode>(rows.size());
+		for (Object o : rows) {
+			Object[] row = (Object[]) o;
+			nodes.add(new LocationNode((Integer) row[0], (Integer) row[1], (String) row[2], Boolean.TRUE.equals(row[3])));
+		}
+		return nodes;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#countLocationPaths()
+	 */
+	@Override
+	public long countLocationPaths() {
+		Number count = (Number) sessionFactory.getCurrentSession()
+		        .createSQLQuery("select count(*) from adminui_location_path").uniqueResult();
+		return count.longValue();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#insertLocationPath(Integer,
+	 *      String, int)
+	 */
+	@Override
+	public void insertLocationPath(Integer locationId, String path, int depth) {
+		sessionFactory.getCurrentSession()
+		        .createSQLQuery("insert into adminui_location_path (location_id, path, depth) values (:locationId, :path, :depth)")
+		        .setInteger("locationId", locationId).setString("path", path).setInteger("depth", depth).executeUpdate();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#deleteLocationPath(Integer)
+	 */
+	@Override
+	public void deleteLocationPath(Integer locationId) {
+		sessionFactory.getCurrentSession()
+		        .createSQLQuery("delete from adminui_location_path where location_id = :locationId")
+		        .setInteger("locationId", locationId).executeUpdate();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#moveLocationPaths(String, String,
+	 *      int)
+	 */
+	@Override
+	public int moveLocationPaths(String oldPath, String newPath, int depthChange) {
+		return sessionFactory.getCurrentSession()
+		        .createSQLQuery("update adminui_location_path set path = concat(:newPath, substring(path, :start)),"
+		                + " depth = depth + :depthChange where path like :oldPrefix")
+		        .setString("newPath", newPath).setInteger("start", oldPath.length() + 1)
+		        .setInteger("depthChange", depthChange).setString("oldPrefix", oldPath + "%").executeUpdate();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.location.db.AdminUiLocationDAO#replaceLocationPaths(Map, Map)
+	 */
+	@Override
+	public void replaceLocationPaths(final Map<Integer, String> paths, final Map<Integer, Integer> depths) {
+		sessionFactory.getCurrentSession().createSQLQuery("delete from adminui_location_path").executeUpdate();
+		sessionFactory.getCurrentSession().doWork(new Work() {
+
+			@Override
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement ps = connection
+				        .prepareStatement("insert into adminui_location_path (location_id, path, depth) values (?, ?, ?)");
+				try {
+					int batched = 0;
+					for (Map.Entry<Integer, String> entry : paths.entrySet()) {
+						ps.setInt(1, entry.getKey());
+						ps.setString(2, entry.getValue());
+						ps.setInt(3, depths.get(entry.getKey()));
+						ps.addBatch();
+						if (++batched % MAX_IDS_PER_UPDATE == 0) {
+							ps.executeBatch();
+						}
+					}
+					ps.executeBatch();
+				}
+				finally {
+					ps.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * A location has a tag at most once, so joining the tag to filter by it doesn't repeat rows
+	 */
+	private Query createLocationNodeQuery(String select, String query, Integer locationTagId, Integer parentLocationId,
+	                                      boolean includeRetired, String orderBy) {
+		StringBuilder hql = new StringBuilder(select);
+		hql.append(" from Location l left join l.parentLocation p");
+		if (locationTagId != null) {
+			hql.append(" join l.tags t");
+		}
+		hql.append(" where 1 = 1");
+		if (StringUtils.isNotBlank(query)) {
+			hql.append(" and lower(l.name) like :query");
+		}
+		if (locationTagId != null) {
+			hql.append(" and t.locationTagId = :locationTagId");
+		}
+		if (parentLocationId != null) {
+			hql.append(" and p.locationId = :parentLocationId");
+		}
+		if (!includeRetired) {
+			hql.append(" and l.retired = false");
+		}
+		hql.append(orderBy);
+
+		Query q = sessionFactory.getCurrentSession().createQuery(hql.toString());
+		if (StringUtils.isNotBlank(query)) {
+			q.setString("query", query.trim().toLowerCase() + "%");
+		}
+		if (locationTagId != null) {
+			q.setInteger("locationTagId", locationTagId);
+		}
+		if (parentLocationId != null) {
+			q.setInteger("parentLocationId", parentLocationId);
+		}
+		return q;
+	}
+
+	private String getOrderBy(String sortBy) {
+		if (AdminUiLocationService.SORT_BY_DESCRIPTION.equals(sortBy)) {
+			return " order by l.description, l.name, l.locationId";
+		} else if (AdminUiLocationService.SORT_BY_PARENT.equals(sortBy)) {
+			return " order by p.name, l.name, l.locationId";
+		}
+		return " order by l.name, l.locationId";
+	}
+
+	/**
+	 * Runs the tag update on each batch of locations, first recording the locations it is going to
+	 * change as changed. The queries name the tables they change so that Hibernate evicts just the
+	 * cached locations and their tags rather than the whole second level cache.
+	 *
+	 * @param changed exists or not exists, which locations the tag update changes
+	 */
+	private int updateLocationTags(Integer locationTagId, Collection<Integer> locationIds, User user, Date date,
+	                               String changed, String update) {
+		List<Integer> ids = new ArrayList<Integer>(locationIds);
+		int updated = 0;
+		for (int from = 0; from < ids.size(); from += MAX_IDS_PER_UPDATE) {
+			List<Integer> batch = ids.subList(from, Math.min(from + MAX_IDS_PER_UPDATE, ids.size()));
+			SQLQuery touch = sessionFactory.getCurrentSession().createSQLQuery(
+			    "update location set changed_by = :userId, date_changed = :date where location_id in (:locationIds)"
+			            + " and " + changed + " (select 1 from location_tag_map m where m.location_id ="
+			            + " location.location_id and m.location_tag_id = :locationTagId)");
+			touch.addSynchronizedEntityClass(Location.class);
+			touch.setInteger("userId", user.getUserId());
+			touch.setTimestamp("date", date);
+			touch.setInteger("locationTagId", locationTagId);
+			touch.setParameterList("locationIds", batch);
+			touch.executeUpdate();
+
+			SQLQuery q = sessionFactory.getCurrentSession().createSQLQuery(update);
+			q.addSynchronizedQuerySpace("location_tag_map");
+			q.setInteger("locationTagId", locationTagId);
+			q.setParameterList("locationIds", batch);
+			updated += q.executeUpdate();
+		}
+		return updated;
+	}
+
+}
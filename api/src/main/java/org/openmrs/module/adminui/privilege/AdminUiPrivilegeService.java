@@ -0,0 +1,54 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.privilege;
+
+import java.util.List;
+
+import org.openmrs.Privilege;
+import org.openmrs.module.adminui.PagedResult;
+
+/**
+ * Privilege queries the admin pages need that {@link org.openmrs.api.UserService} can only answer
+ * by loading every privilege
+ */
+public interface AdminUiPrivilegeService {
+
+	/**
+	 * Gets a single page of the privileges, sorted by name, with one query for the page and one to
+	 * count the matches, so the privileges page costs the same however many privileges the modules
+	 * add
+	 *
+	 * @param query text anywhere in the name or description, case insensitive, blank for all
+	 * @param prefix the start of the name, e.g. App: or Task:, null for any
+	 * @param startIndex the index of the first privilege to return
+	 * @param length the maximum number of privileges to return
+	 * @return the page of privileges and the total number of matching privileges
+	 * @should return the page of privileges and the total count
+	 * @should not count the privileges when the first page is not full
+	 */
+	PagedResult<Privilege> getPrivileges(String query, String prefix, int startIndex, int length);
+
+	/**
+	 * Counts all the privileges, e.g. for the total a filtered page of them is out of
+	 *
+	 * @return the number of privileges
+	 * @should count all the privileges
+	 */
+	long getPrivilegeCount();
+
+	/**
+	 * Gets the prefixes the privilege names start with, the text up to and including the first
+	 * colon, e.g. App: or Task:, to filter the privileges by the module that added them
+	 *
+	 * @return the distinct prefixes sorted
+	 */
+	List<String> getPrivilegePrefixes();
+
+}
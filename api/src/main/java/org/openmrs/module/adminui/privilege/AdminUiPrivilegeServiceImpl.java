@@ -0,0 +1,69 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.privilege;
+
+import java.util.List;
+
+import org.openmrs.Privilege;
+import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.adminui.PagedResult;
+import org.openmrs.module.adminui.privilege.db.AdminUiPrivilegeDAO;
+import org.springframework.transaction.annotation.Transactional;
+
+@Transactional
+public class AdminUiPrivilegeServiceImpl extends BaseOpenmrsService implements AdminUiPrivilegeService {
+
+	private AdminUiPrivilegeDAO dao;
+
+	/**
+	 * @param dao the dao to set
+	 */
+	public void setDao(AdminUiPrivilegeDAO dao) {
+		this.dao = dao;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.privilege.AdminUiPrivilegeService#getPrivileges(String, String,
+	 *      int, int)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public PagedResult<Privilege> getPrivileges(String query, String prefix, int startIndex, int length) {
+		List<Privilege> privileges = dao.getPrivileges(query, prefix, startIndex, length);
+
+		// a first page that isn't full holds all the matches, so there is nothing left to count
+		long totalCount;
+		if (startIndex <= 0 && privileges.size() < length) {
+			totalCount = privileges.size();
+		} else {
+			totalCount = dao.getPrivilegeCount(query, prefix);
+		}
+		return new PagedResult<Privilege>(privileges, totalCount);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.privilege.AdminUiPrivilegeService#getPrivilegeCount()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public long getPrivilegeCount() {
+		return dao.getPrivilegeCount(null, null);
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.privilege.AdminUiPrivilegeService#getPrivilegePrefixes()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<String> getPrivilegePrefixes() {
+		return dao.getPrivilegePrefixes();
+	}
+
+}
@@ -0,0 +1,44 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.privilege.db;
+
+import java.util.List;
+
+import org.openmrs.Privilege;
+import org.openmrs.module.adminui.privilege.AdminUiPrivilegeService;
+
+/**
+ * Database access for {@link AdminUiPrivilegeService}
+ */
+public interface AdminUiPrivilegeDAO {
+
+	/**
+	 * Gets a page of the matching privileges sorted by name in a single query
+	 *
+	 * @see AdminUiPrivilegeService#getPrivileges(String, String, int, int)
+	 * @should match the wildcards in the query and prefix literally
+	 */
+	List<Privilege> getPrivileges(String query, String prefix, int startIndex, int length);
+
+	/**
+	 * Counts the matching privileges in a single query, null query and prefix count all of them
+	 *
+	 * @see #getPrivileges(String, String, int, int)
+	 */
+	long getPrivilegeCount(String query, String prefix);
+
+	/**
+	 * Gets the distinct privilege name prefixes in a single query
+	 *
+	 * @see AdminUiPrivilegeService#getPrivilegePrefixes()
+	 */
+	List<String> getPrivilegePrefixes();
+
+}
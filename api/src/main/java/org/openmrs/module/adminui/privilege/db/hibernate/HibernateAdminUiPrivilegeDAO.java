@@ -0,0 +1,100 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.privilege.db.hibernate;
+
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.hibernate.Query;
+import org.hibernate.SessionFactory;
+import org.openmrs.Privilege;
+import org.openmrs.module.adminui.privilege.db.AdminUiPrivilegeDAO;
+
+public class HibernateAdminUiPrivilegeDAO implements AdminUiPrivilegeDAO {
+
+	// not a backslash, which MySQL treats as an escape in string literals too
+	private static final String LIKE_ESCAPE = "!";
+
+	private SessionFactory sessionFactory;
+
+	/**
+	 * @param sessionFactory the sessionFactory to set
+	 */
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.privilege.db.AdminUiPrivilegeDAO#getPrivileges(String, String,
+	 *      int, int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Privilege> getPrivileges(String query, String prefix, int startIndex, int length) {
+		Query q = createPrivilegeQuery("select p", query, prefix, " order by p.privilege");
+		q.setFirstResult(startIndex);
+		q.setMaxResults(length);
+		return q.list();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.privilege.db.AdminUiPrivilegeDAO#getPrivilegeCount(String,
+	 *      String)
+	 */
+	@Override
+	public long getPrivilegeCount(String query, String prefix) {
+		Query q = createPrivilegeQuery("select count(p.privilege)", query, prefix, "");
+		return ((Number) q.uniqueResult()).longValue();
+	}
+
+	/**
+	 * @see org.openmrs.module.adminui.privilege.db.AdminUiPrivilegeDAO#getPrivilegePrefixes()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getPrivilegePrefixes() {
+		return sessionFactory.getCurrentSession().createQuery(
+		    "select distinct substring(p.privilege, 1, locate(':', p.privilege)) from Privilege p"
+		            + " where locate(':', p.privilege) > 0 order by 1").list();
+	}
+
+	/**
+	 * The prefix is matched first since the names are the primary key, so it narrows the rows by
+	 * index before the text is looked for in them. The wildcards in the prefix and the text are
+	 * escaped, so a search for e.g. 100% or Task_ matches those characters literally.
+	 */
+	private Query createPrivilegeQuery(String select, String query, String prefix, String orderBy) {
+		StringBuilder hql = new StringBuilder(select);
+		hql.append(" from Privilege p where 1 = 1");
+		if (StringUtils.isNotBlank(prefix)) {
+			hql.append(" and p.privilege like :prefix escape '" + LIKE_ESCAPE + "'");
+		}
+		if (StringUtils.isNotBlank(query)) {
+			hql.append(" and (lower(p.privilege) like :query escape '" + LIKE_ESCAPE + "'"
+			        + " or lower(p.description) like :query escape '" + LIKE_ESCAPE + "')");
+		}
+		hql.append(orderBy);
+
+		Query q = sessionFactory.getCurrentSession().createQuery(hql.toString());
+		if (StringUtils.isNotBlank(prefix)) {
+			q.setString("prefix", escapeLike(prefix) + "%");
+		}
+		if (StringUtils.isNotBlank(query)) {
+			q.setString("query", "%" + escapeLike(query.trim().toLowerCase()) + "%");
+		}
+		return q;
+	}
+
+	private static String escapeLike(String value) {
+		return value.replace(LIKE_ESCAPE, LIKE_ESCAPE + LIKE_ESCAPE).replace("%", LIKE_ESCAPE + "%")
+		        .replace("_", LIKE_ESCAPE + "_");
+	}
+
+}
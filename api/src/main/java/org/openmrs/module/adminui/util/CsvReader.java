@@ -0,0 +1,94 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads comma separated values one record at a time so that files of any size can be processed
+ * without loading them into memory. Values may be enclosed in double quotes, in which case they can
+ * contain commas, line breaks and double quotes escaped by doubling them.
+ */
+public class CsvReader {
+
+	private static final int END = -1;
+
+	private final BufferedReader reader;
+
+	private int recordNumber;
+
+	public CsvReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+	}
+
+	/**
+	 * @return the values of the next record, or null if the end of the input was reached
+	 * @throws IOException if the input can't be read
+	 */
+	public String[] readNext() throws IOException {
+		int c = reader.read();
+		if (c == END) {
+			return null;
+		}
+
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		while (true) {
+			if (quoted) {
+				if (c == END) {
+					throw new IOException("Unterminated quoted value in record " + (recordNumber + 1));
+				} else if (c == '"') {
+					reader.mark(1);
+					if (reader.read() == '"') {
+						value.append('"');
+					} else {
+						reader.reset();
+						quoted = false;
+					}
+				} else {
+					value.append((char) c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			} else if (c == '\r' || c == '\n' || c == END) {
+				if (c == '\r') {
+					reader.mark(1);
+					if (reader.read() != '\n') {
+						reader.reset();
+					}
+				}
+				values.add(value.toString());
+				break;
+			} else {
+				value.append((char) c);
+			}
+			c = reader.read();
+		}
+
+		recordNumber++;
+		return values.toArray(new String[values.size()]);
+	}
+
+	/**
+	 * @return the number of records read so far
+	 */
+	public int getRecordNumber() {
+		return recordNumber;
+	}
+
+}
@@ -0,0 +1,66 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes comma separated values one record at a time in the format read by {@link CsvReader}.
+ * Values that a spreadsheet would evaluate as a formula are prefixed with a single quote.
+ */
+public class CsvWriter {
+
+	private static final String FORMULA_PREFIXES = "=+-@\t\r";
+
+	private final Writer writer;
+
+	public CsvWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Writes a record, null values are written as empty values
+	 *
+	 * @should quote values containing separators, quotes or line breaks
+	 * @should prefix values starting with a formula character with a single quote
+	 *
+	 * @param values the values of the record
+	 * @throws IOException if the record can't be written
+	 */
+	public void writeNext(String... values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			String value = values[i];
+			if (value == null) {
+				continue;
+			}
+			if (value.length() > 0 && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0) {
+				value = "'" + value;
+			}
+			if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+			        || value.indexOf('\r') >= 0) {
+				writer.write('"');
+				writer.write(value.replace("\"", "\"\""));
+				writer.write('"');
+			} else {
+				writer.write(value);
+			}
+		}
+		writer.write("\r\n");
+	}
+
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+}
@@ -0,0 +1,46 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PagedResultTest {
+	
+	/**
+	 * @verifies return the default page size if the requested size is not positive
+	 * @see PagedResult#getPageSize(int)
+	 */
+	@Test
+	public void getPageSize_shouldReturnTheDefaultPageSizeIfTheRequestedSizeIsNotPositive() throws Exception {
+		assertEquals(PagedResult.DEFAULT_PAGE_SIZE, PagedResult.getPageSize(-1));
+		assertEquals(PagedResult.DEFAULT_PAGE_SIZE, PagedResult.getPageSize(0));
+	}
+	
+	/**
+	 * @verifies limit the page size to the maximum
+	 * @see PagedResult#getPageSize(int)
+	 */
+	@Test
+	public void getPageSize_shouldLimitThePageSizeToTheMaximum() throws Exception {
+		assertEquals(PagedResult.MAX_PAGE_SIZE, PagedResult.getPageSize(Integer.MAX_VALUE));
+	}
+	
+	/**
+	 * @verifies return the requested page size if it is within the maximum
+	 * @see PagedResult#getPageSize(int)
+	 */
+	@Test
+	public void getPageSize_shouldReturnTheRequestedPageSizeIfItIsWithinTheMaximum() throws Exception {
+		assertEquals(25, PagedResult.getPageSize(25));
+	}
+	
+}
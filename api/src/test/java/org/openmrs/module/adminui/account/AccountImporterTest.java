@@ -0,0 +1,217 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Person;
+import org.openmrs.User;
+import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.PersonService;
+import org.openmrs.api.ProviderService;
+import org.openmrs.api.UserService;
+import org.openmrs.messagesource.MessageSourceService;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.module.providermanagement.api.ProviderManagementService;
+import org.openmrs.util.Security;
+
+public class AccountImporterTest {
+	
+	private static final String HEADER = "givenName,familyName,gender,username,password\n";
+	
+	private AccountImporter importer;
+	
+	private AccountService accountService;
+	
+	private UserService userService;
+	
+	private PasswordHasher passwordHasher;
+	
+	@Before
+	public void setup() {
+		accountService = mock(AccountService.class);
+		userService = mock(UserService.class);
+		final PersonService personService = mock(PersonService.class);
+		final ProviderService providerService = mock(ProviderService.class);
+		final ProviderManagementService providerManagementService = mock(ProviderManagementService.class);
+		when(accountService.getAccountByPerson(any(Person.class))).thenAnswer(new Answer<Account>() {
+			
+			@Override
+			public Account answer(InvocationOnMock invocation) throws Throwable {
+				return new Account((Person) invocation.getArguments()[0], accountService, userService, providerService,
+				        providerManagementService, personService);
+			}
+		});
+		
+		AdministrationService administrationService = mock(AdministrationService.class);
+		when(administrationService.getGlobalProperty(AdminUiConstants.GP_ACCOUNT_IMPORT_CHUNK_SIZE)).thenReturn("2");
+		
+		AdminUiAccountValidator validator = new AdminUiAccountValidator();
+		validator.setMessageSourceService(mock(MessageSourceService.class));
+		
+		importer = new AccountImporter();
+		importer.setAccountService(accountService);
+		importer.setAdministrationService(administrationService);
+		importer.setProviderManagementService(providerManagementService);
+		importer.setAccountValidator(validator);
+		passwordHasher = new PasswordHasher();
+		passwordHasher.setAdministrationService(administrationService);
+		importer.setPasswordHasher(passwordHasher);
+	}
+	
+	@After
+	public void shutdown() {
+		passwordHasher.shutdown();
+	}
+	
+	/**
+	 * @verifies save the accounts in chunks of the configured size
+	 * @see AccountImporter#importAccounts(java.io.Reader)
+	 */
+	@Test
+	public void importAccounts_shouldSaveTheAccountsInChunksOfTheConfiguredSize() throws Exception {
+		String csv = HEADER + "Mark,Jones,M,mjones,Passw0rd\n" + "Mary,Smith,F,msmith,Passw0rd\n"
+		        + "Ann,Brown,F,abrown,Passw0rd\n";
+		
+		AccountImportResult result = importer.importAccounts(new StringReader(csv));
+		
+		assertEquals(3, result.getRowCount());
+		assertEquals(3, result.getImportedCount());
+		assertTrue(result.getErrorsByRow().isEmpty());
+		verify(accountService, times(2)).saveAccounts(anyListOf(Account.class));
+	}
+	
+	/**
+	 * @verifies report the rows that fail validation and import the others
+	 * @see AccountImporter#importAccounts(java.io.Reader)
+	 */
+	@Test
+	public void importAccounts_shouldReportTheRowsThatFailValidationAndImportTheOthers() throws Exception {
+		String csv = HEADER + "Mark,Jones,M,mjones,Passw0rd\n" + ",Smith,F,msmith,Passw0rd\n"
+		        + "Ann,Brown,F,abrown,\n";
+		
+		AccountImportResult result = importer.importAccounts(new StringReader(csv));
+		
+		assertEquals(1, result.getImportedCount());
+		assertEquals(2, result.getErrorsByRow().size());
+		assertEquals("error.required", result.getErrorsByRow().get(3).get(0).getCode());
+		assertEquals("adminui.account.import.error.passwordRequired", result.getErrorsByRow().get(4).get(0).getCode());
+	}
+	
+	/**
+	 * @verifies save the accounts of a failed chunk one by one
+	 * @see AccountImporter#importAccounts(java.io.Reader)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void importAccounts_shouldSaveTheAccountsOfAFailedChunkOneByOne() throws Exception {
+		doThrow(new APIException("duplicate username")).when(accountService).saveAccounts(any(List.class));
+		String csv = HEADER + "Mark,Jones,M,mjones,Passw0rd\n" + "Mary,Smith,F,msmith,Passw0rd\n";
+		
+		AccountImportResult result = importer.importAccounts(new StringReader(csv));
+		
+		assertEquals(0, result.getImportedCount());
+		assertEquals(2, result.getErrorsByRow().size());
+		assertEquals("adminui.account.error.save.fail", result.getErrorsByRow().get(2).get(0).getCode());
+		verify(accountService, times(3)).saveAccounts(anyListOf(Account.class));
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void importAccounts_shouldPassThePlainPasswordsToTheAccounts() throws Exception {
+		String csv = HEADER + "Mark,Jones,M,mjones,Passw0rd\n" + "Mary,Smith,F,msmith,Passw0rd\n";
+		ArgumentCaptor<List> accounts = ArgumentCaptor.forClass(List.class);
+		
+		importer.importAccounts(new StringReader(csv));
+		
+		verify(accountService).saveAccounts(accounts.capture());
+		for (Account account : (List<Account>) accounts.getValue()) {
+			assertEquals("Passw0rd", account.getPassword(0));
+		}
+	}
+	
+	/**
+	 * @verifies create the users with the passwords hashed before the chunk is saved
+	 * @see AccountImporter#importAccounts(java.io.Reader)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void importAccounts_shouldCreateTheUsersWithThePasswordsHashedBeforeTheChunkIsSaved() throws Exception {
+		doAnswer(new Answer<Void>() {
+			
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				for (Account account : (List<Account>) invocation.getArguments()[0]) {
+					account.save();
+				}
+				return null;
+			}
+		}).when(accountService).saveAccounts(any(List.class));
+		String csv = HEADER + "Mark,Jones,M,mjones,Passw0rd\n" + "Mary,Smith,F,msmith,S3cret\n";
+		ArgumentCaptor<User> users = ArgumentCaptor.forClass(User.class);
+		ArgumentCaptor<String> hashes = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<String> salts = ArgumentCaptor.forClass(String.class);
+		
+		importer.importAccounts(new StringReader(csv));
+		
+		verify(userService).saveUser(any(User.class), eq("Passw0rd"));
+		verify(userService).saveUser(any(User.class), eq("S3cret"));
+		verify(userService, times(2)).changeHashedPassword(users.capture(), hashes.capture(), salts.capture());
+		// the stored hashes are the ones a login with the imported passwords is checked against
+		assertTrue(Security.hashMatches(hashes.getAllValues().get(0), "Passw0rd" + salts.getAllValues().get(0)));
+		assertTrue(Security.hashMatches(hashes.getAllValues().get(1), "S3cret" + salts.getAllValues().get(1)));
+		assertEquals("mjones", users.getAllValues().get(0).getUsername());
+	}
+	
+	/**
+	 * @verifies resolve the roles of a chunk with a single lookup
+	 * @see AccountImporter#importAccounts(java.io.Reader)
+	 */
+	@Test
+	public void importAccounts_shouldResolveTheRolesOfAChunkWithASingleLookup() throws Exception {
+		String csv = "givenName,familyName,gender,username,password,capabilities\n"
+		        + "Mark,Jones,M,mjones,Passw0rd,Reception\n" + "Mary,Smith,F,msmith,Passw0rd,Archives\n";
+		
+		importer.importAccounts(new StringReader(csv));
+		
+		verify(accountService, times(1)).getRolesByName(anyCollectionOf(String.class));
+	}
+	
+	/**
+	 * @verifies fail if a required column is missing
+	 * @see AccountImporter#importAccounts(java.io.Reader)
+	 */
+	@Test(expected = APIException.class)
+	public void importAccounts_shouldFailIfARequiredColumnIsMissing() throws Exception {
+		importer.importAccounts(new StringReader("givenName,familyName\nMark,Jones\n"));
+	}
+	
+}
@@ -0,0 +1,107 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Person;
+import org.openmrs.PersonName;
+import org.openmrs.User;
+import org.openmrs.api.PersonService;
+import org.openmrs.api.UserService;
+
+public class AccountSearchIndexAdviceTest {
+	
+	private AccountSearchIndex searchIndex;
+	
+	private UserService userService;
+	
+	private AccountSearchIndexAdvice advice;
+	
+	private Person person;
+	
+	private User user;
+	
+	@Before
+	public void setup() {
+		searchIndex = new AccountSearchIndex();
+		searchIndex.newBuilder().publish();
+		userService = mock(UserService.class);
+		advice = new AccountSearchIndexAdvice() {
+			
+			@Override
+			AccountSearchIndex getSearchIndex() {
+				return searchIndex;
+			}
+			
+			@Override
+			UserService getUserService() {
+				return userService;
+			}
+		};
+		
+		person = new Person(7);
+		person.addName(new PersonName("Jane", null, "Doe"));
+		user = new User(8);
+		user.setUsername("jdoe");
+		user.setPerson(person);
+	}
+	
+	/**
+	 * @verifies index a saved user
+	 * @see AccountSearchIndexAdvice#afterReturning(Object, Method, Object[], Object)
+	 */
+	@Test
+	public void afterReturning_shouldIndexASavedUser() throws Throwable {
+		advice.afterReturning(user, UserService.class.getMethod("saveUser", User.class, String.class), new Object[] {
+		        user, "Passw0rd" }, null);
+		
+		assertEquals(1, searchIndex.search("doe").size());
+		assertEquals(Integer.valueOf(8), searchIndex.search("jdoe").get(0).getUserId());
+	}
+	
+	/**
+	 * @verifies remove a purged user
+	 * @see AccountSearchIndexAdvice#afterReturning(Object, Method, Object[], Object)
+	 */
+	@Test
+	public void afterReturning_shouldRemoveAPurgedUser() throws Throwable {
+		searchIndex.update(new AccountSummary(8, "jdoe", "8-4", 7, "Jane", "Doe", "F"));
+		
+		advice.afterReturning(null, UserService.class.getMethod("purgeUser", User.class), new Object[] { user }, null);
+		
+		assertEquals(0, searchIndex.size());
+	}
+	
+	/**
+	 * @verifies remove the users of a voided person
+	 * @see AccountSearchIndexAdvice#afterReturning(Object, Method, Object[], Object)
+	 */
+	@Test
+	public void afterReturning_shouldRemoveTheUsersOfAVoidedPerson() throws Throwable {
+		searchIndex.update(new AccountSummary(8, "jdoe", "8-4", 7, "Jane", "Doe", "F"));
+		person.setVoided(true);
+		when(userService.getUsersByPerson(person, true)).thenReturn(Arrays.asList(user));
+		
+		advice.afterReturning(person, PersonService.class.getMethod("voidPerson", Person.class, String.class),
+		    new Object[] { person, "duplicate" }, null);
+		
+		assertTrue(searchIndex.search("doe").isEmpty());
+	}
+	
+}
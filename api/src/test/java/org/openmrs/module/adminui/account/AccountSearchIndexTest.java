@@ -0,0 +1,119 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccountSearchIndexTest {
+
+	private AccountSearchIndex index;
+
+	@Before
+	public void setup() {
+		index = new AccountSearchIndex();
+		AccountSearchIndex.Builder builder = index.newBuilder();
+		builder.handle(new AccountSummary(1, "jsmith", "1-8", 11, "John", "Smith", "M"));
+		builder.handle(new AccountSummary(2, "jane", "2-6", 12, "Jane Mary", "Smith", "F"));
+		builder.handle(new AccountSummary(3, "admin", "admin", 13, "Super", "User", "M"));
+		builder.handle(new AccountSummary(4, "smithers", "4-2", 14, "Waylon", "Smithers", "M"));
+		builder.publish();
+	}
+
+	@Test
+	public void shouldFindAccountsByAPrefixOfAnyIndexedValue() {
+		assertEquals(Arrays.asList(1), userIds(index.search("jsm")));
+		assertEquals(Arrays.asList(2), userIds(index.search("2-6")));
+		assertEquals(Arrays.asList(2), userIds(index.search("MARY")));
+		assertEquals(Arrays.asList(3), userIds(index.search("use")));
+	}
+
+	@Test
+	public void shouldRankExactMatchesAbovePrefixes() {
+		assertEquals(Arrays.asList(1, 2, 4), userIds(index.search("smith")));
+	}
+
+	@Test
+	public void shouldMatchAWordWithATypo() {
+		assertEquals(Arrays.asList(1, 2), userIds(index.search("smiht")));
+		assertTrue(index.search("zzzz").isEmpty());
+	}
+
+	@Test
+	public void shouldRequireEveryWordToMatch() {
+		assertEquals(Arrays.asList(2), userIds(index.search("smith jan")));
+		assertTrue(index.search("smith super").isEmpty());
+	}
+
+	@Test
+	public void shouldReplaceTheValuesOfAnUpdatedUser() {
+		index.update(new AccountSummary(3, "admin", "admin", 13, "Super", "Administrator", "M"));
+
+		assertEquals(4, index.size());
+		assertTrue(index.search("user").isEmpty());
+		assertEquals(Arrays.asList(3), userIds(index.search("administrator")));
+	}
+
+	@Test
+	public void shouldRemoveAUser() {
+		index.remove(1);
+
+		assertEquals(3, index.size());
+		assertEquals(Arrays.asList(2, 4), userIds(index.search("smith")));
+	}
+
+	@Test
+	public void shouldKeepTheUpdatesMadeWhileItIsRebuilt() {
+		AccountSearchIndex.Builder builder = index.newBuilder();
+		builder.handle(new AccountSummary(1, "jsmith", "1-8", 11, "John", "Smith", "M"));
+		index.update(new AccountSummary(5, "nurse", "5-3", 15, "Florence", "Nightingale", "F"));
+		builder.publish();
+
+		assertEquals(2, index.size());
+		assertEquals(Arrays.asList(5), userIds(index.search("night")));
+	}
+
+	@Test
+	public void shouldKeepTheRemovalsMadeWhileItIsRebuilt() {
+		AccountSearchIndex.Builder builder = index.newBuilder();
+		builder.handle(new AccountSummary(1, "jsmith", "1-8", 11, "John", "Smith", "M"));
+		builder.handle(new AccountSummary(2, "jane", "2-6", 12, "Jane Mary", "Smith", "F"));
+		index.remove(1);
+		builder.publish();
+
+		assertEquals(Arrays.asList(2), userIds(index.search("smith")));
+	}
+
+	@Test
+	public void shouldNotBeBuiltUntilPublished() {
+		AccountSearchIndex newIndex = new AccountSearchIndex();
+		AccountSearchIndex.Builder builder = newIndex.newBuilder();
+		assertFalse(newIndex.isBuilt());
+		builder.publish();
+		assertTrue(newIndex.isBuilt());
+	}
+
+	private List<Integer> userIds(List<AccountSummary> accounts) {
+		List<Integer> ret = new ArrayList<Integer>();
+		for (AccountSummary account : accounts) {
+			ret.add(account.getUserId());
+		}
+		return ret;
+	}
+
+}
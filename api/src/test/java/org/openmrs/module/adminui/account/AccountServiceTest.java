@@ -11,16 +11,33 @@ package org.openmrs.module.adminui.account;
 
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.openmrs.Person;
 import org.openmrs.Provider;
 import org.openmrs.Role;
@@ -29,7 +46,9 @@ import org.openmrs.api.PersonService;
 import org.openmrs.api.ProviderService;
 import org.openmrs.api.UserService;
 import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.module.adminui.PagedResult;
 import org.openmrs.module.adminui.TestUtils;
+import org.openmrs.module.adminui.account.db.AccountDAO;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 
 public class AccountServiceTest {
@@ -44,18 +63,31 @@ public class AccountServiceTest {
 	
 	private ProviderManagementService providerManagementService;
 	
+	private AccountDAO dao;
+	
+	private AccountSearchIndex searchIndex;
+	
 	@Before
 	public void setup() {
 		userService = mock(UserService.class);
 		personService = mock(PersonService.class);
 		providerService = mock(ProviderService.class);
 		providerManagementService = mock(ProviderManagementService.class);
+		dao = mock(AccountDAO.class);
 		
 		accountService = new AccountServiceImpl();
+		accountService.setDao(dao);
 		accountService.setUserService(userService);
 		accountService.setPersonService(personService);
 		accountService.setProviderService(providerService);
 		accountService.setProviderManagementService(providerManagementService);
+		
+		RoleIndex roleIndex = new RoleIndex();
+		roleIndex.setUserService(userService);
+		accountService.setRoleIndex(roleIndex);
+		
+		searchIndex = new AccountSearchIndex();
+		accountService.setSearchIndex(searchIndex);
 	}
 	
 	/**
@@ -88,6 +120,201 @@ public class AccountServiceTest {
 		Assert.assertEquals(2, accounts.size());
 	}
 	
+	/**
+	 * @verifies include all the providers of each account
+	 * @see AccountService#getAllAccounts()
+	 */
+	@Test
+	public void getAllAccounts_shouldIncludeAllTheProvidersOfEachAccount() throws Exception {
+		Person person1 = new Person(1);
+		User user1 = new User();
+		user1.setPerson(person1);
+		Person person2 = new Person(2);
+		User user2 = new User();
+		user2.setPerson(person2);
+		org.openmrs.module.providermanagement.Provider provider1 = new org.openmrs.module.providermanagement.Provider();
+		provider1.setPerson(person1);
+		org.openmrs.module.providermanagement.Provider provider2 = new org.openmrs.module.providermanagement.Provider();
+		provider2.setPerson(person1);
+		
+		when(userService.getAllUsers()).thenReturn(Arrays.asList(user1, user2));
+		Map<Integer, List<org.openmrs.module.providermanagement.Provider>> providers = new HashMap<Integer, List<org.openmrs.module.providermanagement.Provider>>();
+		providers.put(1, Arrays.asList(provider1, provider2));
+		when(dao.getProvidersByPersonId(null)).thenReturn(providers);
+		
+		List<Account> accounts = accountService.getAllAccounts();
+		Assert.assertEquals(2, accounts.size());
+		Assert.assertEquals(2, accounts.get(0).getProvidersCount());
+		Assert.assertTrue(accounts.get(0).getProviders().contains(provider2));
+		Assert.assertTrue(accounts.get(0).isProviderLinked());
+		Assert.assertEquals(0, accounts.get(1).getProvidersCount());
+		verify(dao, times(1)).getProvidersByPersonId(null);
+		verifyZeroInteractions(providerService);
+	}
+	
+	/**
+	 * @verifies return the users keyed by person id
+	 * @see AccountService#getUsersByPersonId(java.util.Collection)
+	 */
+	@Test
+	public void getUsersByPersonId_shouldReturnTheUsersKeyedByPersonId() throws Exception {
+		Map<Integer, List<User>> users = new HashMap<Integer, List<User>>();
+		users.put(1, Arrays.asList(new User(2)));
+		when(dao.getUsersByPersonId(anyCollectionOf(Integer.class))).thenReturn(users);
+		
+		Assert.assertEquals(users, accountService.getUsersByPersonId(Arrays.asList(1, 1, 3)));
+		verify(dao, times(1)).getUsersByPersonId(new HashSet<Integer>(Arrays.asList(1, 3)));
+		verifyZeroInteractions(userService);
+	}
+	
+	/**
+	 * @verifies not hit the database when there are no person ids
+	 * @see AccountService#getUsersByPersonId(java.util.Collection)
+	 */
+	@Test
+	public void getUsersByPersonId_shouldNotHitTheDatabaseWhenThereAreNoPersonIds() throws Exception {
+		Assert.assertTrue(accountService.getUsersByPersonId(new ArrayList<Integer>()).isEmpty());
+		verifyZeroInteractions(dao);
+	}
+	
+	/**
+	 * @verifies return the providers keyed by person id
+	 * @see AccountService#getProvidersByPersonId(java.util.Collection)
+	 */
+	@Test
+	public void getProvidersByPersonId_shouldReturnTheProvidersKeyedByPersonId() throws Exception {
+		org.openmrs.module.providermanagement.Provider provider = new org.openmrs.module.providermanagement.Provider();
+		Map<Integer, List<org.openmrs.module.providermanagement.Provider>> providers = new HashMap<Integer, List<org.openmrs.module.providermanagement.Provider>>();
+		providers.put(1, Arrays.asList(provider));
+		when(dao.getProvidersByPersonId(anyCollectionOf(Integer.class))).thenReturn(providers);
+		
+		Assert.assertEquals(providers, accountService.getProvidersByPersonId(Arrays.asList(1, 1, 2)));
+		verify(dao, times(1)).getProvidersByPersonId(anyCollectionOf(Integer.class));
+	}
+	
+	/**
+	 * @verifies not hit the database when there are no person ids
+	 * @see AccountService#getProvidersByPersonId(java.util.Collection)
+	 */
+	@Test
+	public void getProvidersByPersonId_shouldNotHitTheDatabaseWhenThereAreNoPersonIds() throws Exception {
+		Assert.assertTrue(accountService.getProvidersByPersonId(new ArrayList<Integer>()).isEmpty());
+		verifyZeroInteractions(dao);
+	}
+	
+	/**
+	 * @verifies return the page of accounts and the total count
+	 * @see AccountService#getAccounts(String, String, int, int)
+	 */
+	@Test
+	public void getAccounts_shouldReturnThePageOfAccountsAndTheTotalCount() throws Exception {
+		List<AccountSummary> summaries = createSummaries(2);
+		when(dao.getAccountSummaries("jo", AccountService.SORT_BY_NAME, 10, 2)).thenReturn(summaries);
+		when(dao.getAccountSummaryCount("jo")).thenReturn(12L);
+		
+		PagedResult<AccountSummary> page = accountService.getAccounts("jo", AccountService.SORT_BY_NAME, 10, 2);
+		Assert.assertEquals(12L, page.getTotalCount());
+		Assert.assertEquals(summaries, page.getResults());
+	}
+	
+	/**
+	 * @verifies fill in the privilege level and provider roles
+	 * @see AccountService#getAccounts(String, String, int, int)
+	 */
+	@Test
+	public void getAccounts_shouldFillInThePrivilegeLevelAndProviderRoles() throws Exception {
+		List<AccountSummary> summaries = createSummaries(2);
+		when(dao.getAccountSummaries(null, null, 0, 10)).thenReturn(summaries);
+		Map<Integer, List<String>> privilegeLevels = new HashMap<Integer, List<String>>();
+		privilegeLevels.put(1, Arrays.asList(AdminUiConstants.PRIVILEGE_LEVEL_FULL_ROLE));
+		when(dao.getRoleNamesByUserId(anyCollectionOf(Integer.class), eq(AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL)))
+		        .thenReturn(privilegeLevels);
+		Map<Integer, List<String>> providerRoles = new HashMap<Integer, List<String>>();
+		providerRoles.put(102, Arrays.asList("Doctor", "Nurse"));
+		when(dao.getProviderRoleNamesByPersonId(anyCollectionOf(Integer.class))).thenReturn(providerRoles);
+		
+		List<AccountSummary> results = accountService.getAccounts(null, null, 0, 10).getResults();
+		Assert.assertEquals(AdminUiConstants.PRIVILEGE_LEVEL_FULL_ROLE, results.get(0).getPrivilegeLevel());
+		Assert.assertTrue(results.get(0).getProviderRoles().isEmpty());
+		Assert.assertNull(results.get(1).getPrivilegeLevel());
+		Assert.assertEquals(Arrays.asList("Doctor", "Nurse"), results.get(1).getProviderRoles());
+	}
+	
+	/**
+	 * @verifies call each dao method once regardless of the page size
+	 * @see AccountService#getAccounts(String, String, int, int)
+	 */
+	@Test
+	public void getAccounts_shouldCallEachDaoMethodOnceRegardlessOfThePageSize() throws Exception {
+		for (int pageSize : new int[] { 1, 50 }) {
+			reset(dao);
+			when(dao.getAccountSummaries(null, null, 0, pageSize)).thenReturn(createSummaries(pageSize));
+			
+			accountService.getAccounts(null, null, 0, pageSize);
+			
+			verify(dao, times(1)).getAccountSummaries(null, null, 0, pageSize);
+			verify(dao, times(1)).getAccountSummaryCount(null);
+			verify(dao, times(1)).getRoleNamesByUserId(anyCollectionOf(Integer.class), anyString());
+			verify(dao, times(1)).getProviderRoleNamesByPersonId(anyCollectionOf(Integer.class));
+			verifyNoMoreInteractions(dao);
+		}
+		verifyZeroInteractions(userService, personService, providerService, providerManagementService);
+	}
+	
+	/**
+	 * @verifies search the search index once it is built
+	 * @see AccountService#getAccounts(String, String, int, int)
+	 */
+	@Test
+	public void getAccounts_shouldSearchTheSearchIndexOnceItIsBuilt() throws Exception {
+		AccountSearchIndex.Builder builder = searchIndex.newBuilder();
+		for (AccountSummary summary : createSummaries(30)) {
+			builder.handle(summary);
+		}
+		builder.publish();
+		
+		PagedResult<AccountSummary> page = accountService.getAccounts("user2", AccountService.SORT_BY_USERNAME, 0, 5);
+		Assert.assertEquals(11L, page.getTotalCount());
+		Assert.assertEquals(5, page.getResults().size());
+		Assert.assertEquals("user2", page.getResults().get(0).getUsername());
+		Assert.assertEquals("user20", page.getResults().get(1).getUsername());
+		verify(dao, never()).getAccountSummaries(anyString(), anyString(), anyInt(), anyInt());
+		verify(dao, never()).getAccountSummaryCount(anyString());
+	}
+	
+	/**
+	 * @verifies index all the accounts
+	 * @see AccountService#buildSearchIndex()
+	 */
+	@Test
+	public void buildSearchIndex_shouldIndexAllTheAccounts() throws Exception {
+		doAnswer(new Answer<Void>() {
+			
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				AccountSummaryHandler handler = (AccountSummaryHandler) invocation.getArguments()[0];
+				for (AccountSummary summary : createSummaries(3)) {
+					handler.handle(summary);
+				}
+				return null;
+			}
+		}).when(dao).scrollAccountSummaries(any(AccountSummaryHandler.class));
+		
+		Assert.assertFalse(searchIndex.isBuilt());
+		accountService.buildSearchIndex();
+		Assert.assertTrue(searchIndex.isBuilt());
+		Assert.assertEquals(3, searchIndex.size());
+		Assert.assertEquals(1, searchIndex.search("family2").size());
+	}
+	
+	private List<AccountSummary> createSummaries(int count) {
+		List<AccountSummary> summaries = new ArrayList<AccountSummary>();
+		for (int i = 1; i <= count; i++) {
+			summaries.add(new AccountSummary(i, "user" + i, i + "-" + i, 100 + i, "Given" + i, "Family" + i, "F"));
+		}
+		return summaries;
+	}
+	
 	/**
 	 * @verifies return the account for the specified person if they are associated to a user
 	 * @see AccountService#getAccountByPerson(Person)
@@ -98,8 +325,8 @@ public class AccountServiceTest {
 		Person person = new Person();
 		person.setPersonId(1);
 		user.setPerson(person);
-		when(userService.getUsersByPerson(argThat(TestUtils.equalsMatcher(person)), any(Boolean.class))).thenReturn(
-		    Arrays.asList(user));
+		when(dao.getUsersByPersonId(Collections.singleton(1))).thenReturn(
+		    Collections.singletonMap(1, Arrays.asList(user)));
 		Account account = accountService.getAccountByPerson(person);
 		Assert.assertNotNull(account);
 		Assert.assertEquals(person, account.getPerson());
@@ -114,13 +341,15 @@ public class AccountServiceTest {
 	    throws Exception {
 		Person person = new Person();
 		person.setPersonId(1);
-		Provider provider = new Provider();
+		org.openmrs.module.providermanagement.Provider provider = new org.openmrs.module.providermanagement.Provider();
 		provider.setPerson(person);
-		when(providerService.getProvidersByPerson(argThat(TestUtils.equalsMatcher(person)), any(Boolean.class))).thenReturn(
-		    Arrays.asList(provider));
+		List<org.openmrs.module.providermanagement.Provider> providers = Arrays.asList(provider);
+		when(dao.getProvidersByPersonId(Collections.singleton(1))).thenReturn(Collections.singletonMap(1, providers));
 		Account account = accountService.getAccountByPerson(person);
 		Assert.assertNotNull(account);
 		Assert.assertEquals(person, account.getPerson());
+		Assert.assertEquals(1, account.getProvidersCount());
+		verifyZeroInteractions(providerService);
 	}
 	
 	/**
@@ -134,6 +363,7 @@ public class AccountServiceTest {
 		Role role2 = new Role(AdminUiConstants.ROLE_PREFIX_CAPABILITY + "role3");
 		
 		when(userService.getAllRoles()).thenReturn(Arrays.asList(role1, role2, role3));
+		when(dao.getRoles(Arrays.asList(role1.getRole(), role2.getRole()))).thenReturn(Arrays.asList(role1, role2));
 		List<Role> capabilities = accountService.getAllCapabilities();
 		Assert.assertEquals(2, capabilities.size());
 		assertThat(capabilities, TestUtils.isCollectionOfExactlyElementsWithProperties("role",
@@ -151,6 +381,7 @@ public class AccountServiceTest {
 		Role role2 = new Role(AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL + "role3");
 		
 		when(userService.getAllRoles()).thenReturn(Arrays.asList(role1, role2, role3));
+		when(dao.getRoles(Arrays.asList(role1.getRole(), role2.getRole()))).thenReturn(Arrays.asList(role1, role2));
 		List<Role> privilegeLevels = accountService.getAllPrivilegeLevels();
 		Assert.assertEquals(2, privilegeLevels.size());
 		assertThat(
@@ -159,4 +390,46 @@ public class AccountServiceTest {
 		            + "role1", AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL + "role3"));
 	}
 	
+	/**
+	 * @verifies return the roles keyed by name
+	 * @see AccountService#getRolesByName(java.util.Collection)
+	 */
+	@Test
+	public void getRolesByName_shouldReturnTheRolesKeyedByName() throws Exception {
+		Role role = new Role(AdminUiConstants.PRIVILEGE_LEVEL_FULL_ROLE);
+		when(userService.getAllRoles()).thenReturn(Arrays.asList(role));
+		when(dao.getRoles(Arrays.asList(role.getRole()))).thenReturn(Arrays.asList(role));
+		
+		Map<String, Role> roles = accountService.getRolesByName(Arrays.asList(role.getRole(), role.getRole(), "Unknown"));
+		Assert.assertEquals(Collections.singletonMap(role.getRole(), role), roles);
+		verify(dao, times(1)).getRoles(Arrays.asList(role.getRole()));
+		verify(userService, times(1)).getAllRoles();
+	}
+	
+	/**
+	 * @verifies not hit the database when there are no names
+	 * @see AccountService#getRolesByName(java.util.Collection)
+	 */
+	@Test
+	public void getRolesByName_shouldNotHitTheDatabaseWhenThereAreNoNames() throws Exception {
+		Assert.assertTrue(accountService.getRolesByName(new ArrayList<String>()).isEmpty());
+		verifyZeroInteractions(dao, userService);
+	}
+	
+	/**
+	 * @verifies save all the accounts and clear the session
+	 * @see AccountService#saveAccounts(List)
+	 */
+	@Test
+	public void saveAccounts_shouldSaveAllTheAccountsAndClearTheSession() throws Exception {
+		Person person1 = new Person();
+		Person person2 = new Person();
+		accountService.saveAccounts(Arrays.asList(accountService.getAccountByPerson(person1),
+		    accountService.getAccountByPerson(person2)));
+		
+		verify(personService).savePerson(person1);
+		verify(personService).savePerson(person2);
+		verify(dao, times(1)).flushAndClearSession();
+	}
+	
 }
@@ -14,19 +14,27 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyCollectionOf;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.openmrs.Person;
 import org.openmrs.PersonName;
 import org.openmrs.Role;
@@ -35,6 +43,8 @@ import org.openmrs.api.PersonService;
 import org.openmrs.api.ProviderService;
 import org.openmrs.api.UserService;
 import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.module.providermanagement.Provider;
+import org.openmrs.module.providermanagement.ProviderRole;
 import org.openmrs.module.providermanagement.api.ProviderManagementService;
 
 public class AccountTest {
@@ -87,6 +97,11 @@ public class AccountTest {
 		return new Account(person, accountService, userService, providerService, providerManagementService, personService);
 	}
 	
+	private Account initializeAccountDomainWrapper(Person person, List<User> users) {
+		return new Account(person, users, null, accountService, userService, providerService, providerManagementService,
+		        personService);
+	}
+	
 	@Test
 	public void settingAccountDomainWrapperShouldSetPerson() {
 		
@@ -206,9 +221,7 @@ public class AccountTest {
 		user.setPerson(person);
 		user.setRetired(true);
 		
-		when(userService.getUsersByPerson((person), (false))).thenReturn(Collections.singletonList(user));
-		
-		Account account = initializeNewAccountDomainWrapper(person);
+		Account account = initializeAccountDomainWrapper(person, Collections.singletonList(user));
 		assertFalse(account.getUserEnabled());
 		
 	}
@@ -235,9 +248,7 @@ public class AccountTest {
 		user.addRole(archiveApp);
 		user.addRole(receptionApp);
 		
-		when(userService.getUsersByPerson((person), (false))).thenReturn(Collections.singletonList(user));
-		
-		Account account = initializeNewAccountDomainWrapper(person);
+		Account account = initializeAccountDomainWrapper(person, Collections.singletonList(user));
 		account.setUserEnabled(true);
 		account.createRequiredUsers(1);
 		
@@ -259,6 +270,56 @@ public class AccountTest {
 		assertEquals("msmith", account.getUsername(0));
 	}
 	
+	@Test
+	public void shouldResolveTheRolesOfAllUsersWithASingleLookup() {
+		
+		Map<String, Role> rolesByName = new HashMap<String, Role>();
+		for (Role role : Arrays.asList(fullPrivileges, limitedPrivileges, receptionApp, archiveApp, adminApp)) {
+			rolesByName.put(role.getRole(), role);
+		}
+		when(accountService.getRolesByName(anyCollectionOf(String.class))).thenReturn(rolesByName);
+		
+		Account account = initializeNewAccountDomainWrapper(new Person());
+		account.setUserEnabled(true);
+		account.createRequiredUsers(2);
+		
+		ArrayList<String> privilegeLevels = new ArrayList<String>();
+		privilegeLevels.add(fullPrivileges.getRole());
+		privilegeLevels.add(limitedPrivileges.getRole());
+		ArrayList<String[]> capabilities = new ArrayList<String[]>();
+		capabilities.add(new String[] { receptionApp.getRole(), archiveApp.getRole() });
+		capabilities.add(new String[] { adminApp.getRole() });
+		account.setRoles(privilegeLevels, capabilities);
+		
+		assertEquals(fullPrivileges, account.getPrivilegeLevel(0));
+		assertEquals(2, account.getCapabilities(0).size());
+		assertEquals(limitedPrivileges, account.getPrivilegeLevel(1));
+		assertEquals(Collections.singleton(adminApp), account.getCapabilities(1));
+		assertTrue(account.getUnknownRoleNames().isEmpty());
+		verify(accountService, times(1)).getRolesByName(anyCollectionOf(String.class));
+		verify(userService, never()).getRole(anyString());
+	}
+	
+	@Test
+	public void shouldReportUnknownRoleNamesInsteadOfAddingThem() {
+		
+		when(accountService.getRolesByName(anyCollectionOf(String.class))).thenReturn(
+		    Collections.singletonMap(fullPrivileges.getRole(), fullPrivileges));
+		
+		Account account = initializeNewAccountDomainWrapper(new Person());
+		account.setUserEnabled(true);
+		account.createRequiredUsers(1);
+		
+		ArrayList<String> privilegeLevels = new ArrayList<String>();
+		privilegeLevels.add(fullPrivileges.getRole());
+		ArrayList<String[]> capabilities = new ArrayList<String[]>();
+		capabilities.add(new String[] { "No Such Role" });
+		account.setRoles(privilegeLevels, capabilities);
+		
+		assertEquals(Collections.singleton("No Such Role"), account.getUnknownRoleNames());
+		assertEquals(1, account.getUser(0).getRoles().size());
+	}
+	
 	@Test
 	public void testSaveAccountWithOnlyPerson() throws Exception {
 		
@@ -271,4 +332,103 @@ public class AccountTest {
 		
 		verify(userService, never()).saveUser(any(User.class), anyString());
 	}
+	
+	@Test
+	public void shouldNotSaveAnUnchangedAccount() throws Exception {
+		
+		Person person = new Person(1);
+		person.addName(new PersonName("Mark", null, "Jones"));
+		person.setGender("M");
+		User user = new User(2);
+		user.setPerson(person);
+		user.setUsername("mjones");
+		user.addRole(fullPrivileges);
+		when(accountService.getRolesByName(anyCollectionOf(String.class))).thenReturn(
+		    Collections.singletonMap(fullPrivileges.getRole(), fullPrivileges));
+		
+		Account account = initializeAccountDomainWrapper(person, Collections.singletonList(user));
+		account.setGivenName("Mark");
+		account.setFamilyName("Jones");
+		account.setGender("M");
+		account.createRequiredUsers(1);
+		account.setUsernames(new ArrayList<String>(Arrays.asList("mjones")));
+		account.setPrivilegeLevels(new ArrayList<String>(Arrays.asList(fullPrivileges.getRole())));
+		account.save();
+		
+		verify(personService, never()).savePerson(any(Person.class));
+		verify(userService, never()).saveUser(any(User.class), anyString());
+		verify(userService, never()).changePassword(any(User.class), anyString());
+	}
+	
+	@Test
+	public void shouldSaveAnExistingPersonWhoseValuesChanged() throws Exception {
+		
+		Person person = new Person(1);
+		person.addName(new PersonName("Mark", null, "Jones"));
+		person.setGender("M");
+		User user = new User(2);
+		user.setPerson(person);
+		user.setUsername("mjones");
+		
+		Account account = initializeAccountDomainWrapper(person, Collections.singletonList(user));
+		account.setGivenName("Marc");
+		account.save();
+		
+		verify(personService).savePerson(person);
+		verify(userService, never()).saveUser(any(User.class), anyString());
+	}
+	
+	@Test
+	public void shouldOnlySaveTheUsersWhoseValuesChanged() throws Exception {
+		
+		Person person = new Person(1);
+		person.addName(new PersonName("Mark", null, "Jones"));
+		User user1 = new User(2);
+		user1.setPerson(person);
+		user1.setUsername("mjones");
+		user1.addRole(receptionApp);
+		User user2 = new User(3);
+		user2.setPerson(person);
+		user2.setUsername("mjones2");
+		user2.addRole(archiveApp);
+		Map<String, Role> rolesByName = new HashMap<String, Role>();
+		rolesByName.put(adminApp.getRole(), adminApp);
+		rolesByName.put(archiveApp.getRole(), archiveApp);
+		when(accountService.getRolesByName(anyCollectionOf(String.class))).thenReturn(rolesByName);
+		
+		Account account = initializeAccountDomainWrapper(person, Arrays.asList(user1, user2));
+		account.createRequiredUsers(2);
+		ArrayList<String[]> capabilities = new ArrayList<String[]>();
+		capabilities.add(new String[] { adminApp.getRole() });
+		capabilities.add(new String[] { archiveApp.getRole() });
+		account.setCapabilities(capabilities);
+		account.save();
+		
+		assertEquals(Collections.singleton(adminApp), account.getCapabilities(0));
+		verify(userService).saveUser(user1, null);
+		verify(userService, never()).saveUser(user2, null);
+	}
+	
+	@Test
+	public void shouldGiveANewProviderAnIdentifierDerivedFromItsId() throws Exception {
+		
+		when(providerService.saveProvider(any(Provider.class))).thenAnswer(new Answer<Provider>() {
+			
+			@Override
+			public Provider answer(InvocationOnMock invocation) throws Throwable {
+				Provider provider = (Provider) invocation.getArguments()[0];
+				provider.setId(7);
+				return provider;
+			}
+		});
+		
+		Account account = initializeNewAccountDomainWrapper(new Person());
+		account.setProviderEnabled(true);
+		account.setProviderRoles(Collections.singletonList(new ProviderRole()));
+		account.save();
+		
+		Provider provider = account.getProviders().iterator().next();
+		assertEquals("7", provider.getIdentifier());
+		verify(providerService, times(2)).saveProvider(provider);
+	}
 }
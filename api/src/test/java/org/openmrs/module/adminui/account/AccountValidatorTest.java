@@ -9,10 +9,13 @@
  */
 package org.openmrs.module.adminui.account;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -20,6 +23,7 @@ import java.util.Set;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Matchers;
 import org.mockito.Mockito;
 import org.openmrs.Person;
 import org.openmrs.PersonName;
@@ -134,4 +138,32 @@ public class AccountValidatorTest {
 		
 		assertTrue(errors.hasErrors());
 	}
+	
+	/**
+	 * @verifies reject role names that don't match a role
+	 * @see AdminUiAccountValidator#validate(Object, Errors)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void validate_shouldRejectRoleNamesThatDontMatchARole() throws Exception {
+		when(accountService.getRolesByName(Matchers.any(Collection.class))).thenReturn(
+		    Collections.singletonMap(fullPrivileges.getRole(), fullPrivileges));
+		
+		account.setGivenName("given Name");
+		account.setFamilyName("family name");
+		account.setGender("M");
+		account.setUserEnabled(true);
+		account.createRequiredUsers(1);
+		
+		ArrayList<String> privilegeLevels = new ArrayList<String>();
+		privilegeLevels.add(fullPrivileges.getRole());
+		ArrayList<String[]> capabilities = new ArrayList<String[]>();
+		capabilities.add(new String[] { "No Such Role" });
+		account.setRoles(privilegeLevels, capabilities);
+		
+		Errors errors = new BindException(account, "account");
+		validator.validate(account, errors);
+		assertTrue(errors.hasGlobalErrors());
+		assertEquals("adminui.account.error.unknownRole", errors.getGlobalError().getCode());
+	}
 }
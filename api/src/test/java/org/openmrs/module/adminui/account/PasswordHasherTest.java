@@ -0,0 +1,120 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.util.Security;
+
+public class PasswordHasherTest {
+	
+	private AdministrationService administrationService;
+	
+	private PasswordHasher passwordHasher;
+	
+	@Before
+	public void setup() {
+		administrationService = mock(AdministrationService.class);
+		when(administrationService.getGlobalProperty(AdminUiConstants.GP_PASSWORD_HASHING_POOL_SIZE)).thenReturn("2");
+		when(administrationService.getGlobalProperty(AdminUiConstants.GP_PASSWORD_HASHING_QUEUE_SIZE)).thenReturn("1");
+		passwordHasher = new PasswordHasher();
+		passwordHasher.setAdministrationService(administrationService);
+	}
+	
+	@After
+	public void shutdown() {
+		passwordHasher.shutdown();
+	}
+	
+	/**
+	 * @verifies hash each password with its own salt
+	 * @see PasswordHasher#hash(List)
+	 */
+	@Test
+	public void hash_shouldHashEachPasswordWithItsOwnSalt() throws Exception {
+		List<HashedPassword> hashedPasswords = passwordHasher.hash(Arrays.asList("Passw0rd", "Passw0rd"));
+		
+		assertEquals(2, hashedPasswords.size());
+		assertFalse(hashedPasswords.get(0).getSalt().equals(hashedPasswords.get(1).getSalt()));
+		for (HashedPassword hashedPassword : hashedPasswords) {
+			assertEquals(Security.encodeString("Passw0rd" + hashedPassword.getSalt()), hashedPassword.getHash());
+		}
+	}
+	
+	/**
+	 * @verifies return the hashes in the order of the passwords
+	 * @see PasswordHasher#hash(List)
+	 */
+	@Test
+	public void hash_shouldReturnTheHashesInTheOrderOfThePasswords() throws Exception {
+		List<String> passwords = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			passwords.add("Passw0rd" + i);
+		}
+		
+		List<HashedPassword> hashedPasswords = passwordHasher.hash(passwords);
+		
+		for (int i = 0; i < passwords.size(); i++) {
+			HashedPassword hashedPassword = hashedPasswords.get(i);
+			assertEquals(Security.encodeString(passwords.get(i) + hashedPassword.getSalt()), hashedPassword.getHash());
+		}
+	}
+	
+	/**
+	 * @verifies hash the passwords on several threads at once
+	 * @see PasswordHasher#hash(List)
+	 */
+	@Test
+	public void hash_shouldHashThePasswordsOnSeveralThreadsAtOnce() throws Exception {
+		// each hash waits until the other one is being computed too, which only happens when they run in parallel
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		passwordHasher.shutdown();
+		passwordHasher = new PasswordHasher() {
+			
+			@Override
+			protected HashedPassword hash(String password) {
+				threads.add(Thread.currentThread());
+				try {
+					barrier.await(5, TimeUnit.SECONDS);
+				}
+				catch (Exception e) {
+					throw new IllegalStateException("The passwords were not hashed in parallel", e);
+				}
+				return super.hash(password);
+			}
+		};
+		passwordHasher.setAdministrationService(administrationService);
+		
+		List<HashedPassword> hashedPasswords = passwordHasher.hash(Arrays.asList("Passw0rd", "S3cret"));
+		
+		assertEquals(2, threads.size());
+		assertFalse(threads.contains(Thread.currentThread()));
+		assertEquals(Security.encodeString("S3cret" + hashedPasswords.get(1).getSalt()), hashedPasswords.get(1).getHash());
+	}
+	
+}
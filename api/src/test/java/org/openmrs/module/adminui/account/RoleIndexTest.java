@@ -0,0 +1,143 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Role;
+import org.openmrs.api.UserService;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class RoleIndexTest {
+
+	private RoleIndex roleIndex;
+
+	private UserService userService;
+
+	private Role fullPrivileges;
+
+	private Role archivesApp;
+
+	private Role otherRole;
+
+	@Before
+	public void setup() {
+		userService = mock(UserService.class);
+		roleIndex = new RoleIndex();
+		roleIndex.setUserService(userService);
+
+		fullPrivileges = new Role(AdminUiConstants.PRIVILEGE_LEVEL_FULL_ROLE);
+		archivesApp = new Role(AdminUiConstants.ROLE_PREFIX_CAPABILITY + "Archives");
+		otherRole = new Role("Other");
+		when(userService.getAllRoles()).thenReturn(Arrays.asList(otherRole, archivesApp, fullPrivileges));
+	}
+
+	@Test
+	public void shouldPartitionRolesByPrefix() {
+		assertEquals(Arrays.asList(archivesApp.getRole()),
+		    roleIndex.getRoleNamesWithPrefix(AdminUiConstants.ROLE_PREFIX_CAPABILITY));
+		assertEquals(Arrays.asList(fullPrivileges.getRole()),
+		    roleIndex.getRoleNamesWithPrefix(AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL));
+		assertTrue(roleIndex.hasRole(otherRole.getRole()));
+	}
+
+	@Test
+	public void shouldOnlyLoadTheRolesOnce() {
+		roleIndex.getRoleNamesWithPrefix(AdminUiConstants.ROLE_PREFIX_CAPABILITY);
+		roleIndex.getRoleNamesWithPrefix(AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL);
+		roleIndex.hasRole("Other");
+
+		verify(userService, times(1)).getAllRoles();
+		assertEquals(1, roleIndex.getRebuildCount());
+		assertEquals(1, roleIndex.getMissCount());
+		assertEquals(2, roleIndex.getHitCount());
+	}
+
+	@Test
+	public void shouldAddSavedRolesWithoutReloading() {
+		roleIndex.getRoleNamesWithPrefix(AdminUiConstants.ROLE_PREFIX_CAPABILITY);
+		Role adminApp = new Role(AdminUiConstants.ROLE_PREFIX_CAPABILITY + "Admin");
+		roleIndex.roleSaved(adminApp.getRole());
+
+		List<String> capabilities = roleIndex.getRoleNamesWithPrefix(AdminUiConstants.ROLE_PREFIX_CAPABILITY);
+		assertEquals(Arrays.asList(adminApp.getRole(), archivesApp.getRole()), capabilities);
+		verify(userService, times(1)).getAllRoles();
+	}
+
+	@Test
+	public void shouldRemovePurgedRolesWithoutReloading() {
+		roleIndex.hasRole("Other");
+		roleIndex.rolePurged(archivesApp.getRole());
+
+		assertEquals(0, roleIndex.getRoleNamesWithPrefix(AdminUiConstants.ROLE_PREFIX_CAPABILITY).size());
+		assertFalse(roleIndex.hasRole(archivesApp.getRole()));
+		verify(userService, times(1)).getAllRoles();
+	}
+
+	@Test
+	public void shouldReloadTheRolesAfterBeingInvalidated() {
+		roleIndex.hasRole("Other");
+		roleIndex.invalidate();
+		roleIndex.hasRole("Other");
+
+		verify(userService, times(2)).getAllRoles();
+		assertEquals(2, roleIndex.getRebuildCount());
+	}
+
+	@Test
+	public void shouldOnlyAddASavedRoleOnceTheTransactionCommits() {
+		roleIndex.hasRole("Other");
+		String adminApp = AdminUiConstants.ROLE_PREFIX_CAPABILITY + "Admin";
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			roleIndex.roleSaved(adminApp);
+			assertFalse(roleIndex.hasRole(adminApp));
+
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCommit();
+			}
+			assertTrue(roleIndex.hasRole(adminApp));
+		}
+		finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	public void shouldNotAddASavedRoleWhenTheTransactionRollsBack() {
+		roleIndex.hasRole("Other");
+		String adminApp = AdminUiConstants.ROLE_PREFIX_CAPABILITY + "Admin";
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			roleIndex.roleSaved(adminApp);
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+			}
+		}
+		finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertFalse(roleIndex.hasRole(adminApp));
+	}
+
+}
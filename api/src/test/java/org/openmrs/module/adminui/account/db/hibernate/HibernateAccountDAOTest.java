@@ -0,0 +1,87 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.account.db.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Role;
+
+public class HibernateAccountDAOTest {
+	
+	private HibernateAccountDAO dao;
+	
+	private Session session;
+	
+	private Query query;
+	
+	@Before
+	public void setup() {
+		session = mock(Session.class);
+		query = mock(Query.class);
+		when(session.createQuery(anyString())).thenReturn(query);
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		when(sessionFactory.getCurrentSession()).thenReturn(session);
+		dao = new HibernateAccountDAO();
+		dao.setSessionFactory(sessionFactory);
+	}
+	
+	/**
+	 * @verifies get the roles with a single query
+	 * @see HibernateAccountDAO#getRoles(java.util.Collection)
+	 */
+	@Test
+	public void getRoles_shouldGetTheRolesWithASingleQuery() throws Exception {
+		List<String> names = Arrays.asList("Application Role: Archives", "Application Role: Registration");
+		when(query.list()).thenReturn(Arrays.asList(new Role(names.get(0)), new Role(names.get(1))));
+		
+		dao.getRoles(names);
+		
+		verify(session, times(1)).createQuery("from Role r where r.role in (:names)");
+		verify(query).setParameterList("names", names);
+		verify(session, never()).load(any(Class.class), any(Serializable.class));
+		verify(session, never()).get(any(Class.class), any(Serializable.class));
+	}
+	
+	/**
+	 * @verifies return the roles in the order of the names
+	 * @see HibernateAccountDAO#getRoles(java.util.Collection)
+	 */
+	@Test
+	public void getRoles_shouldReturnTheRolesInTheOrderOfTheNames() throws Exception {
+		Role archives = new Role("Application Role: Archives");
+		Role registration = new Role("Application Role: Registration");
+		when(query.list()).thenReturn(Arrays.asList(registration, archives));
+		
+		List<Role> roles = dao.getRoles(Arrays.asList(archives.getRole(), "Application Role: Unknown",
+		    registration.getRole()));
+		
+		assertEquals(2, roles.size());
+		assertSame(archives, roles.get(0));
+		assertSame(registration, roles.get(1));
+	}
+	
+}
@@ -0,0 +1,66 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.customdatatype;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CustomDatatypeRegistryTest {
+
+	private static final String FREE_TEXT = "org.openmrs.customdatatype.datatype.FreeTextDatatype";
+
+	private static final String BOOLEAN = "org.openmrs.customdatatype.datatype.BooleanDatatype";
+
+	private static final String LOCATION = "org.openmrs.module.example.LocationDatatype";
+
+	private static final String TEXTAREA = "org.openmrs.web.attribute.handler.LongFreeTextTextareaHandler";
+
+	private CustomDatatypeRegistry registry;
+
+	@Before
+	public void setup() {
+		registry = new CustomDatatypeRegistry();
+		registry.refresh(Arrays.asList(FREE_TEXT, LOCATION, BOOLEAN), Arrays.asList(TEXTAREA));
+	}
+
+	/**
+	 * @verifies label and sort the datatypes and handlers
+	 * @see CustomDatatypeRegistry#refresh(java.util.Collection, java.util.Collection)
+	 */
+	@Test
+	public void refresh_shouldLabelAndSortTheDatatypesAndHandlers() throws Exception {
+		assertEquals(Arrays.asList(BOOLEAN, FREE_TEXT, LOCATION), new ArrayList<String>(registry.getDatatypes().keySet()));
+		assertEquals(Arrays.asList("Boolean Datatype", "Free Text Datatype", "Location Datatype"), new ArrayList<String>(
+		        registry.getDatatypes().values()));
+		assertEquals(Arrays.asList(BOOLEAN, FREE_TEXT, LOCATION), registry.getDatatypeClassnames());
+		assertEquals("Long Free Text Textarea Handler", registry.getHandlers().get(TEXTAREA));
+		assertEquals(Arrays.asList(TEXTAREA), registry.getHandlerClassnames());
+
+		registry.refresh(Arrays.asList(FREE_TEXT), new ArrayList<String>());
+
+		assertEquals(Arrays.asList(FREE_TEXT), registry.getDatatypeClassnames());
+		assertEquals(0, registry.getHandlers().size());
+	}
+
+	/**
+	 * @verifies hand out maps that can't be modified
+	 * @see CustomDatatypeRegistry#refresh(java.util.Collection, java.util.Collection)
+	 */
+	@Test(expected = UnsupportedOperationException.class)
+	public void refresh_shouldHandOutMapsThatCantBeModified() throws Exception {
+		registry.getDatatypes().put(TEXTAREA, "Textarea");
+	}
+
+}
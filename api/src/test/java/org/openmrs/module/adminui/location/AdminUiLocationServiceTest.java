@@ -0,0 +1,748 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+import org.openmrs.User;
+import org.openmrs.api.APIException;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.adminui.PagedResult;
+import org.openmrs.module.adminui.location.db.AdminUiLocationDAO;
+
+public class AdminUiLocationServiceTest {
+
+	private AdminUiLocationServiceImpl locationService;
+
+	private AdminUiLocationDAO dao;
+
+	private LocationVersion locationVersion;
+
+	private LocationService coreLocationService;
+
+	@Before
+	public void setup() {
+		dao = mock(AdminUiLocationDAO.class);
+		locationService = new AdminUiLocationServiceImpl();
+		locationService.setDao(dao);
+		locationVersion = new LocationVersion();
+		locationService.setLocationVersion(locationVersion);
+		coreLocationService = mock(LocationService.class);
+		locationService.setLocationService(coreLocationService);
+		Context.setUserContext(new UserContext());
+	}
+
+	@After
+	public void tearDown() {
+		Context.clearUserContext();
+	}
+
+	/**
+	 * @verifies link the locations to their parents
+	 * @see AdminUiLocationService#getLocationHierarchy()
+	 */
+	@Test
+	public void getLocationHierarchy_shouldLinkTheLocationsToTheirParents() throws Exception {
+		when(dao.getLocationNodes()).thenReturn(
+		    Arrays.asList(new LocationNode(2, 1, "Ward", false), new LocationNode(1, null, "Hospital", false)));
+		Map<Integer, List<String>> tags = new HashMap<Integer, List<String>>();
+		tags.put(2, Arrays.asList("Login Location"));
+		when(dao.getTagNamesByLocationId(null)).thenReturn(tags);
+
+		LocationHierarchy hierarchy = locationService.getLocationHierarchy();
+
+		assertEquals(1, hierarchy.getRoots().size());
+		LocationNode hospital = hierarchy.getRoots().get(0);
+		assertEquals("Hospital", hospital.getName());
+		assertTrue(hospital.getTags().isEmpty());
+		assertEquals("Ward", hospital.getChildren().get(0).getName());
+		assertEquals(Arrays.asList("Login Location"), hospital.getChildren().get(0).getTags());
+	}
+
+	/**
+	 * @verifies run two queries regardless of the number of locations
+	 * @see AdminUiLocationService#getLocationHierarchy()
+	 */
+	@Test
+	public void getLocationHierarchy_shouldRunTwoQueriesRegardlessOfTheNumberOfLocations() throws Exception {
+		List<LocationNode> nodes = new ArrayList<LocationNode>();
+		for (int i = 1; i <= 1000; i++) {
+			nodes.add(new LocationNode(i, i > 1 ? i / 2 : null, "Location " + i, false));
+		}
+		when(dao.getLocationNodes()).thenReturn(nodes);
+
+		assertEquals(1000, locationService.getLocationHierarchy().size());
+		verify(dao, times(1)).getLocationNodes();
+		verify(dao, times(1)).getTagNamesByLocationId(null);
+		verifyNoMoreInteractions(dao);
+	}
+
+	/**
+	 * @verifies return the children with their tags and child counts
+	 * @see AdminUiLocationService#getChildLocationNodes(Integer)
+	 */
+	@Test
+	public void getChildLocationNodes_shouldReturnTheChildrenWithTheirTagsAndChildCounts() throws Exception {
+		LocationNode ward = new LocationNode(2, 1, "Ward", false);
+		ward.setChildCount(3);
+		LocationNode pharmacy = new LocationNode(3, 1, "Pharmacy", false);
+		when(dao.getChildLocationNodes(1)).thenReturn(Arrays.asList(pharmacy, ward));
+		Map<Integer, List<String>> tags = new HashMap<Integer, List<String>>();
+		tags.put(2, Arrays.asList("Visit Location", "Login Location"));
+		when(dao.getTagNamesByLocationId(Arrays.asList(3, 2))).thenReturn(tags);
+
+		List<LocationNode> children = locationService.getChildLocationNodes(1);
+
+		assertEquals(Arrays.asList(pharmacy, ward), children);
+		assertEquals(3, children.get(1).getChildCount());
+		assertEquals(Arrays.asList("Login Location", "Visit Location"), children.get(1).getTags());
+		assertTrue(children.get(0).getTags().isEmpty());
+		verify(dao, times(1)).getChildLocationNodes(1);
+		verify(dao, times(1)).getTagNamesByLocationId(Arrays.asList(3, 2));
+		verifyNoMoreInteractions(dao);
+	}
+
+	/**
+	 * @verifies load each level once per location version
+	 * @see AdminUiLocationService#getChildLocationNodes(Integer)
+	 */
+	@Test
+	public void getChildLocationNodes_shouldLoadEachLevelOncePerLocationVersion() throws Exception {
+		when(dao.getChildLocationNodes(null)).thenReturn(Arrays.asList(new LocationNode(1, null, "Hospital", false)));
+
+		locationService.getChildLocationNodes(null);
+		List<LocationNode> roots = locationService.getChildLocationNodes(null);
+		assertEquals(1, roots.size());
+		verify(dao, times(1)).getChildLocationNodes(null);
+
+		locationVersion.locationsChanged();
+		locationService.getChildLocationNodes(null);
+		verify(dao, times(2)).getChildLocationNodes(null);
+	}
+
+	/**
+	 * @verifies return the page of locations with their tags and the total count
+	 * @see AdminUiLocationService#getLocations(String, Integer, Integer, boolean, String, int, int)
+	 */
+	@Test
+	public void getLocations_shouldReturnThePageOfLocationsWithTheirTagsAndTheTotalCount() throws Exception {
+		LocationNode ward = new LocationNode(2, 1, "Ward", false);
+		ward.setParentLocationName("Hospital");
+		LocationNode wardB = new LocationNode(3, 1, "Ward B", false);
+		when(dao.getLocationNodes("war", 5, 1, false, AdminUiLocationService.SORT_BY_NAME, 10, 2)).thenReturn(
+		    Arrays.asList(ward, wardB));
+		Map<Integer, List<String>> tags = new HashMap<Integer, List<String>>();
+		tags.put(2, Arrays.asList("Visit Location", "Login Location"));
+		when(dao.getTagNamesByLocationId(Arrays.asList(2, 3))).thenReturn(tags);
+		when(dao.getLocationNodeCount("war", 5, 1, false)).thenReturn(13L);
+
+		PagedResult<LocationNode> page = locationService.getLocations("war", 5, 1, false,
+		    AdminUiLocationService.SORT_BY_NAME, 10, 2);
+
+		assertEquals(Arrays.asList(ward, wardB), page.getResults());
+		assertEquals(13, page.getTotalCount());
+		assertEquals("Hospital", page.getResults().get(0).getParentLocationName());
+		assertEquals(Arrays.asList("Login Location", "Visit Location"), page.getResults().get(0).getTags());
+		assertTrue(page.getResults().get(1).getTags().isEmpty());
+	}
+
+	/**
+	 * @verifies fetch the tags of the page only
+	 * @see AdminUiLocationService#getLocations(String, Integer, Integer, boolean, String, int, int)
+	 */
+	@Test
+	public void getLocations_shouldFetchTheTagsOfThePageOnly() throws Exception {
+		when(dao.getLocationNodes(null, null, null, false, null, 0, 2)).thenReturn(
+		    Arrays.asList(new LocationNode(4, null, "Clinic", false), new LocationNode(7, null, "Hospital", false)));
+		when(dao.getTagNamesByLocationId(anyCollectionOf(Integer.class))).thenReturn(new HashMap<Integer, List<String>>());
+		when(dao.getLocationNodeCount(null, null, null, false)).thenReturn(5000L);
+
+		locationService.getLocations(null, null, null, false, null, 0, 2);
+
+		verify(dao, times(1)).getLocationNodes(null, null, null, false, null, 0, 2);
+		verify(dao, times(1)).getTagNamesByLocationId(Arrays.asList(4, 7));
+		verify(dao, times(1)).getLocationNodeCount(null, null, null, false);
+		verifyNoMoreInteractions(dao);
+	}
+
+	/**
+	 * @verifies not count the locations when the first page is not full
+	 * @see AdminUiLocationService#getLocations(String, Integer, Integer, boolean, String, int, int)
+	 */
+	@Test
+	public void getLocations_shouldNotCountTheLocationsWhenTheFirstPageIsNotFull() throws Exception {
+		when(dao.getLocationNodes("cli", null, null, true, null, 0, 10)).thenReturn(
+		    Arrays.asList(new LocationNode(4, null, "Clinic", true)));
+		when(dao.getTagNamesByLocationId(anyCollectionOf(Integer.class))).thenReturn(new HashMap<Integer, List<String>>());
+
+		PagedResult<LocationNode> page = locationService.getLocations("cli", null, null, true, null, 0, 10);
+
+		assertEquals(1, page.getTotalCount());
+		verify(dao, never()).getLocationNodeCount(anyString(), any(Integer.class), any(Integer.class), anyBoolean());
+	}
+
+	/**
+	 * @verifies return a page of the locations with a word starting with the query
+	 * @see AdminUiLocationService#searchLocations(String, boolean, int, int)
+	 */
+	@Test
+	public void searchLocations_shouldReturnAPageOfTheLocationsWithAWordStartingWithTheQuery() throws Exception {
+		when(dao.getLocationNodes()).thenReturn(
+		    Arrays.asList(new LocationNode(1, null, "District Hospital", false), new LocationNode(2, 1, "Ward A", false),
+		        new LocationNode(3, 1, "Ward B", false), new LocationNode(4, 1, "Ward C", true), new LocationNode(5, 1,
+		                "Maternity Ward", false), new LocationNode(6, 1, "Wardrobe", false)));
+
+		PagedResult<LocationNode> page = locationService.searchLocations("ward", false, 1, 2);
+
+		assertEquals(4, page.getTotalCount());
+		assertEquals(2, page.getResults().size());
+		assertEquals("Ward A", page.getResults().get(0).getName());
+		assertEquals("District Hospital", page.getResults().get(0).getParentLocationName());
+		assertEquals("Ward B", page.getResults().get(1).getName());
+		assertEquals(5, locationService.searchLocations("ward", true, 0, 10).getTotalCount());
+		assertEquals(0, locationService.searchLocations("ward", false, 10, 10).getResults().size());
+	}
+
+	/**
+	 * @verifies rebuild the index only when the locations change
+	 * @see AdminUiLocationService#searchLocations(String, boolean, int, int)
+	 */
+	@Test
+	public void searchLocations_shouldRebuildTheIndexOnlyWhenTheLocationsChange() throws Exception {
+		when(dao.getLocationNodes()).thenReturn(Arrays.asList(new LocationNode(1, null, "Hospital", false)));
+
+		locationService.searchLocations("hos", false, 0, 10);
+		locationService.searchLocations("ward", false, 0, 10);
+		verify(dao, times(1)).getLocationNodes();
+
+		locationVersion.locationsChanged();
+		locationService.searchLocations("hos", false, 0, 10);
+		verify(dao, times(2)).getLocationNodes();
+	}
+
+	/**
+	 * @verifies return the nearest locations from an index rebuilt only when the locations change
+	 * @see AdminUiLocationService#getNearestLocations(double, double, int)
+	 */
+	@Test
+	public void getNearestLocations_shouldReturnTheNearestLocationsFromAnIndexRebuiltOnlyWhenTheLocationsChange()
+	        throws Exception {
+		when(dao.getLocationPoints()).thenReturn(
+		    Arrays.asList(new LocationPoint(1, "Kampala", 0.3476, 32.5825), new LocationPoint(2, "Entebbe", 0.0512, 32.4637)),
+		    Arrays.asList(new LocationPoint(3, "Nairobi", -1.2921, 36.8219)));
+
+		List<NearbyLocation> nearest = locationService.getNearestLocations(0.05, 32.46, 1);
+		assertEquals(Integer.valueOf(2), nearest.get(0).getLocation().getLocationId());
+		assertEquals(2, locationService.getNearestLocations(0.05, 32.46, 5).size());
+		verify(dao, times(1)).getLocationPoints();
+
+		locationVersion.locationsChanged();
+
+		nearest = locationService.getNearestLocations(0.05, 32.46, 5);
+		assertEquals(1, nearest.size());
+		assertEquals(Integer.valueOf(3), nearest.get(0).getLocation().getLocationId());
+		verify(dao, times(2)).getLocationPoints();
+	}
+
+	/**
+	 * @verifies return the locations within the distance
+	 * @see AdminUiLocationService#getLocationsWithinDistance(double, double, double)
+	 */
+	@Test
+	public void getLocationsWithinDistance_shouldReturnTheLocationsWithinTheDistance() throws Exception {
+		when(dao.getLocationPoints()).thenReturn(
+		    Arrays.asList(new LocationPoint(1, "Kampala", 0.3476, 32.5825), new LocationPoint(2, "Kampala Annex", 0.3480,
+		            32.5830), new LocationPoint(3, "Entebbe", 0.0512, 32.4637)));
+
+		List<NearbyLocation> nearby = locationService.getLocationsWithinDistance(0.3476, 32.5825, 100);
+
+		assertEquals(2, nearby.size());
+		assertEquals(Integer.valueOf(1), nearby.get(0).getLocation().getLocationId());
+		assertEquals(Integer.valueOf(2), nearby.get(1).getLocation().getLocationId());
+	}
+
+	/**
+	 * @verifies fetch all the tags with one query
+	 * @see AdminUiLocationService#getLocationTags(java.util.Collection)
+	 */
+	@Test
+	public void getLocationTags_shouldFetchAllTheTagsWithOneQuery() throws Exception {
+		List<Integer> ids = Arrays.asList(1, 2, 3);
+		List<LocationTag> tags = Arrays.asList(new LocationTag(1), new LocationTag(3));
+		when(dao.getLocationTags(ids)).thenReturn(tags);
+
+		assertEquals(tags, locationService.getLocationTags(ids));
+		verify(dao, times(1)).getLocationTags(ids);
+		verifyNoMoreInteractions(dao);
+	}
+
+	/**
+	 * @verifies not query for no ids
+	 * @see AdminUiLocationService#getLocationTags(java.util.Collection)
+	 */
+	@Test
+	public void getLocationTags_shouldNotQueryForNoIds() throws Exception {
+		assertTrue(locationService.getLocationTags(new ArrayList<Integer>()).isEmpty());
+		verifyNoMoreInteractions(dao);
+	}
+
+	/**
+	 * @verifies count the locations of each tag with one query
+	 * @see AdminUiLocationService#getLocationCountsByTagId()
+	 */
+	@Test
+	public void getLocationCountsByTagId_shouldCountTheLocationsOfEachTagWithOneQuery() throws Exception {
+		Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		counts.put(1, 250);
+		counts.put(3, 2);
+		when(dao.getLocationCountsByTagId()).thenReturn(counts);
+
+		Map<Integer, Integer> result = locationService.getLocationCountsByTagId();
+
+		assertEquals(Integer.valueOf(250), result.get(1));
+		assertEquals(Integer.valueOf(2), result.get(3));
+		assertNull(result.get(2));
+		verify(dao, times(1)).getLocationCountsByTagId();
+		verifyNoMoreInteractions(dao);
+	}
+
+	/**
+	 * @verifies recount the locations only when the locations change
+	 * @see AdminUiLocationService#getLocationCountsByTagId()
+	 */
+	@Test
+	public void getLocationCountsByTagId_shouldRecountTheLocationsOnlyWhenTheLocationsChange() throws Exception {
+		Map<Integer, Integer> before = new HashMap<Integer, Integer>();
+		before.put(1, 5);
+		Map<Integer, Integer> after = new HashMap<Integer, Integer>();
+		after.put(1, 6);
+		when(dao.getLocationCountsByTagId()).thenReturn(before, after);
+
+		locationService.getLocationCountsByTagId();
+		assertEquals(Integer.valueOf(5), locationService.getLocationCountsByTagId().get(1));
+		verify(dao, times(1)).getLocationCountsByTagId();
+
+		locationVersion.locationsChanged();
+
+		assertEquals(Integer.valueOf(6), locationService.getLocationCountsByTagId().get(1));
+		verify(dao, times(2)).getLocationCountsByTagId();
+	}
+
+	/**
+	 * @verifies purge a tag that is not in use
+	 * @see AdminUiLocationService#purgeLocationTag(LocationTag)
+	 */
+	@Test
+	public void purgeLocationTag_shouldPurgeATagThatIsNotInUse() throws Exception {
+		Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		counts.put(1, 5);
+		when(dao.getLocationCountsByTagId()).thenReturn(counts);
+		LocationTag tag = new LocationTag();
+		tag.setLocationTagId(2);
+
+		locationService.purgeLocationTag(tag);
+
+		verify(coreLocationService, times(1)).purgeLocationTag(tag);
+	}
+
+	/**
+	 * @verifies fail for a tag that is in use
+	 * @see AdminUiLocationService#purgeLocationTag(LocationTag)
+	 */
+	@Test
+	public void purgeLocationTag_shouldFailForATagThatIsInUse() throws Exception {
+		Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+		counts.put(1, 5);
+		when(dao.getLocationCountsByTagId()).thenReturn(counts);
+		LocationTag tag = new LocationTag();
+		tag.setLocationTagId(1);
+		tag.setName("Login Location");
+
+		try {
+			locationService.purgeLocationTag(tag);
+			fail("a tag in use was purged");
+		}
+		catch (APIException e) {
+			verify(coreLocationService, never()).purgeLocationTag(any(LocationTag.class));
+		}
+	}
+
+	/**
+	 * @verifies key the unretired locations by lower case name
+	 * @see AdminUiLocationService#getLocationIdsByName()
+	 */
+	@Test
+	public void getLocationIdsByName_shouldKeyTheUnretiredLocationsByLowerCaseName() throws Exception {
+		when(dao.getLocationNodes()).thenReturn(
+		    Arrays.asList(new LocationNode(1, null, "Ward", false), new LocationNode(2, null, "WARD ", false),
+		        new LocationNode(3, null, "Lab", true), new LocationNode(4, null, "Pharmacy", false)));
+
+		Map<String, List<Integer>> ids = locationService.getLocationIdsByName();
+
+		assertEquals(2, ids.size());
+		assertEquals(Arrays.asList(1, 2), ids.get("ward"));
+		assertEquals(Arrays.asList(4), ids.get("pharmacy"));
+	}
+
+	/**
+	 * @verifies save all the locations and clear the session
+	 * @see AdminUiLocationService#saveLocations(List)
+	 */
+	@Test
+	public void saveLocations_shouldSaveAllTheLocationsAndClearTheSession() throws Exception {
+		Location hospital = new Location();
+		Location ward = new Location();
+		ward.setParentLocation(hospital);
+
+		locationService.saveLocations(Arrays.asList(hospital, ward));
+
+		verify(coreLocationService).saveLocation(hospital);
+		verify(coreLocationService).saveLocation(ward);
+		verify(dao).flushAndClearSession();
+	}
+
+	/**
+	 * @verifies retire the unretired locations of the subtree
+	 * @see AdminUiLocationService#retireLocationSubtree(Integer, String, boolean)
+	 */
+	@Test
+	public void retireLocationSubtree_shouldRetireTheUnretiredLocationsOfTheSubtree() throws Exception {
+		when(dao.getLocationNodes()).thenReturn(
+		    Arrays.asList(new LocationNode(1, null, "Hospital", false), new LocationNode(2, 1, "Ward", false),
+		        new LocationNode(3, 2, "Old Bed", true), new LocationNode(4, 2, "Bed", false), new LocationNode(5, null,
+		                "Clinic", false)));
+		when(dao.setRetired(anyCollectionOf(Integer.class), anyBoolean(), any(User.class), any(Date.class), anyString()))
+		        .thenReturn(3);
+		long version = locationVersion.getVersion();
+
+		assertEquals(3, locationService.retireLocationSubtree(1, "Closed", false));
+
+		verify(dao, times(1)).getLocationNodes();
+		verify(dao, times(1)).setRetired(eq(Arrays.asList(1, 2, 4)), eq(true), any(User.class), any(Date.class),
+		    eq("Closed"));
+		assertTrue(locationVersion.getVersion() > version);
+	}
+
+	/**
+	 * @verifies only count the locations on a dry run
+	 * @see AdminUiLocationService#retireLocationSubtree(Integer, String, boolean)
+	 */
+	@Test
+	public void retireLocationSubtree_shouldOnlyCountTheLocationsOnADryRun() throws Exception {
+		when(dao.getLocationNodes()).thenReturn(
+		    Arrays.asList(new LocationNode(1, null, "Hospital", false), new LocationNode(2, 1, "Ward", false),
+		        new LocationNode(3, 2, "Old Bed", true)));
+		long version = locationVersion.getVersion();
+
+		assertEquals(2, locationService.retireLocationSubtree(1, null, true));
+
+		verify(dao, never()).setRetired(anyCollectionOf(Integer.class), anyBoolean(), any(User.class), any(Date.class),
+		    anyString());
+		assertEquals(version, locationVersion.getVersion());
+	}
+
+	/**
+	 * @verifies fail without a reason
+	 * @see AdminUiLocationService#retireLocationSubtree(Integer, String, boolean)
+	 */
+	@Test(expected = APIException.class)
+	public void retireLocationSubtree_shouldFailWithoutAReason() throws Exception {
+		locationService.retireLocationSubtree(1, " ", false);
+	}
+
+	/**
+	 * @verifies unretire the locations retired along with the location
+	 * @see AdminUiLocationService#unretireLocationSubtree(Integer, boolean)
+	 */
+	@Test
+	public void unretireLocationSubtree_shouldUnretireTheLocationsRetiredAlongWithTheLocation() throws Exception {
+		when(dao.getLocationNodes()).thenReturn(
+		    Arrays.asList(new LocationNode(1, null, "Hospital", true), new LocationNode(2, 1, "Ward", false),
+		        new LocationNode(3, 2, "Bed", true)));
+		Date dateRetired = new Date();
+		when(coreLocationService.getLocation(1)).thenReturn(retiredLocation(1, dateRetired, "Closed"));
+		when(dao.getLocationIdsRetiredWith(Arrays.asList(1, 3), dateRetired, "Closed")).thenReturn(Arrays.asList(1, 3));
+		when(dao.setRetired(anyCollectionOf(Integer.class), anyBoolean(), any(User.class), any(Date.class), anyString()))
+		        .thenReturn(2);
+
+		assertEquals(2, locationService.unretireLocationSubtree(1, false));
+
+		verify(dao, times(1)).setRetired(eq(Arrays.asList(1, 3)), eq(false), any(User.class), any(Date.class),
+		    any(String.class));
+	}
+
+	/**
+	 * @verifies leave the locations retired on their own retired
+	 * @see AdminUiLocationService#unretireLocationSubtree(Integer, boolean)
+	 */
+	@Test
+	public void unretireLocationSubtree_shouldLeaveTheLocationsRetiredOnTheirOwnRetired() throws Exception {
+		when(dao.getLocationNodes()).thenReturn(
+		    Arrays.asList(new LocationNode(1, null, "Hospital", true), new LocationNode(2, 1, "Ward", true),
+		        new LocationNode(3, 2, "Old Bed", true)));
+		Date dateRetired = new Date();
+		when(coreLocationService.getLocation(1)).thenReturn(retiredLocation(1, dateRetired, "Closed"));
+		// the old bed was retired before the hospital closed
+		when(dao.getLocationIdsRetiredWith(Arrays.asList(1, 2, 3), dateRetired, "Closed")).thenReturn(
+		    Arrays.asList(1, 2));
+
+		assertEquals(2, locationService.unretireLocationSubtree(1, true));
+
+		when(dao.setRetired(anyCollectionOf(Integer.class), anyBoolean(), any(User.class), any(Date.class), anyString()))
+		        .thenReturn(2);
+		assertEquals(2, locationService.unretireLocationSubtree(1, false));
+		verify(dao, times(1)).setRetired(eq(Arrays.asList(1, 2)), eq(false), any(User.class), any(Date.class),
+		    any(String.class));
+	}
+
+	/**
+	 * @verifies not unretire anything under a location that is not retired
+	 * @see AdminUiLocationService#unretireLocationSubtree(Integer, boolean)
+	 */
+	@Test
+	public void unretireLocationSubtree_shouldNotUnretireAnythingUnderALocationThatIsNotRetired() throws Exception {
+		when(dao.getLocationNodes()).thenReturn(
+		    Arrays.asList(new LocationNode(1, null, "Hospital", false), new LocationNode(2, 1, "Old Ward", true)));
+		when(coreLocationService.getLocation(1)).thenReturn(new Location(1));
+
+		assertEquals(0, locationService.unretireLocationSubtree(1, false));
+
+		verify(dao, never()).setRetired(anyCollectionOf(Integer.class), anyBoolean(), any(User.class),
+		    any(Date.class), anyString());
+	}
+
+	/**
+	 * @verifies add the tag with one batch and change the location version once
+	 * @see AdminUiLocationService#addLocationTag(Integer, java.util.Collection, boolean)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void addLocationTag_shouldAddTheTagWithOneBatchAndChangeTheLocationVersionOnce() throws Exception {
+		when(dao.addLocationTag(eq(4), anyCollectionOf(Integer.class), any(User.class), any(Date.class))).thenReturn(2);
+		long version = locationVersion.getVersion();
+
+		int added = locationService.addLocationTag(4, Arrays.asList(1, 2, 3, 2), false);
+
+		assertEquals(2, added);
+		assertEquals(version + 1, locationVersion.getVersion());
+		ArgumentCaptor<Collection> ids = ArgumentCaptor.forClass(Collection.class);
+		verify(dao, times(1)).addLocationTag(eq(4), ids.capture(), any(User.class), any(Date.class));
+		assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Object>(ids.getValue()));
+		verifyNoMoreInteractions(dao);
+	}
+
+	/**
+	 * @verifies not update anything for no locations
+	 * @see AdminUiLocationService#addLocationTag(Integer, java.util.Collection, boolean)
+	 */
+	@Test
+	public void addLocationTag_shouldNotUpdateAnythingForNoLocations() throws Exception {
+		long version = locationVersion.getVersion();
+
+		assertEquals(0, locationService.addLocationTag(4, new ArrayList<Integer>(), false));
+
+		assertEquals(version, locationVersion.getVersion());
+		verifyNoMoreInteractions(dao);
+	}
+
+	/**
+	 * @verifies only count the locations without the tag on a dry run
+	 * @see AdminUiLocationService#addLocationTag(Integer, java.util.Collection, boolean)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void addLocationTag_shouldOnlyCountTheLocationsWithoutTheTagOnADryRun() throws Exception {
+		when(dao.countLocationTagChanges(eq(4), anyCollectionOf(Integer.class), eq(true))).thenReturn(2);
+		long version = locationVersion.getVersion();
+
+		assertEquals(2, locationService.addLocationTag(4, Arrays.asList(1, 2, 3, 2), true));
+
+		assertEquals(version, locationVersion.getVersion());
+		ArgumentCaptor<Collection> ids = ArgumentCaptor.forClass(Collection.class);
+		verify(dao, times(1)).countLocationTagChanges(eq(4), ids.capture(), eq(true));
+		assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Object>(ids.getValue()));
+		verifyNoMoreInteractions(dao);
+	}
+
+	/**
+	 * @verifies remove the tag with one batch and change the location version once
+	 * @see AdminUiLocationService#removeLocationTag(Integer, java.util.Collection, boolean)
+	 */
+	@Test
+	public void removeLocationTag_shouldRemoveTheTagWithOneBatchAndChangeTheLocationVersionOnce() throws Exception {
+		when(dao.removeLocationTag(eq(4), anyCollectionOf(Integer.class), any(User.class), any(Date.class)))
+		        .thenReturn(3);
+		long version = locationVersion.getVersion();
+
+		int removed = locationService.removeLocationTag(4, Arrays.asList(1, 2, 3), false);
+
+		assertEquals(3, removed);
+		assertEquals(version + 1, locationVersion.getVersion());
+		verify(dao, times(1)).removeLocationTag(eq(4), anyCollectionOf(Integer.class), any(User.class), any(Date.class));
+		verifyNoMoreInteractions(dao);
+	}
+
+	/**
+	 * @verifies get the locations under the location by path prefix
+	 * @see AdminUiLocationService#getDescendantLocationNodes(Integer)
+	 */
+	@Test
+	public void getDescendantLocationNodes_shouldGetTheLocationsUnderTheLocationByPathPrefix() throws Exception {
+		when(dao.getLocationPath(5)).thenReturn("/1/5/");
+		LocationNode ward = new LocationNode(5, 1, "Ward", false);
+		LocationNode bed = new LocationNode(12, 5, "Bed", false);
+		when(dao.getLocationNodesByPathPrefix("/1/5/")).thenReturn(new ArrayList<LocationNode>(Arrays.asList(ward, bed)));
+
+		assertEquals(Arrays.asList(bed), locationService.getDescendantLocationNodes(5));
+		verify(dao, never()).getLocationNodes();
+	}
+
+	/**
+	 * @verifies fail for a location without a path
+	 * @see AdminUiLocationService#getDescendantLocationNodes(Integer)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void getDescendantLocationNodes_shouldFailForALocationWithoutAPath() throws Exception {
+		try {
+			locationService.getDescendantLocationNodes(99);
+			fail();
+		}
+		catch (APIException e) {
+			// expected
+		}
+		verify(dao, never()).getLocationNodes();
+		verify(dao, never()).replaceLocationPaths(any(Map.class), any(Map.class));
+	}
+
+	/**
+	 * @verifies add the path of a new location
+	 * @see AdminUiLocationService#refreshLocationPath(Location)
+	 */
+	@Test
+	public void refreshLocationPath_shouldAddThePathOfANewLocation() throws Exception {
+		when(dao.getLocationPath(5)).thenReturn("/1/5/");
+		Location bed = new Location(12);
+		bed.setParentLocation(new Location(5));
+
+		locationService.refreshLocationPath(bed);
+
+		verify(dao).insertLocationPath(12, "/1/5/12/", 2);
+	}
+
+	/**
+	 * @verifies move the paths of the subtree of a moved location
+	 * @see AdminUiLocationService#refreshLocationPath(Location)
+	 */
+	@Test
+	public void refreshLocationPath_shouldMoveThePathsOfTheSubtreeOfAMovedLocation() throws Exception {
+		when(dao.getLocationPath(5)).thenReturn("/1/5/");
+		when(dao.getLocationPath(7)).thenReturn("/7/");
+		Location ward = new Location(5);
+		ward.setParentLocation(new Location(7));
+
+		locationService.refreshLocationPath(ward);
+
+		verify(dao).moveLocationPaths("/1/5/", "/7/5/", 0);
+		Location hospital = new Location(1);
+		when(dao.getLocationPath(1)).thenReturn("/1/");
+		locationService.refreshLocationPath(hospital);
+		verify(dao, never()).insertLocationPath(anyInt(), anyString(), anyInt());
+	}
+
+	/**
+	 * @verifies not rebuild the paths if the parent has none
+	 * @see AdminUiLocationService#refreshLocationPath(Location)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void refreshLocationPath_shouldNotRebuildThePathsIfTheParentHasNone() throws Exception {
+		Location bed = new Location(12);
+		bed.setParentLocation(new Location(5));
+
+		locationService.refreshLocationPath(bed);
+
+		verify(dao, never()).insertLocationPath(anyInt(), anyString(), anyInt());
+		verify(dao, never()).replaceLocationPaths(any(Map.class), any(Map.class));
+	}
+
+	/**
+	 * @verifies count the location paths
+	 * @see AdminUiLocationService#getLocationPathCount()
+	 */
+	@Test
+	public void getLocationPathCount_shouldCountTheLocationPaths() throws Exception {
+		when(dao.countLocationPaths()).thenReturn(4L);
+
+		assertEquals(4L, locationService.getLocationPathCount());
+	}
+
+	/**
+	 * @verifies write the path and depth of every location
+	 * @see AdminUiLocationService#rebuildLocationPaths()
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void rebuildLocationPaths_shouldWriteThePathAndDepthOfEveryLocation() throws Exception {
+		when(dao.getLocationNodes()).thenReturn(
+		    Arrays.asList(new LocationNode(12, 5, "Bed", false), new LocationNode(5, 1, "Ward", false),
+		        new LocationNode(1, null, "Hospital", false), new LocationNode(7, null, "Clinic", true)));
+		ArgumentCaptor<Map> paths = ArgumentCaptor.forClass(Map.class);
+		ArgumentCaptor<Map> depths = ArgumentCaptor.forClass(Map.class);
+
+		assertEquals(4, locationService.rebuildLocationPaths());
+
+		verify(dao).replaceLocationPaths(paths.capture(), depths.capture());
+		assertEquals("/1/5/12/", paths.getValue().get(12));
+		assertEquals("/7/", paths.getValue().get(7));
+		assertEquals(2, depths.getValue().get(12));
+		assertEquals(0, depths.getValue().get(1));
+	}
+
+	private Location retiredLocation(Integer locationId, Date dateRetired, String retireReason) {
+		Location location = new Location(locationId);
+		location.setRetired(true);
+		location.setDateRetired(dateRetired);
+		location.setRetireReason(retireReason);
+		return location;
+	}
+
+}
@@ -0,0 +1,62 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LocationHierarchyTest {
+
+	@Test
+	public void shouldLinkTheNodesToTheirParentsSortedByName() {
+		LocationNode zambia = new LocationNode(1, null, "Zambia", false);
+		LocationNode lusaka = new LocationNode(2, 1, "Lusaka", false);
+		LocationNode chongwe = new LocationNode(3, 2, "chongwe", false);
+		LocationNode chilanga = new LocationNode(4, 2, "Chilanga", true);
+		LocationNode kenya = new LocationNode(5, null, "Kenya", false);
+
+		LocationHierarchy hierarchy = new LocationHierarchy(Arrays.asList(chongwe, zambia, chilanga, lusaka, kenya));
+
+		assertEquals(Arrays.asList(kenya, zambia), hierarchy.getRoots());
+		assertEquals(Arrays.asList(lusaka), zambia.getChildren());
+		assertEquals(Arrays.asList(chilanga, chongwe), lusaka.getChildren());
+		assertSame(chongwe, hierarchy.getNode(3));
+		assertNull(hierarchy.getNode(99));
+		assertEquals(5, hierarchy.size());
+		assertEquals(2, lusaka.getChildCount());
+		assertEquals(0, chongwe.getChildCount());
+	}
+
+	@Test
+	public void shouldMakeANodeWhoseParentIsMissingARoot() {
+		LocationNode orphan = new LocationNode(1, 42, "Orphan", false);
+
+		List<LocationNode> roots = new LocationHierarchy(Arrays.asList(orphan)).getRoots();
+
+		assertEquals(Arrays.asList(orphan), roots);
+	}
+
+	@Test
+	public void shouldSortTheTags() {
+		LocationNode node = new LocationNode(1, null, "Clinic", false);
+		node.getTags().addAll(Arrays.asList("Visit Location", "Login Location", "admission location"));
+
+		new LocationHierarchy(Arrays.asList(node));
+
+		assertEquals(Arrays.asList("admission location", "Login Location", "Visit Location"), node.getTags());
+	}
+
+}
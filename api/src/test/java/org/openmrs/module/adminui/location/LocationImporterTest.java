@@ -0,0 +1,364 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.LocationService;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.validator.LocationValidator;
+import org.springframework.validation.Errors;
+
+public class LocationImporterTest {
+
+	private static final String HEADER = "name,parentName,tags\n";
+
+	private LocationImporter importer;
+
+	private AdminUiLocationService adminLocationService;
+
+	private LocationService locationService;
+
+	private AdministrationService administrationService;
+
+	private LocationTag loginLocation;
+
+	private List<List<Location>> savedChunks;
+
+	private int nextLocationId;
+
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		adminLocationService = mock(AdminUiLocationService.class);
+		Map<String, List<Integer>> idsByName = new HashMap<String, List<Integer>>();
+		idsByName.put("district", Arrays.asList(7));
+		idsByName.put("clinic", Arrays.asList(8, 9));
+		when(adminLocationService.getLocationIdsByName()).thenReturn(idsByName);
+		when(adminLocationService.getLocationIdsByUuid()).thenReturn(new HashMap<String, Integer>());
+		savedChunks = new ArrayList<List<Location>>();
+		nextLocationId = 100;
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				List<Location> locations = (List<Location>) invocation.getArguments()[0];
+				for (Location location : locations) {
+					location.setLocationId(nextLocationId++);
+				}
+				savedChunks.add(locations);
+				return null;
+			}
+		}).when(adminLocationService).saveLocations(anyListOf(Location.class));
+		when(adminLocationService.loadLocations(anyCollectionOf(Integer.class))).thenAnswer(new Answer<List<Location>>() {
+
+			@Override
+			public List<Location> answer(InvocationOnMock invocation) throws Throwable {
+				List<Location> locations = new ArrayList<Location>();
+				for (Integer locationId : (Collection<Integer>) invocation.getArguments()[0]) {
+					locations.add(new Location(locationId));
+				}
+				return locations;
+			}
+		});
+
+		locationService = mock(LocationService.class);
+		loginLocation = new LocationTag();
+		loginLocation.setLocationTagId(1);
+		loginLocation.setName("Login Location");
+		when(locationService.getAllLocationTags(false)).thenReturn(Arrays.asList(loginLocation));
+		when(adminLocationService.loadLocationTags(Collections.singleton(1))).thenReturn(Arrays.asList(loginLocation));
+
+		administrationService = mock(AdministrationService.class);
+		when(administrationService.getGlobalProperty(AdminUiConstants.GP_LOCATION_IMPORT_CHUNK_SIZE)).thenReturn("10");
+
+		LocationValidator validator = mock(LocationValidator.class);
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				if (((Location) invocation.getArguments()[0]).getName() == null) {
+					((Errors) invocation.getArguments()[1]).reject("error.name");
+				}
+				return null;
+			}
+		}).when(validator).validate(any(), any(Errors.class));
+
+		importer = new LocationImporter();
+		importer.setAdminLocationService(adminLocationService);
+		importer.setLocationService(locationService);
+		importer.setAdministrationService(administrationService);
+		importer.setLocationValidator(validator);
+	}
+
+	/**
+	 * @verifies save the parents before their children whatever the order of the rows
+	 * @see LocationImporter#importCsv(java.io.Reader)
+	 */
+	@Test
+	public void importCsv_shouldSaveTheParentsBeforeTheirChildrenWhateverTheOrderOfTheRows() throws Exception {
+		String csv = HEADER + "Bed 1,Ward,\n" + "Ward,Hospital,\n" + "Hospital,District,\n";
+
+		LocationImportResult result = importer.importCsv(new StringReader(csv));
+
+		assertEquals(3, result.getRowCount());
+		assertEquals(3, result.getImportedCount());
+		assertTrue(result.getErrorsByRow().isEmpty());
+		List<Location> saved = savedChunks.get(0);
+		assertEquals("Hospital", saved.get(0).getName());
+		assertEquals(Integer.valueOf(7), saved.get(0).getParentLocation().getLocationId());
+		assertEquals("Ward", saved.get(1).getName());
+		assertSame(saved.get(0), saved.get(1).getParentLocation());
+		assertEquals("Bed 1", saved.get(2).getName());
+		assertSame(saved.get(1), saved.get(2).getParentLocation());
+	}
+
+	/**
+	 * @verifies save the locations in chunks of the configured size
+	 * @see LocationImporter#importCsv(java.io.Reader)
+	 */
+	@Test
+	public void importCsv_shouldSaveTheLocationsInChunksOfTheConfiguredSize() throws Exception {
+		when(administrationService.getGlobalProperty(AdminUiConstants.GP_LOCATION_IMPORT_CHUNK_SIZE)).thenReturn("2");
+		String csv = HEADER + "Hospital,,\n" + "Pharmacy,,\n" + "Ward,Hospital,\n";
+
+		LocationImportResult result = importer.importCsv(new StringReader(csv));
+
+		assertEquals(3, result.getImportedCount());
+		verify(adminLocationService, times(2)).saveLocations(anyListOf(Location.class));
+		Location ward = savedChunks.get(1).get(0);
+		assertEquals("Ward", ward.getName());
+		assertEquals(savedChunks.get(0).get(0).getLocationId(), ward.getParentLocation().getLocationId());
+	}
+
+	/**
+	 * @verifies resolve the parents and tags from maps loaded once
+	 * @see LocationImporter#importCsv(java.io.Reader)
+	 */
+	@Test
+	public void importCsv_shouldResolveTheParentsAndTagsFromMapsLoadedOnce() throws Exception {
+		when(administrationService.getGlobalProperty(AdminUiConstants.GP_LOCATION_IMPORT_CHUNK_SIZE)).thenReturn("1");
+		String csv = HEADER + "Hospital,district,login location\n" + "Ward,DISTRICT,Login Location\n";
+
+		importer.importCsv(new StringReader(csv));
+
+		assertEquals(2, savedChunks.size());
+		for (List<Location> chunk : savedChunks) {
+			assertEquals(Integer.valueOf(7), chunk.get(0).getParentLocation().getLocationId());
+			assertTrue(chunk.get(0).getTags().contains(loginLocation));
+		}
+		verify(adminLocationService, times(1)).getLocationIdsByName();
+		verify(adminLocationService, times(1)).getLocationIdsByUuid();
+		verify(locationService, times(1)).getAllLocationTags(false);
+	}
+
+	/**
+	 * @verifies report the rows that fail and the rows under them
+	 * @see LocationImporter#importCsv(java.io.Reader)
+	 */
+	@Test
+	public void importCsv_shouldReportTheRowsThatFailAndTheRowsUnderThem() throws Exception {
+		String csv = HEADER + "Hospital,,\n" + ",Hospital,\n" + "Bed,Unknown,\n" + "Lab,Hospital,Unknown Tag\n"
+		        + "Room,Clinic,\n";
+
+		LocationImportResult result = importer.importCsv(new StringReader(csv));
+
+		assertEquals(1, result.getImportedCount());
+		assertEquals(4, result.getErrorsByRow().size());
+		assertEquals("error.name", result.getErrorsByRow().get(3).get(0).getCode());
+		assertEquals("adminui.location.import.error.parentNotFound", result.getErrorsByRow().get(4).get(0).getCode());
+		assertEquals("adminui.location.import.error.unknownTag", result.getErrorsByRow().get(5).get(0).getCode());
+		assertEquals("adminui.location.import.error.parentAmbiguous", result.getErrorsByRow().get(6).get(0).getCode());
+	}
+
+	/**
+	 * @verifies report a cycle of parents
+	 * @see LocationImporter#importCsv(java.io.Reader)
+	 */
+	@Test
+	public void importCsv_shouldReportACycleOfParents() throws Exception {
+		String csv = HEADER + "Ward A,Ward B,\n" + "Ward B,Ward A,\n" + "Hospital,,\n";
+
+		LocationImportResult result = importer.importCsv(new StringReader(csv));
+
+		assertEquals(1, result.getImportedCount());
+		assertEquals("adminui.location.import.error.cycle", result.getErrorsByRow().get(2).get(0).getCode());
+		assertEquals("adminui.location.import.error.cycle", result.getErrorsByRow().get(3).get(0).getCode());
+	}
+
+	/**
+	 * @verifies save the locations of a failed chunk one by one
+	 * @see LocationImporter#importCsv(java.io.Reader)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void importCsv_shouldSaveTheLocationsOfAFailedChunkOneByOne() throws Exception {
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				List<Location> locations = (List<Location>) invocation.getArguments()[0];
+				if (locations.size() > 1 || "Duplicate".equals(locations.get(0).getName())) {
+					throw new APIException("duplicate uuid");
+				}
+				locations.get(0).setLocationId(nextLocationId++);
+				return null;
+			}
+		}).when(adminLocationService).saveLocations(anyListOf(Location.class));
+		String csv = HEADER + "Hospital,,\n" + "Duplicate,,\n" + "Ward,Hospital,\n" + "Bed,Duplicate,\n";
+
+		LocationImportResult result = importer.importCsv(new StringReader(csv));
+
+		assertEquals(2, result.getImportedCount());
+		assertEquals("adminui.location.import.error.save.fail", result.getErrorsByRow().get(3).get(0).getCode());
+		assertEquals("adminui.location.import.error.parentFailed", result.getErrorsByRow().get(5).get(0).getCode());
+		verify(adminLocationService, times(4)).saveLocations(anyListOf(Location.class));
+	}
+
+	/**
+	 * @verifies clear the session before saving the locations of a failed chunk one by one
+	 * @see LocationImporter#importCsv(java.io.Reader)
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void importCsv_shouldClearTheSessionBeforeSavingTheLocationsOfAFailedChunkOneByOne() throws Exception {
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				List<Location> locations = (List<Location>) invocation.getArguments()[0];
+				if (locations.size() > 1) {
+					throw new APIException("duplicate uuid");
+				}
+				locations.get(0).setLocationId(nextLocationId++);
+				return null;
+			}
+		}).when(adminLocationService).saveLocations(anyListOf(Location.class));
+		String csv = HEADER + "Hospital,District,Login Location\n" + "Ward,Hospital,\n";
+
+		LocationImportResult result = importer.importCsv(new StringReader(csv));
+
+		assertEquals(2, result.getImportedCount());
+		InOrder inOrder = inOrder(adminLocationService);
+		inOrder.verify(adminLocationService).saveLocations(anyListOf(Location.class));
+		inOrder.verify(adminLocationService).clearSession();
+		inOrder.verify(adminLocationService).loadLocations(Collections.singleton(7));
+		inOrder.verify(adminLocationService).loadLocationTags(Collections.singleton(1));
+		inOrder.verify(adminLocationService).saveLocations(anyListOf(Location.class));
+		// the hospital saved on its own is referred to by a reference loaded after it was saved
+		inOrder.verify(adminLocationService).loadLocations(Collections.singleton(100));
+		inOrder.verify(adminLocationService).saveLocations(anyListOf(Location.class));
+	}
+
+	/**
+	 * @verifies report a parent name shared by a row and an existing location
+	 * @see LocationImporter#importCsv(java.io.Reader)
+	 */
+	@Test
+	public void importCsv_shouldReportAParentNameSharedByARowAndAnExistingLocation() throws Exception {
+		String csv = HEADER + "District,,\n" + "Hospital,District,\n";
+
+		LocationImportResult result = importer.importCsv(new StringReader(csv));
+
+		assertEquals(1, result.getImportedCount());
+		assertEquals("adminui.location.import.error.parentAmbiguous", result.getErrorsByRow().get(3).get(0).getCode());
+	}
+
+	/**
+	 * @verifies fail if the name column is missing
+	 * @see LocationImporter#importCsv(java.io.Reader)
+	 */
+	@Test(expected = APIException.class)
+	public void importCsv_shouldFailIfTheNameColumnIsMissing() throws Exception {
+		importer.importCsv(new StringReader("description\nA hospital\n"));
+	}
+
+	/**
+	 * @verifies fail if the file has more than the maximum number of rows
+	 * @see LocationImporter#importCsv(java.io.Reader)
+	 */
+	@Test(expected = APIException.class)
+	public void importCsv_shouldFailIfTheFileHasMoreThanTheMaximumNumberOfRows() throws Exception {
+		StringBuilder csv = new StringBuilder("name\n");
+		for (int i = 0; i <= LocationImporter.MAX_ROWS; i++) {
+			csv.append("Location ").append(i).append("\n");
+		}
+
+		try {
+			importer.importCsv(new StringReader(csv.toString()));
+		}
+		finally {
+			verify(adminLocationService, never()).saveLocations(anyListOf(Location.class));
+		}
+	}
+
+	/**
+	 * @verifies save the nested locations under their parents
+	 * @see LocationImporter#importJson(java.io.Reader)
+	 */
+	@Test
+	public void importJson_shouldSaveTheNestedLocationsUnderTheirParents() throws Exception {
+		String json = "[{\"name\": \"Hospital\", \"parentName\": \"District\", \"tags\": [\"Login Location\"],"
+		        + " \"children\": [{\"name\": \"Ward\", \"children\": [{\"name\": \"Bed\"}]}]}, {\"name\": \"Lab\"}]";
+
+		LocationImportResult result = importer.importJson(new StringReader(json));
+
+		assertEquals(4, result.getRowCount());
+		assertEquals(4, result.getImportedCount());
+		List<Location> saved = savedChunks.get(0);
+		assertEquals("Hospital", saved.get(0).getName());
+		assertEquals(Integer.valueOf(7), saved.get(0).getParentLocation().getLocationId());
+		assertTrue(saved.get(0).getTags().contains(loginLocation));
+		assertEquals("Lab", saved.get(1).getName());
+		assertEquals("Ward", saved.get(2).getName());
+		assertSame(saved.get(0), saved.get(2).getParentLocation());
+		assertSame(saved.get(2), saved.get(3).getParentLocation());
+	}
+
+	/**
+	 * @verifies fail if the document is not an object or an array
+	 * @see LocationImporter#importJson(java.io.Reader)
+	 */
+	@Test(expected = APIException.class)
+	public void importJson_shouldFailIfTheDocumentIsNotAnObjectOrAnArray() throws Exception {
+		importer.importJson(new StringReader("\"Hospital\""));
+	}
+
+}
@@ -0,0 +1,64 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocationNameIndexTest {
+
+	private LocationNameIndex index;
+
+	@Before
+	public void setup() {
+		index = new LocationNameIndex(Arrays.asList(new LocationNode(1, null, "Kenya", false), new LocationNode(2, 1,
+		        "Eldoret (Moi) Hospital", false), new LocationNode(3, 2, "Outpatient-Clinic", false), new LocationNode(4,
+		        2, "Old clinic", true), new LocationNode(5, 1, "clinical Lab", false)));
+	}
+
+	@Test
+	public void shouldFindTheLocationsWithAWordStartingWithTheQuery() {
+		assertEquals(Arrays.asList(5, 3), locationIds(index.search("CLIN", false)));
+		assertEquals(Arrays.asList(5, 4, 3), locationIds(index.search("clin", true)));
+		assertEquals(Arrays.asList(2), locationIds(index.search("moi", false)));
+		assertEquals(Arrays.asList(3), locationIds(index.search(" outpatient-c", false)));
+		assertTrue(index.search("linic", true).isEmpty());
+	}
+
+	@Test
+	public void shouldReturnAllTheLocationsByNameForABlankQuery() {
+		assertEquals(Arrays.asList(5, 2, 1, 3), locationIds(index.search(" ", false)));
+		assertEquals(5, index.size());
+	}
+
+	@Test
+	public void shouldFillInTheParentLocationNames() {
+		List<LocationNode> results = index.search("outpatient", false);
+		assertEquals("Eldoret (Moi) Hospital", results.get(0).getParentLocationName());
+		assertNull(index.search("kenya", false).get(0).getParentLocationName());
+	}
+
+	private List<Integer> locationIds(List<LocationNode> nodes) {
+		List<Integer> ret = new ArrayList<Integer>();
+		for (LocationNode node : nodes) {
+			ret.add(node.getLocationId());
+		}
+		return ret;
+	}
+
+}
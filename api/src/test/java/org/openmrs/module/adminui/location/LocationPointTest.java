@@ -0,0 +1,42 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LocationPointTest {
+
+	@Test
+	public void shouldParseTheCoordinatesOfALocation() {
+		LocationPoint point = LocationPoint.valueOf(1, "Kampala", " 0.3476", "32.5825 ");
+		assertEquals(0.3476, point.getLatitude(), 0);
+		assertEquals(32.5825, point.getLongitude(), 0);
+	}
+
+	@Test
+	public void shouldRejectCoordinatesThatAreMissingOrOutOfRange() {
+		assertNull(LocationPoint.valueOf(1, "Kampala", null, "32.5825"));
+		assertNull(LocationPoint.valueOf(1, "Kampala", "north", "32.5825"));
+		assertNull(LocationPoint.valueOf(1, "Kampala", "91", "32.5825"));
+		assertNull(LocationPoint.valueOf(1, "Kampala", "0.3476", "-181"));
+	}
+
+	@Test
+	public void shouldRejectCoordinatesThatAreNotFinite() {
+		assertNull(LocationPoint.valueOf(1, "Kampala", "NaN", "32.5825"));
+		assertNull(LocationPoint.valueOf(1, "Kampala", "0.3476", "NaN"));
+		assertNull(LocationPoint.valueOf(1, "Kampala", "Infinity", "32.5825"));
+		assertNull(LocationPoint.valueOf(1, "Kampala", "0.3476", "-Infinity"));
+	}
+
+}
@@ -0,0 +1,103 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocationSpatialIndexTest {
+
+	private LocationSpatialIndex index;
+
+	@Before
+	public void setup() {
+		index = new LocationSpatialIndex(Arrays.asList(new LocationPoint(1, "Kampala", 0.3476, 32.5825), new LocationPoint(2,
+		        "Kampala Annex", 0.3480, 32.5830), new LocationPoint(3, "Entebbe", 0.0512, 32.4637), new LocationPoint(4,
+		        "Nairobi", -1.2921, 36.8219), new LocationPoint(5, "Fiji East", -17.0, 179.9995), new LocationPoint(6,
+		        "Fiji West", -17.0, -179.9995)));
+	}
+
+	@Test
+	public void shouldFindTheNearestLocationsNearestFirst() {
+		assertEquals(Arrays.asList(1, 2, 3), locationIds(index.getNearest(0.3476, 32.5825, 3)));
+		assertEquals(Arrays.asList(4), locationIds(index.getNearest(-1.3, 36.8, 1)));
+		assertEquals(6, index.getNearest(0, 0, 10).size());
+		assertTrue(index.getNearest(0, 0, 0).isEmpty());
+	}
+
+	@Test
+	public void shouldMeasureTheGreatCircleDistanceInMetres() {
+		List<NearbyLocation> nearest = index.getNearest(0.3476, 32.5825, 3);
+		assertEquals(0, nearest.get(0).getDistance(), 0.01);
+		assertEquals(71, nearest.get(1).getDistance(), 1);
+		assertEquals(35500, nearest.get(2).getDistance(), 100);
+	}
+
+	@Test
+	public void shouldFindTheLocationsWithinADistance() {
+		assertEquals(Arrays.asList(1, 2), locationIds(index.getWithinDistance(0.3476, 32.5825, 100)));
+		assertEquals(Arrays.asList(1, 2, 3), locationIds(index.getWithinDistance(0.3476, 32.5825, 50000)));
+		assertTrue(index.getWithinDistance(10, 10, 1000).isEmpty());
+	}
+
+	@Test
+	public void shouldFindLocationsAcrossTheAntimeridian() {
+		assertEquals(Arrays.asList(5, 6), locationIds(index.getWithinDistance(-17.0, 179.9995, 200)));
+	}
+
+	@Test
+	public void shouldFindTheSameLocationsAsComparingEveryLocation() {
+		Random random = new Random(7);
+		List<LocationPoint> points = new ArrayList<LocationPoint>();
+		for (int i = 0; i < 2000; i++) {
+			points.add(new LocationPoint(i, "Location " + i, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+		}
+		LocationSpatialIndex randomIndex = new LocationSpatialIndex(points);
+
+		for (int i = 0; i < 50; i++) {
+			double latitude = random.nextDouble() * 180 - 90;
+			double longitude = random.nextDouble() * 360 - 180;
+			NearbyLocation nearest = randomIndex.getNearest(latitude, longitude, 1).get(0);
+			double expected = Double.MAX_VALUE;
+			for (LocationPoint point : points) {
+				expected = Math.min(expected, new LocationSpatialIndex(Arrays.asList(point)).getNearest(latitude,
+				    longitude, 1).get(0).getDistance());
+			}
+			assertEquals(expected, nearest.getDistance(), 0.001);
+		}
+	}
+
+	@Test
+	public void shouldParseOnlyValidCoordinates() {
+		assertNotNull(LocationPoint.valueOf(1, "Kampala", "0.3476", " 32.5825 "));
+		assertNull(LocationPoint.valueOf(1, "Kampala", "0.3476", null));
+		assertNull(LocationPoint.valueOf(1, "Kampala", "north", "32.5825"));
+		assertNull(LocationPoint.valueOf(1, "Kampala", "91", "32.5825"));
+	}
+
+	private List<Integer> locationIds(List<NearbyLocation> locations) {
+		List<Integer> ret = new ArrayList<Integer>();
+		for (NearbyLocation location : locations) {
+			ret.add(location.getLocation().getLocationId());
+		}
+		return ret;
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.lang.reflect.Method;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+import org.openmrs.api.LocationService;
+
+public class LocationVersionAdviceTest {
+	
+	private AdminUiLocationService adminLocationService;
+	
+	private LocationVersion locationVersion;
+	
+	private LocationVersionAdvice advice;
+	
+	@Before
+	public void setup() {
+		adminLocationService = mock(AdminUiLocationService.class);
+		locationVersion = new LocationVersion();
+		advice = new LocationVersionAdvice() {
+			
+			@Override
+			AdminUiLocationService getAdminLocationService() {
+				return adminLocationService;
+			}
+			
+			@Override
+			LocationVersion getLocationVersion() {
+				return locationVersion;
+			}
+		};
+	}
+	
+	/**
+	 * @verifies refresh the path of a saved location
+	 * @see LocationVersionAdvice#afterReturning(Object, Method, Object[], Object)
+	 */
+	@Test
+	public void afterReturning_shouldRefreshThePathOfASavedLocation() throws Throwable {
+		Location location = new Location(5);
+		
+		advice.afterReturning(location, LocationService.class.getMethod("saveLocation", Location.class),
+		    new Object[] { location }, null);
+		
+		verify(adminLocationService).refreshLocationPath(location);
+	}
+	
+	/**
+	 * @verifies remove the path of a purged location
+	 * @see LocationVersionAdvice#afterReturning(Object, Method, Object[], Object)
+	 */
+	@Test
+	public void afterReturning_shouldRemoveThePathOfAPurgedLocation() throws Throwable {
+		Location location = new Location(5);
+		
+		advice.afterReturning(null, LocationService.class.getMethod("purgeLocation", Location.class),
+		    new Object[] { location }, null);
+		
+		verify(adminLocationService).removeLocationPath(location);
+	}
+	
+	/**
+	 * @verifies only change the version for a saved location tag
+	 * @see LocationVersionAdvice#afterReturning(Object, Method, Object[], Object)
+	 */
+	@Test
+	public void afterReturning_shouldOnlyChangeTheVersionForASavedLocationTag() throws Throwable {
+		LocationTag tag = new LocationTag(1);
+		long version = locationVersion.getVersion();
+		
+		advice.afterReturning(tag, LocationService.class.getMethod("saveLocationTag", LocationTag.class),
+		    new Object[] { tag }, null);
+		
+		verifyZeroInteractions(adminLocationService);
+		assertEquals(version + 1, locationVersion.getVersion());
+	}
+	
+}
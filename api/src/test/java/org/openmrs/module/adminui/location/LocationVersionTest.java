@@ -0,0 +1,83 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class LocationVersionTest {
+
+	@After
+	public void clearSynchronization() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	public void shouldChangeRightAwayOutsideOfATransaction() {
+		LocationVersion locationVersion = new LocationVersion();
+		long version = locationVersion.getVersion();
+
+		locationVersion.locationsChanged();
+
+		assertEquals(version + 1, locationVersion.getVersion());
+	}
+
+	@Test
+	public void shouldOnlyChangeOnceTheTransactionCompletes() {
+		LocationVersion locationVersion = new LocationVersion();
+		long version = locationVersion.getVersion();
+		TransactionSynchronizationManager.initSynchronization();
+
+		locationVersion.locationsChanged();
+		assertEquals(version, locationVersion.getVersion());
+
+		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+		}
+		assertEquals(version + 1, locationVersion.getVersion());
+	}
+
+	@Test
+	public void shouldQuoteTheCurrentVersionInTheETag() {
+		LocationVersion locationVersion = new LocationVersion();
+
+		assertEquals("\"" + locationVersion.getVersion() + "\"", locationVersion.getETag());
+	}
+
+	@Test
+	public void shouldMatchTheEntityTagAmongSeveral() {
+		assertTrue(LocationVersion.matches("\"1\", \"2\"", "\"2\""));
+		assertTrue(LocationVersion.matches("*", "\"2\""));
+	}
+
+	@Test
+	public void shouldMatchAWeakEntityTag() {
+		assertTrue(LocationVersion.matches("W/\"2\"", "\"2\""));
+	}
+
+	@Test
+	public void shouldNotMatchAnOlderVersion() {
+		assertFalse(LocationVersion.matches("\"1\"", "\"2\""));
+	}
+
+	@Test
+	public void shouldNotMatchAMissingHeader() {
+		assertFalse(LocationVersion.matches(null, "\"2\""));
+	}
+
+}
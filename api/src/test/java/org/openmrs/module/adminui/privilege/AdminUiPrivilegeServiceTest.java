@@ -0,0 +1,83 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.privilege;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Privilege;
+import org.openmrs.module.adminui.PagedResult;
+import org.openmrs.module.adminui.privilege.db.AdminUiPrivilegeDAO;
+
+public class AdminUiPrivilegeServiceTest {
+
+	private AdminUiPrivilegeServiceImpl privilegeService;
+
+	private AdminUiPrivilegeDAO dao;
+
+	@Before
+	public void setup() {
+		dao = mock(AdminUiPrivilegeDAO.class);
+		privilegeService = new AdminUiPrivilegeServiceImpl();
+		privilegeService.setDao(dao);
+	}
+
+	/**
+	 * @verifies return the page of privileges and the total count
+	 * @see AdminUiPrivilegeService#getPrivileges(String, String, int, int)
+	 */
+	@Test
+	public void getPrivileges_shouldReturnThePageOfPrivilegesAndTheTotalCount() throws Exception {
+		Privilege viewApps = new Privilege("App: View Apps");
+		Privilege viewForms = new Privilege("App: View Forms");
+		when(dao.getPrivileges("view", "App:", 10, 2)).thenReturn(Arrays.asList(viewApps, viewForms));
+		when(dao.getPrivilegeCount("view", "App:")).thenReturn(13L);
+
+		PagedResult<Privilege> page = privilegeService.getPrivileges("view", "App:", 10, 2);
+
+		assertEquals(Arrays.asList(viewApps, viewForms), page.getResults());
+		assertEquals(13, page.getTotalCount());
+	}
+
+	/**
+	 * @verifies not count the privileges when the first page is not full
+	 * @see AdminUiPrivilegeService#getPrivileges(String, String, int, int)
+	 */
+	@Test
+	public void getPrivileges_shouldNotCountThePrivilegesWhenTheFirstPageIsNotFull() throws Exception {
+		when(dao.getPrivileges("patient", null, 0, 10)).thenReturn(
+		    Arrays.asList(new Privilege("Add Patients"), new Privilege("View Patients")));
+
+		PagedResult<Privilege> page = privilegeService.getPrivileges("patient", null, 0, 10);
+
+		assertEquals(2, page.getTotalCount());
+		verify(dao, never()).getPrivilegeCount(anyString(), anyString());
+	}
+
+	/**
+	 * @verifies count all the privileges
+	 * @see AdminUiPrivilegeService#getPrivilegeCount()
+	 */
+	@Test
+	public void getPrivilegeCount_shouldCountAllThePrivileges() throws Exception {
+		when(dao.getPrivilegeCount(null, null)).thenReturn(42L);
+
+		assertEquals(42L, privilegeService.getPrivilegeCount());
+	}
+
+}
@@ -0,0 +1,63 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.privilege.db.hibernate;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class HibernateAdminUiPrivilegeDAOTest {
+	
+	private HibernateAdminUiPrivilegeDAO dao;
+	
+	private Session session;
+	
+	private Query query;
+	
+	@Before
+	public void setup() {
+		session = mock(Session.class);
+		query = mock(Query.class);
+		when(session.createQuery(anyString())).thenReturn(query);
+		when(query.list()).thenReturn(new ArrayList<Object>());
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		when(sessionFactory.getCurrentSession()).thenReturn(session);
+		dao = new HibernateAdminUiPrivilegeDAO();
+		dao.setSessionFactory(sessionFactory);
+	}
+	
+	/**
+	 * @verifies match the wildcards in the query and prefix literally
+	 * @see HibernateAdminUiPrivilegeDAO#getPrivileges(String, String, int, int)
+	 */
+	@Test
+	public void getPrivileges_shouldMatchTheWildcardsInTheQueryAndPrefixLiterally() throws Exception {
+		dao.getPrivileges(" 100%_Done! ", "Task_", 0, 10);
+		
+		ArgumentCaptor<String> hql = ArgumentCaptor.forClass(String.class);
+		verify(session).createQuery(hql.capture());
+		assertTrue(hql.getValue().contains("p.privilege like :prefix escape '!'"));
+		assertTrue(hql.getValue().contains("lower(p.description) like :query escape '!'"));
+		verify(query).setString("prefix", "Task!_%");
+		verify(query).setString("query", "%100!%!_done!!%");
+	}
+	
+}
@@ -0,0 +1,55 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class CsvReaderTest {
+	
+	@Test
+	public void readNext_shouldReadOneRecordAtATime() throws Exception {
+		CsvReader reader = new CsvReader(new StringReader("a,b,c\r\n1,,3\n"));
+		assertArrayEquals(new String[] { "a", "b", "c" }, reader.readNext());
+		assertArrayEquals(new String[] { "1", "", "3" }, reader.readNext());
+		assertNull(reader.readNext());
+		assertEquals(2, reader.getRecordNumber());
+	}
+	
+	@Test
+	public void readNext_shouldReadQuotedValues() throws Exception {
+		CsvReader reader = new CsvReader(new StringReader("\"Jones, Mark\",\"say \"\"hi\"\"\",\"two\nlines\"\nlast"));
+		assertArrayEquals(new String[] { "Jones, Mark", "say \"hi\"", "two\nlines" }, reader.readNext());
+		assertArrayEquals(new String[] { "last" }, reader.readNext());
+		assertNull(reader.readNext());
+	}
+	
+	@Test(expected = IOException.class)
+	public void readNext_shouldFailOnAnUnterminatedQuotedValue() throws Exception {
+		new CsvReader(new StringReader("\"open,value")).readNext();
+	}
+	
+	@Test
+	public void readNext_shouldReadWhatTheCsvWriterWrote() throws Exception {
+		String[] values = { "plain", "with, comma", "with \"quotes\"", "two\nlines", "" };
+		StringWriter out = new StringWriter();
+		new CsvWriter(out).writeNext(values);
+		
+		assertArrayEquals(values, new CsvReader(new StringReader(out.toString())).readNext());
+	}
+	
+}
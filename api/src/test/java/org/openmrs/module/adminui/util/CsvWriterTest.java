@@ -0,0 +1,44 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class CsvWriterTest {
+	
+	/**
+	 * @verifies quote values containing separators, quotes or line breaks
+	 * @see CsvWriter#writeNext(String...)
+	 */
+	@Test
+	public void writeNext_shouldQuoteValuesContainingSeparatorsQuotesOrLineBreaks() throws Exception {
+		StringWriter out = new StringWriter();
+		new CsvWriter(out).writeNext("plain", "Jones, Mark", "say \"hi\"", null);
+		
+		assertEquals("plain,\"Jones, Mark\",\"say \"\"hi\"\"\",\r\n", out.toString());
+	}
+	
+	/**
+	 * @verifies prefix values starting with a formula character with a single quote
+	 * @see CsvWriter#writeNext(String...)
+	 */
+	@Test
+	public void writeNext_shouldPrefixValuesStartingWithAFormulaCharacterWithASingleQuote() throws Exception {
+		StringWriter out = new StringWriter();
+		new CsvWriter(out).writeNext("=1+2", "+1", "-1", "@SUM(A1)", "a=b");
+		
+		assertEquals("'=1+2,'+1,'-1,'@SUM(A1),a=b\r\n", out.toString());
+	}
+	
+}
@@ -9,9 +9,19 @@
  */
 package org.openmrs.module.adminui.fragment.controller.account;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
 import org.openmrs.Person;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.module.adminui.PagedResult;
 import org.openmrs.module.adminui.account.Account;
 import org.openmrs.module.adminui.account.AccountService;
+import org.openmrs.module.adminui.account.AccountSummary;
+import org.openmrs.ui.framework.SimpleObject;
 import org.openmrs.ui.framework.UiUtils;
 import org.openmrs.ui.framework.annotation.SpringBean;
 import org.openmrs.ui.framework.fragment.action.FailureResult;
@@ -24,6 +34,48 @@ import org.springframework.web.bind.annotation.RequestParam;
  */
 public class AccountFragmentController {
 	
+	/**
+	 * The sort keys for the sortable columns of the accounts table in manageAccounts.gsp, indexed
+	 * by column
+	 */
+	private static final String[] SORT_COLUMNS = { AccountService.SORT_BY_NAME, AccountService.SORT_BY_USERNAME, null,
+	        AccountService.SORT_BY_GENDER, null, AccountService.SORT_BY_PERSON_ID, null };
+	
+	/**
+	 * Server side data source for the accounts DataTable, it only loads the accounts in the
+	 * requested page, which is limited to {@link PagedResult#MAX_PAGE_SIZE} rows
+	 */
+	public SimpleObject getAccounts(@RequestParam(value = "sSearch", required = false) String query,
+	                                @RequestParam(value = "iSortCol_0", defaultValue = "0") int sortColumn,
+	                                @RequestParam(value = "iDisplayStart", defaultValue = "0") int startIndex,
+	                                @RequestParam(value = "iDisplayLength", defaultValue = "10") int length,
+	                                @RequestParam(value = "sEcho", required = false) String echo,
+	                                @SpringBean("adminAccountService") AccountService accountService, UiUtils ui) {
+		
+		String sortBy = null;
+		if (sortColumn >= 0 && sortColumn < SORT_COLUMNS.length) {
+			sortBy = SORT_COLUMNS[sortColumn];
+		}
+		
+		PagedResult<AccountSummary> page = accountService.getAccounts(query, sortBy, Math.max(startIndex, 0),
+		    PagedResult.getPageSize(length));
+		List<List<String>> rows = new ArrayList<List<String>>();
+		for (AccountSummary account : page.getResults()) {
+			String name = StringUtils.join(new String[] { account.getGivenName(), account.getFamilyName() }, " ");
+			String editLink = "<a href=\"" + ui.pageLink("adminui", "systemadmin/accounts/account",
+			    SimpleObject.create("personId", account.getPersonId())) + "\"><button>" + ui.message("general.edit")
+			        + "</button></a>";
+			String privilegeLevel = StringUtils.removeStart(account.getPrivilegeLevel(),
+			    AdminUiConstants.ROLE_PREFIX_PRIVILEGE_LEVEL);
+			rows.add(Arrays.asList(escape(name.trim()), escape(account.getUsername()), escape(privilegeLevel),
+			    escape(account.getGender()), escape(StringUtils.join(account.getProviderRoles(), ", ")),
+			    String.valueOf(account.getPersonId()), editLink));
+		}
+		
+		return SimpleObject.create("sEcho", echo, "iTotalRecords", page.getTotalCount(), "iTotalDisplayRecords",
+		    page.getTotalCount(), "aaData", rows);
+	}
+	
 	public FragmentActionResult unlock(@RequestParam("personId") Person person,
 	                                   @SpringBean("adminAccountService") AccountService accountService, UiUtils ui) {
 		
@@ -37,4 +89,8 @@ public class AccountFragmentController {
 		}
 	}
 	
+	private String escape(String value) {
+		return StringEscapeUtils.escapeHtml(value);
+	}
+	
 }
@@ -0,0 +1,271 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.fragment.controller.location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Location;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.adminui.AdminUiConstants;
+import org.openmrs.module.adminui.PagedResult;
+import org.openmrs.module.adminui.location.AdminUiLocationService;
+import org.openmrs.module.adminui.location.LocationNode;
+import org.openmrs.module.adminui.location.LocationVersion;
+import org.openmrs.module.adminui.location.NearbyLocation;
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+import org.openmrs.ui.framework.annotation.SpringBean;
+import org.openmrs.util.PrivilegeConstants;
+import org.springframework.web.bind.annotation.RequestParam;
+
+public class LocationFragmentController {
+	
+	private static final double DEFAULT_NEARBY_DISTANCE = 100;
+	
+	private static final int MAX_NEARBY_LOCATIONS = 10;
+	
+	protected final Log log = LogFactory.getLog(getClass());
+	
+	/**
+	 * The sort keys for the sortable columns of the locations table in manageLocations.gsp, indexed
+	 * by column
+	 */
+	private static final String[] SORT_COLUMNS = { AdminUiLocationService.SORT_BY_NAME,
+	        AdminUiLocationService.SORT_BY_DESCRIPTION, AdminUiLocationService.SORT_BY_PARENT, null, null };
+	
+	/**
+	 * Server side data source for the locations DataTable, it only loads the locations in the
+	 * requested page and their tags
+	 */
+	public SimpleObject getLocations(@RequestParam(value = "sSearch", required = false) String query,
+	                                 @RequestParam(value = "locationTagId", required = false) Integer locationTagId,
+	                                 @RequestParam(value = "parentLocationId", required = false) Integer parentLocationId,
+	                                 @RequestParam(value = "iSortCol_0", defaultValue = "0") int sortColumn,
+	                                 @RequestParam(value = "iDisplayStart", defaultValue = "0") int startIndex,
+	                                 @RequestParam(value = "iDisplayLength", defaultValue = "10") int length,
+	                                 @RequestParam(value = "sEcho", required = false) String echo,
+	                                 @SpringBean("adminLocationService") AdminUiLocationService locationService,
+	                                 UiUtils ui) {
+		Context.requirePrivilege(PrivilegeConstants.VIEW_LOCATIONS);
+		
+		String sortBy = null;
+		if (sortColumn >= 0 && sortColumn < SORT_COLUMNS.length) {
+			sortBy = SORT_COLUMNS[sortColumn];
+		}
+		
+		PagedResult<LocationNode> page = locationService.getLocations(query, locationTagId, parentLocationId, false,
+		    sortBy, startIndex, length);
+		List<List<String>> rows = new ArrayList<List<String>>();
+		for (LocationNode node : page.getResults()) {
+			String editLink = "<i class=\"icon-pencil edit-action\" title=\"" + escape(ui.message("general.edit"))
+			        + "\" onclick=\"location.href='" + ui.pageLink("adminui", "metadata/locations/location",
+			            SimpleObject.create("locationId", node.getLocationId())) + "'\"></i>";
+			rows.add(Arrays.asList(escape(node.getName()), escape(node.getDescription()),
+			    escape(node.getParentLocationName()), escape(StringUtils.join(node.getTags(), ", ")), editLink));
+		}
+		
+		return SimpleObject.create("sEcho", echo, "iTotalRecords", page.getTotalCount(), "iTotalDisplayRecords",
+		    page.getTotalCount(), "aaData", rows);
+	}
+	
+	/**
+	 * Data source of the location hierarchy page, which expands the tree one level at a time. Each
+	 * node has the number of children it has, so the page knows which nodes can be expanded without
+	 * loading their children.
+	 * <p>
+	 * The {@link LocationVersion} is the ETag of the response, so a browser that already has the
+	 * current level gets an empty 304 response.
+	 */
+	public List<SimpleObject> getChildLocations(@RequestParam(value = "parentId", required = false) Integer parentId,
+	                                            @SpringBean("adminLocationService") AdminUiLocationService locationService,
+	                                            @SpringBean("adminLocationVersion") LocationVersion locationVersion,
+	                                            HttpServletRequest request, HttpServletResponse response) {
+		Context.requirePrivilege(PrivilegeConstants.VIEW_LOCATIONS);
+		
+		String etag = locationVersion.getETag();
+		response.setHeader("ETag", etag);
+		response.setHeader("Cache-Control", "no-cache");
+		if (LocationVersion.matches(request.getHeader("If-None-Match"), etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return null;
+		}
+		
+		List<SimpleObject> ret = new ArrayList<SimpleObject>();
+		for (LocationNode node : locationService.getChildLocationNodes(parentId)) {
+			ret.add(SimpleObject.create("locationId", node.getLocationId(), "name", node.getName(), "tags",
+			    node.getTags(), "retired", node.isRetired(), "childCount", node.getChildCount()));
+		}
+		return ret;
+	}
+	
+	/**
+	 * Data source of the parent location typeahead, a page of the unretired locations with a word
+	 * in their name starting with the query. Each result is labeled with its parent's name to tell
+	 * apart locations with the same name.
+	 */
+	public SimpleObject searchLocations(@RequestParam(value = "q", required = false) String query,
+	                                    @RequestParam(value = "start", required = false) Integer start,
+	                                    @RequestParam(value = "length", required = false) Integer length,
+	                                    @SpringBean("adminLocationService") AdminUiLocationService locationService) {
+		Context.requirePrivilege(PrivilegeConstants.VIEW_LOCATIONS);
+		
+		PagedResult<LocationNode> page = locationService.searchLocations(query, false, start != null ? start : 0,
+		    length != null ? length : 20);
+		List<SimpleObject> results = new ArrayList<SimpleObject>();
+		for (LocationNode node : page.getResults()) {
+			String label = node.getName();
+			if (node.getParentLocationName() != null) {
+				label += " (" + node.getParentLocationName() + ")";
+			}
+			results.add(SimpleObject.create("locationId", node.getLocationId(), "name", node.getName(), "label", label));
+		}
+		return SimpleObject.create("results", results, "totalCount", page.getTotalCount());
+	}
+	
+	/**
+	 * Retires a location and everything under it, or with dryRun only counts the locations that
+	 * would be retired so the page can ask for a confirmation first
+	 */
+	public SimpleObject retireLocationSubtree(@RequestParam("locationId") Integer locationId,
+	                                          @RequestParam(value = "reason", required = false) String reason,
+	                                          @RequestParam(value = "dryRun", required = false) Boolean dryRun,
+	                                          @SpringBean("adminLocationService") AdminUiLocationService locationService) {
+		Context.requirePrivilege(PrivilegeConstants.MANAGE_LOCATIONS);
+		
+		int count = locationService.retireLocationSubtree(locationId, reason, Boolean.TRUE.equals(dryRun));
+		return SimpleObject.create("count", count);
+	}
+	
+	/**
+	 * Restores a location and everything under it, or with dryRun only counts the locations that
+	 * would be restored
+	 */
+	public SimpleObject unretireLocationSubtree(@RequestParam("locationId") Integer locationId,
+	                                            @RequestParam(value = "dryRun", required = false) Boolean dryRun,
+	                                            @SpringBean("adminLocationService") AdminUiLocationService locationService) {
+		Context.requirePrivilege(PrivilegeConstants.MANAGE_LOCATIONS);
+		
+		int count = locationService.unretireLocationSubtree(locationId, Boolean.TRUE.equals(dryRun));
+		return SimpleObject.create("count", count);
+	}
+	
+	/**
+	 * Rebuilds the materialized paths of all locations, e.g. after locations were changed while the
+	 * module was stopped and the location tree queries miss them
+	 */
+	public SimpleObject rebuildLocationPaths(@SpringBean("adminLocationService") AdminUiLocationService locationService) {
+		Context.requirePrivilege(PrivilegeConstants.MANAGE_LOCATIONS);
+		
+		return SimpleObject.create("count", locationService.rebuildLocationPaths());
+	}
+	
+	/**
+	 * Adds a tag to, or removes it from, many locations at once. The locations are any mix of the
+	 * picked locationIds, the unretired locations with a word in their name starting with q and the
+	 * unretired locations of the subtree under subtreeLocationId, including that location itself. With dryRun it only counts the selected
+	 * locations the tag would be added to or removed from, so the page can ask for a confirmation
+	 * first.
+	 */
+	public SimpleObject setLocationTag(@RequestParam("locationTagId") Integer locationTagId,
+	                                   @RequestParam("add") boolean add,
+	                                   @RequestParam(value = "q", required = false) String query,
+	                                   @RequestParam(value = "subtreeLocationId", required = false) Integer subtreeLocationId,
+	                                   @RequestParam(value = "dryRun", required = false) Boolean dryRun,
+	                                   @SpringBean("adminLocationService") AdminUiLocationService locationService,
+	                                   HttpServletRequest request) {
+		Context.requirePrivilege(PrivilegeConstants.MANAGE_LOCATIONS);
+		
+		Set<Integer> locationIds = new LinkedHashSet<Integer>();
+		String[] pickedIds = request.getParameterValues("locationIds");
+		if (pickedIds != null) {
+			for (String id : pickedIds) {
+				locationIds.add(Integer.valueOf(id));
+			}
+		}
+		if (StringUtils.isNotBlank(query)) {
+			for (LocationNode node : locationService.searchLocations(query, false, 0, Integer.MAX_VALUE).getResults()) {
+				locationIds.add(node.getLocationId());
+			}
+		}
+		if (subtreeLocationId != null) {
+			for (Location root : locationService.loadLocations(Collections.singleton(subtreeLocationId))) {
+				if (!root.isRetired()) {
+					locationIds.add(root.getLocationId());
+				}
+			}
+			for (LocationNode node : locationService.getDescendantLocationNodes(subtreeLocationId)) {
+				// the same locations as the search
+				if (!node.isRetired()) {
+					locationIds.add(node.getLocationId());
+				}
+			}
+		}
+		
+		boolean countOnly = Boolean.TRUE.equals(dryRun);
+		int count = add ? locationService.addLocationTag(locationTagId, locationIds, countOnly) : locationService
+		        .removeLocationTag(locationTagId, locationIds, countOnly);
+		return SimpleObject.create("count", count);
+	}
+	
+	/**
+	 * Gets the locations, other than the one being edited, positioned within the
+	 * {@link AdminUiConstants#GP_LOCATION_NEARBY_DISTANCE} of a point so the location form can warn
+	 * about a possible duplicate
+	 */
+	public SimpleObject getNearbyLocations(@RequestParam("latitude") double latitude,
+	                                       @RequestParam("longitude") double longitude,
+	                                       @RequestParam(value = "locationId", required = false) Integer locationId,
+	                                       @SpringBean("adminLocationService") AdminUiLocationService locationService,
+	                                       @SpringBean("adminService") AdministrationService administrationService) {
+		Context.requirePrivilege(PrivilegeConstants.VIEW_LOCATIONS);
+		
+		double distance = DEFAULT_NEARBY_DISTANCE;
+		String value = administrationService.getGlobalProperty(AdminUiConstants.GP_LOCATION_NEARBY_DISTANCE);
+		if (StringUtils.isNotBlank(value)) {
+			try {
+				distance = Double.parseDouble(value.trim());
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid value for " + AdminUiConstants.GP_LOCATION_NEARBY_DISTANCE + ": " + value);
+			}
+		}
+		
+		List<SimpleObject> locations = new ArrayList<SimpleObject>();
+		for (NearbyLocation nearby : locationService.getLocationsWithinDistance(latitude, longitude, distance)) {
+			if (nearby.getLocation().getLocationId().equals(locationId)) {
+				continue;
+			}
+			locations.add(SimpleObject.create("locationId", nearby.getLocation().getLocationId(), "name", nearby
+			        .getLocation().getName(), "distance", Math.round(nearby.getDistance())));
+			if (locations.size() == MAX_NEARBY_LOCATIONS) {
+				break;
+			}
+		}
+		return SimpleObject.create("distance", Math.round(distance), "locations", locations);
+	}
+	
+	private String escape(String value) {
+		return StringEscapeUtils.escapeHtml(value);
+	}
+	
+}
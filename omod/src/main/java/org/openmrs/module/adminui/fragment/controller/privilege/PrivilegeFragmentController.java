@@ -0,0 +1,70 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.fragment.controller.privilege;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.Privilege;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.adminui.PagedResult;
+import org.openmrs.module.adminui.privilege.AdminUiPrivilegeService;
+import org.openmrs.ui.framework.SimpleObject;
+import org.openmrs.ui.framework.UiUtils;
+import org.openmrs.ui.framework.annotation.SpringBean;
+import org.openmrs.util.PrivilegeConstants;
+import org.springframework.web.bind.annotation.RequestParam;
+
+public class PrivilegeFragmentController {
+	
+	/**
+	 * Server side data source for the privileges DataTable, it only loads the privileges in the
+	 * requested page. The page size is clamped like the other tables, and iTotalRecords is the
+	 * number of all the privileges while iTotalDisplayRecords is the number matching the filters.
+	 */
+	public SimpleObject getPrivileges(@RequestParam(value = "sSearch", required = false) String query,
+	                                  @RequestParam(value = "prefix", required = false) String prefix,
+	                                  @RequestParam(value = "iDisplayStart", defaultValue = "0") int startIndex,
+	                                  @RequestParam(value = "iDisplayLength", defaultValue = "10") int length,
+	                                  @RequestParam(value = "sEcho", required = false) String echo,
+	                                  @SpringBean("adminPrivilegeService") AdminUiPrivilegeService privilegeService,
+	                                  UiUtils ui) {
+		Context.requirePrivilege(PrivilegeConstants.VIEW_PRIVILEGES);
+		
+		PagedResult<Privilege> page = privilegeService.getPrivileges(query, prefix, Math.max(startIndex, 0),
+		    PagedResult.getPageSize(length));
+		List<List<String>> rows = new ArrayList<List<String>>();
+		for (Privilege privilege : page.getResults()) {
+			String name = privilege.getPrivilege();
+			String jsName = escape(StringEscapeUtils.escapeJavaScript(name));
+			String actions = "<i class=\"icon-pencil edit-action\" title=\"" + escape(ui.message("general.edit"))
+			        + "\" onclick=\"location.href='"
+			        + ui.pageLink("adminui", "metadata/privileges/privilege",
+			            SimpleObject.create("privilegeName", name, "action", "edit")) + "'\"></i>"
+			        + " <i class=\"icon-trash delete-action right\" title=\"" + escape(ui.message("general.purge"))
+			        + "\" onclick=\"adminui_purgePrivilege('" + jsName + "', '" + jsName + "')\"></i>";
+			rows.add(Arrays.asList(escape(name), escape(privilege.getDescription()), actions));
+		}
+		
+		// without filters the matches are all the privileges, so they need no second count
+		long totalCount = StringUtils.isBlank(query) && StringUtils.isBlank(prefix) ? page.getTotalCount()
+		        : privilegeService.getPrivilegeCount();
+		return SimpleObject.create("sEcho", echo, "iTotalRecords", totalCount, "iTotalDisplayRecords",
+		    page.getTotalCount(), "aaData", rows);
+	}
+	
+	private String escape(String value) {
+		return StringEscapeUtils.escapeHtml(value);
+	}
+	
+}
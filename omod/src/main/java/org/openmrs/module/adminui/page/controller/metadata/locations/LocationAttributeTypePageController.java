@@ -9,18 +9,13 @@
  */
 package org.openmrs.module.adminui.page.controller.metadata.locations;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-
 import javax.servlet.http.HttpServletRequest;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.LocationAttributeType;
 import org.openmrs.api.LocationService;
-import org.openmrs.customdatatype.CustomDatatypeUtil;
+import org.openmrs.module.adminui.customdatatype.CustomDatatypeRegistry;
 import org.openmrs.module.uicommons.UiCommonsConstants;
 import org.openmrs.module.uicommons.util.InfoErrorMessageUtil;
 import org.openmrs.ui.framework.annotation.BindParams;
@@ -37,20 +32,23 @@ public class LocationAttributeTypePageController {
 	protected final Log log = LogFactory.getLog(getClass());
 	
 	public void get(PageModel model,
-	                @RequestParam(value = "locationAttributeTypeId", required = false) LocationAttributeType locationAttributeType) {
+	                @RequestParam(value = "locationAttributeTypeId", required = false) LocationAttributeType locationAttributeType,
+	                @SpringBean("adminCustomDatatypeRegistry") CustomDatatypeRegistry customDatatypeRegistry) {
 		
 		if (locationAttributeType == null) {
 			locationAttributeType = new LocationAttributeType();
 		}
 		
 		model.addAttribute("locationAttributeType", locationAttributeType);
-		model.addAttribute("datatypesMap", getDatatypes());
-		model.addAttribute("handlersMap", getHandlers());
+		model.addAttribute("datatypesMap", customDatatypeRegistry.getDatatypes());
+		model.addAttribute("handlersMap", customDatatypeRegistry.getHandlers());
 	}
 	
 	public String post(PageModel model,
 	                   @RequestParam(value = "locationAttributeTypeId", required = false) @BindParams LocationAttributeType locationAttributeType,
-	                   @SpringBean("locationService") LocationService locationService, HttpServletRequest request) {
+	                   @SpringBean("locationService") LocationService locationService,
+	                   @SpringBean("adminCustomDatatypeRegistry") CustomDatatypeRegistry customDatatypeRegistry,
+	                   HttpServletRequest request) {
 		
 		Errors errors = new BeanPropertyBindingResult(locationAttributeType, "locationAttributeType");
 		ValidationUtils.rejectIfEmptyOrWhitespace(errors, "name", "adminui.field.required");
@@ -79,37 +77,9 @@ public class LocationAttributeTypePageController {
 		
 		model.addAttribute("errors", errors);
 		model.addAttribute("locationAttributeType", locationAttributeType);
-		model.addAttribute("datatypesMap", getDatatypes());
-		model.addAttribute("handlersMap", getHandlers());
+		model.addAttribute("datatypesMap", customDatatypeRegistry.getDatatypes());
+		model.addAttribute("handlersMap", customDatatypeRegistry.getHandlers());
 		
 		return "metadata/locations/locationAttributeType";
 	}
-	
-	public Map<String, String> getDatatypes() {
-		Collection<String> datatypes = CustomDatatypeUtil.getDatatypeClassnames();
-		Map<String, String> ret = new HashMap<String, String>();
-		for (String dt : datatypes) {
-			ret.put(dt, beautify(dt));
-		}
-		return ret;
-	}
-	
-	public Map<String, String> getHandlers() {
-		Collection<String> handlers = CustomDatatypeUtil.getHandlerClassnames();
-		Map<String, String> ret = new HashMap<String, String>();
-		for (String h : handlers) {
-			ret.put(h, beautify(h));
-		}
-		return ret;
-	}
-	
-	/**
-	 * Beautifies a fully qualified java class name
-	 */
-	private String beautify(String input) {
-		String classname = input.toString();
-		classname = classname.substring(classname.lastIndexOf(".") + 1);
-		String[] sections = StringUtils.splitByCharacterTypeCamelCase(classname);
-		return StringUtils.join(sections, " ");
-	}
 }
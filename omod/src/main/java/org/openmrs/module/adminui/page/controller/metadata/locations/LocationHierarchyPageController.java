@@ -9,83 +9,18 @@
  */
 package org.openmrs.module.adminui.page.controller.metadata.locations;
 
-import java.io.IOException;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-
-import org.codehaus.jackson.map.ObjectMapper;
-import org.openmrs.Location;
-import org.openmrs.LocationTag;
-import org.openmrs.api.LocationService;
-import org.openmrs.api.context.Context;
-import org.openmrs.ui.framework.annotation.SpringBean;
 import org.openmrs.ui.framework.page.PageModel;
 
 public class LocationHierarchyPageController {
 	
 	/**
+	 * The page loads the tree one level at a time from
+	 * {@link org.openmrs.module.adminui.fragment.controller.location.LocationFragmentController}, so
+	 * its cost depends on the number of root locations rather than the size of the tree
+	 * 
 	 * @param model
-	 * @param locationService
-	 * @throws IOException 
 	 */
-    public void get(PageModel model, @SpringBean("locationService") LocationService locationService) throws IOException {
-    	model.addAttribute("jsonData", getHierarchyAsJson());
+    public void get(PageModel model) {
     }
-    
-    /**
-	 * Gets JSON formatted for jstree jquery plugin [ { data: ..., children: ...}, ... ]
-	 * 
-	 * @return
-	 * @throws IOException
-	 */
-	private String getHierarchyAsJson() throws IOException {
-		// TODO fetch all locations at once to avoid n+1 lazy-loads
-		List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
-		for (Location loc : Context.getLocationService().getAllLocations()) {
-			if (loc.getParentLocation() == null) {
-				list.add(toJsonHelper(loc));
-			}
-		}
-		
-		// If this gets slow with lots of locations then switch out ObjectMapper for the
-		// stream-based version. (But the TODO above is more likely to be a performance hit.)
-		StringWriter w = new StringWriter();
-		ObjectMapper mapper = new ObjectMapper();
-		mapper.writeValue(w, list);
-		return w.toString();
-	}
-	
-	/**
-	 * { data: "Location's name (tags)", children: [ recursive calls to this method, ... ] }
-	 * 
-	 * @param loc
-	 * @return
-	 */
-	private Map<String, Object> toJsonHelper(Location loc) {
-		Map<String, Object> ret = new LinkedHashMap<String, Object>();
-		StringBuilder sb = new StringBuilder(loc.getName());
-		if (loc.getTags() != null && loc.getTags().size() > 0) {
-			sb.append(" (");
-			for (Iterator<LocationTag> i = loc.getTags().iterator(); i.hasNext();) {
-				LocationTag t = i.next();
-				sb.append(t.getName());
-				if (i.hasNext())
-					sb.append(", ");
-			}
-			sb.append(")");
-		}
-		ret.put("Location", sb.toString());
-		if (loc.getChildLocations() != null && loc.getChildLocations().size() > 0) {
-			List<Map<String, Object>> children = new ArrayList<Map<String, Object>>();
-			for (Location child : loc.getChildLocations())
-				children.add(toJsonHelper(child));
-			ret.put("children", children);
-		}
-		return ret;
-	}
 
 }
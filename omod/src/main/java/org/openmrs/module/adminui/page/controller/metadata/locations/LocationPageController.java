@@ -10,6 +10,7 @@
 package org.openmrs.module.adminui.page.controller.metadata.locations;
 
 import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Location;
@@ -18,6 +19,10 @@ import org.openmrs.LocationAttributeType;
 import org.openmrs.LocationTag;
 import org.openmrs.api.LocationService;
 import org.openmrs.api.context.Context;
+import org.openmrs.customdatatype.CustomDatatype;
+import org.openmrs.customdatatype.CustomDatatypeUtil;
+import org.openmrs.customdatatype.InvalidCustomValueException;
+import org.openmrs.module.adminui.location.AdminUiLocationService;
 import org.openmrs.module.uicommons.UiCommonsConstants;
 import org.openmrs.ui.framework.annotation.BindParams;
 import org.openmrs.ui.framework.annotation.SpringBean;
@@ -31,6 +36,7 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -53,7 +59,6 @@ public class LocationPageController {
         }
 
         model.addAttribute("location", location);
-        model.addAttribute("existingLocations", locationService.getAllLocations());
         model.addAttribute("locationTags", locationService.getAllLocationTags());
         model.addAttribute("attributeTypes", locationService.getAllLocationAttributeTypes());
     }
@@ -63,6 +68,7 @@ public class LocationPageController {
      * @param location
      * @param errors
      * @param locationService
+     * @param adminLocationService
      * @param locationValidator
      * @param messageSource
      * @param request
@@ -72,36 +78,30 @@ public class LocationPageController {
     public String post(PageModel model, @RequestParam(value = "locationId", required = false) @BindParams Location location,
                        BindingResult errors,
                        @SpringBean("locationService") LocationService locationService,
+                       @SpringBean("adminLocationService") AdminUiLocationService adminLocationService,
                        @SpringBean("locationValidator") LocationValidator locationValidator,
                        @SpringBean("messageSource") MessageSource messageSource,
                        @RequestParam(required = false, value = "save") String saveFlag,
                        @RequestParam(required = false, value = "retire") String retireFlag,
                        HttpServletRequest request) {
 
-        locationValidator.validate(location, errors);
         String[] locationTags = request.getParameterValues("locTags");
-        Set<LocationTag> tags = new HashSet<LocationTag>();
+        Set<LocationTag> tags = null;
         if (!ArrayUtils.isEmpty(locationTags)) {
+            List<Integer> tagIds = new ArrayList<Integer>(locationTags.length);
             for (String x : locationTags) {
-                LocationTag tag = locationService.getLocationTag(Integer.valueOf(x));
-                if (tag != null) {
-                    tags.add(tag);
-                }
+                tagIds.add(Integer.valueOf(x));
             }
-            location.setTags(tags);
-        } else {
-            tags = null;
+            tags = new HashSet<LocationTag>(adminLocationService.getLocationTags(tagIds));
         }
         location.setTags(tags);
 
-        LocationAttribute attr = new LocationAttribute();
-        List<LocationAttributeType> locationAttributeList = locationService.getAllLocationAttributeTypes();
-        for (LocationAttributeType locAttr : locationAttributeList) {
-            attr.setLocationAttributeId(locAttr.getId());
-            attr.setValue(request.getParameter("attribute." + locAttr.getId()));
-            attr.setLocation(location);
+        for (LocationAttributeType attributeType : locationService.getAllLocationAttributeTypes()) {
+            bindAttribute(location, attributeType, request.getParameter("attribute." + attributeType.getId()), errors);
         }
 
+        locationValidator.validate(location, errors);
+
         if (!errors.hasErrors()) {
             try {
                 if (saveFlag.length() > 3) {
@@ -124,7 +124,6 @@ public class LocationPageController {
 
         model.addAttribute("errors", errors);
         model.addAttribute("location", location);
-        model.addAttribute("existingLocations", locationService.getAllLocations());
         model.addAttribute("locationTags", locationService.getAllLocationTags());
         model.addAttribute("attributeTypes", locationService.getAllLocationAttributeTypes());
 
@@ -132,6 +131,61 @@ public class LocationPageController {
 
     }
 
+    /**
+     * Sets the submitted value of an attribute type as a new attribute of the location, voiding the
+     * current ones of that type, or only voids them when the value was cleared. An unchanged value
+     * leaves the current attribute alone. A value the datatype can't read or doesn't accept is
+     * rejected and leaves the attributes of the location as they were. The attributes are saved
+     * along with the location.
+     *
+     * @should bind a valid value as a new attribute
+     * @should reject a value the datatype can't read
+     * @should reject a value the datatype doesn't accept
+     */
+    void bindAttribute(Location location, LocationAttributeType attributeType, String value, BindingResult errors) {
+        List<LocationAttribute> current = location.getActiveAttributes(attributeType);
+        if (StringUtils.isBlank(value)) {
+            for (LocationAttribute attribute : current) {
+                attribute.setVoided(true);
+            }
+            return;
+        }
+        if (current.size() == 1 && value.equals(current.get(0).getValueReference())) {
+            return;
+        }
+
+        Object typedValue;
+        try {
+            typedValue = toTypedValue(CustomDatatypeUtil.getDatatype(attributeType), value);
+        }
+        catch (InvalidCustomValueException e) {
+            log.debug("Rejected the value of " + attributeType.getName() + ": " + e.getMessage());
+            typedValue = null;
+        }
+        catch (RuntimeException e) {
+            // datatypes like FloatDatatype let parse errors through
+            log.debug("Rejected the value of " + attributeType.getName(), e);
+            typedValue = null;
+        }
+        if (typedValue == null) {
+            errors.reject("adminui.location.attribute.invalid", new Object[] { attributeType.getName() }, null);
+            return;
+        }
+
+        LocationAttribute attribute = new LocationAttribute();
+        attribute.setAttributeType(attributeType);
+        attribute.setValue(typedValue);
+        location.setAttribute(attribute);
+    }
+
+    private <T> T toTypedValue(CustomDatatype<T> datatype, String value) throws InvalidCustomValueException {
+        T typedValue = datatype.fromReferenceString(value);
+        if (typedValue != null) {
+            datatype.validate(typedValue);
+        }
+        return typedValue;
+    }
+
     private void sendErrorMessage(BindingResult errors, MessageSource messageSource, HttpServletRequest request) {
         List<ObjectError> allErrors = errors.getAllErrors();
         String message = getMessageErrors(messageSource, allErrors);
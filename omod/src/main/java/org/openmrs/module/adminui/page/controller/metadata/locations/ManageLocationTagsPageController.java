@@ -13,6 +13,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.LocationTag;
 import org.openmrs.api.LocationService;
+import org.openmrs.module.adminui.location.AdminUiLocationService;
 import org.openmrs.module.uicommons.UiCommonsConstants;
 import org.openmrs.module.uicommons.util.InfoErrorMessageUtil;
 import org.openmrs.ui.framework.annotation.SpringBean;
@@ -28,15 +29,24 @@ public class ManageLocationTagsPageController {
     /**
      * @param model
      * @param locationService
+     * @param adminLocationService
      */
-    public void get(PageModel model, @SpringBean("locationService") LocationService locationService) {
-        model.addAttribute("locationTags", locationService.getAllLocationTags(true));
+    public void get(PageModel model, @SpringBean("locationService") LocationService locationService,
+                    @SpringBean("adminLocationService") AdminUiLocationService adminLocationService) {
+        addModelAttributes(model, locationService, adminLocationService);
     }
 
     public String post(PageModel model, @RequestParam("locationTagId") LocationTag tag,
                        @RequestParam("action") String action,
                        @RequestParam(value = "reason", required = false) String reason,
-                       @SpringBean("locationService") LocationService locationService, HttpServletRequest request) {
+                       @SpringBean("locationService") LocationService locationService,
+                       @SpringBean("adminLocationService") AdminUiLocationService adminLocationService,
+                       HttpServletRequest request) {
+
+        if ("purge".equals(action) && adminLocationService.getLocationCountsByTagId().containsKey(tag.getLocationTagId())) {
+            // refuse right away rather than let the delete fail on the locations referring to the tag
+            return showError(model, "adminui.locationTag.purge.inUse", locationService, adminLocationService, request);
+        }
 
         try {
             if ("retire".equals(action)) {
@@ -44,7 +54,7 @@ public class ManageLocationTagsPageController {
             } else if ("restore".equals(action)) {
                 locationService.unretireLocationTag(tag);
             } else if ("purge".equals(action)) {
-                locationService.purgeLocationTag(tag);
+                adminLocationService.purgeLocationTag(tag);
             }
             InfoErrorMessageUtil.flashInfoMessage(request.getSession(), "adminui.locationTag." + action + ".success");
             return "redirect:/adminui/metadata/locations/manageLocationTags.page";
@@ -52,10 +62,24 @@ public class ManageLocationTagsPageController {
             log.error("Failed to " + action + " location tag:", e);
         }
 
-        request.getSession().setAttribute(UiCommonsConstants.SESSION_ATTRIBUTE_ERROR_MESSAGE,
-                "adminui.locationTag." + action + ".fail");
-        model.addAttribute("locationTags", locationService.getAllLocationTags(true));
+        return showError(model, "adminui.locationTag." + action + ".fail", locationService, adminLocationService, request);
+    }
+
+    private String showError(PageModel model, String message, LocationService locationService,
+                             AdminUiLocationService adminLocationService, HttpServletRequest request) {
+        request.getSession().setAttribute(UiCommonsConstants.SESSION_ATTRIBUTE_ERROR_MESSAGE, message);
+        addModelAttributes(model, locationService, adminLocationService);
 
         return "metadata/locations/manageLocationTags";
     }
+
+    /**
+     * The number of locations of every tag comes from the counts kept by the
+     * AdminUiLocationService, not from a query per tag
+     */
+    private void addModelAttributes(PageModel model, LocationService locationService,
+                                    AdminUiLocationService adminLocationService) {
+        model.addAttribute("locationTags", locationService.getAllLocationTags(true));
+        model.addAttribute("locationCounts", adminLocationService.getLocationCountsByTagId());
+    }
 }
\ No newline at end of file
@@ -9,9 +9,6 @@
  */
 package org.openmrs.module.adminui.page.controller.metadata.locations;
 
-import java.util.List;
-
-import org.openmrs.Location;
 import org.openmrs.api.LocationService;
 import org.openmrs.ui.framework.annotation.SpringBean;
 import org.openmrs.ui.framework.page.PageModel;
@@ -19,11 +16,13 @@ import org.openmrs.ui.framework.page.PageModel;
 public class ManageLocationsPageController {
 	
 	/**
+	 * The locations themselves are loaded a page at a time by the table, see
+	 * LocationFragmentController#getLocations, only the tags to filter by are loaded here
+	 * 
 	 * @param model
 	 * @param locationService
 	 */
     public void get(PageModel model, @SpringBean("locationService") LocationService locationService) {
-        List<Location> locations = locationService.getAllLocations(false);
-    	model.addAttribute("locations", locations);
+    	model.addAttribute("locationTags", locationService.getAllLocationTags(false));
     }
 }
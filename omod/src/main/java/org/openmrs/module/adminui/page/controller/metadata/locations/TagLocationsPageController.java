@@ -0,0 +1,26 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.page.controller.metadata.locations;
+
+import org.openmrs.api.LocationService;
+import org.openmrs.ui.framework.annotation.SpringBean;
+import org.openmrs.ui.framework.page.PageModel;
+
+/**
+ * Adds a tag to, or removes it from, many locations at once, the changes are made by
+ * LocationFragmentController#setLocationTag
+ */
+public class TagLocationsPageController {
+
+	public void get(PageModel model, @SpringBean("locationService") LocationService locationService) {
+		model.addAttribute("locationTags", locationService.getAllLocationTags(false));
+	}
+
+}
@@ -15,6 +15,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Privilege;
 import org.openmrs.api.UserService;
+import org.openmrs.module.adminui.privilege.AdminUiPrivilegeService;
 import org.openmrs.module.uicommons.UiCommonsConstants;
 import org.openmrs.module.uicommons.util.InfoErrorMessageUtil;
 import org.openmrs.ui.framework.annotation.BindParams;
@@ -27,16 +28,21 @@ public class ManagePrivilegesPageController {
 	protected final Log log = LogFactory.getLog(getClass());
 	
 	/**
+	 * The privileges themselves are fetched a page at a time by the DataTable, see
+	 * PrivilegeFragmentController#getPrivileges
+	 * 
 	 * @param model
-	 * @param userService
+	 * @param privilegeService
 	 */
-	public void get(PageModel model, @SpringBean("userService") UserService userService) {
-		model.addAttribute("privileges", userService.getAllPrivileges());
+	public void get(PageModel model, @SpringBean("adminPrivilegeService") AdminUiPrivilegeService privilegeService) {
+		model.addAttribute("privilegePrefixes", privilegeService.getPrivilegePrefixes());
 	}
 	
 	public String post(PageModel model,
 	                   @RequestParam(value = "privilegeName", required = false) @BindParams Privilege privilege,
-	                   @SpringBean("userService") UserService userService, HttpSession session) {
+	                   @SpringBean("userService") UserService userService,
+	                   @SpringBean("adminPrivilegeService") AdminUiPrivilegeService privilegeService,
+	                   HttpSession session) {
 		
 		String action = "purge";
 		try {
@@ -49,7 +55,7 @@ public class ManagePrivilegesPageController {
 		}
 		
 		session.setAttribute(UiCommonsConstants.SESSION_ATTRIBUTE_ERROR_MESSAGE, "adminui.privilege." + action + ".fail");
-		model.addAttribute("privileges", userService.getAllPrivileges());
+		get(model, privilegeService);
 		
 		return "metadata/privileges/managePrivileges";
 	}
@@ -9,13 +9,15 @@
  */
 package org.openmrs.module.adminui.page.controller.metadata.providers.providerattributetypes.templates;
 
-import org.openmrs.customdatatype.CustomDatatypeUtil;
+import org.openmrs.module.adminui.customdatatype.CustomDatatypeRegistry;
+import org.openmrs.ui.framework.annotation.SpringBean;
 import org.openmrs.ui.framework.page.PageModel;
 
 public class EditPageController {
 
-	public void get(PageModel model) {
-    	model.addAttribute("datatypeClassnames", CustomDatatypeUtil.getDatatypeClassnames());
-    	model.addAttribute("preferredHandlerClassnames", CustomDatatypeUtil.getHandlerClassnames());
+	public void get(PageModel model,
+	                @SpringBean("adminCustomDatatypeRegistry") CustomDatatypeRegistry customDatatypeRegistry) {
+    	model.addAttribute("datatypeClassnames", customDatatypeRegistry.getDatatypeClassnames());
+    	model.addAttribute("preferredHandlerClassnames", customDatatypeRegistry.getHandlerClassnames());
     }
 }
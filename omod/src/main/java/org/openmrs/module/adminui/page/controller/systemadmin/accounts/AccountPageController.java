@@ -116,8 +116,7 @@ public class AccountPageController {
 			account.setUsernames(username);
 			account.setPasswords(password);
 			account.setConfirmPasswords(confirmPassword);
-			account.setPrivilegeLevels(privilegeLevel);
-			account.setCapabilities(roles);
+			account.setRoles(privilegeLevel, roles);
 		}
 		
 		if (providerEnabled) {
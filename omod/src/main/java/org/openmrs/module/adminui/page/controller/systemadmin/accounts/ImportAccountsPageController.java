@@ -0,0 +1,92 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.page.controller.systemadmin.accounts;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.messagesource.MessageSourceService;
+import org.openmrs.module.adminui.account.AccountImportResult;
+import org.openmrs.module.adminui.account.AccountImporter;
+import org.openmrs.module.uicommons.UiCommonsConstants;
+import org.openmrs.ui.framework.annotation.SpringBean;
+import org.openmrs.ui.framework.page.PageModel;
+import org.springframework.validation.ObjectError;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+
+public class ImportAccountsPageController {
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	public void get(PageModel model) {
+		model.addAttribute("result", null);
+		model.addAttribute("rowErrors", null);
+	}
+
+	public String post(@SpringBean("adminAccountImporter") AccountImporter accountImporter,
+	                   @SpringBean("messageSourceService") MessageSourceService messageSourceService, PageModel model,
+	                   HttpServletRequest request) {
+
+		AccountImportResult result = null;
+		Map<Integer, List<String>> rowErrors = null;
+
+		MultipartFile file = null;
+		if (request instanceof MultipartHttpServletRequest) {
+			file = ((MultipartHttpServletRequest) request).getFile("file");
+		}
+		if (file != null && !file.isEmpty()) {
+			Reader reader = null;
+			try {
+				reader = new InputStreamReader(file.getInputStream(), "UTF-8");
+				result = accountImporter.importAccounts(reader);
+
+				rowErrors = new LinkedHashMap<Integer, List<String>>();
+				for (Map.Entry<Integer, List<ObjectError>> entry : result.getErrorsByRow().entrySet()) {
+					List<String> messages = new ArrayList<String>();
+					for (ObjectError error : entry.getValue()) {
+						messages.add(messageSourceService.getMessage(error.getCode(), error.getArguments(),
+						    error.getDefaultMessage(), null));
+					}
+					rowErrors.put(entry.getKey(), messages);
+				}
+			}
+			catch (Exception e) {
+				log.error("Failed to import accounts", e);
+				request.getSession().setAttribute(UiCommonsConstants.SESSION_ATTRIBUTE_ERROR_MESSAGE,
+				    messageSourceService.getMessage("adminui.account.import.fail", new Object[] { e.getMessage() }, null));
+			}
+			finally {
+				if (reader != null) {
+					try {
+						reader.close();
+					}
+					catch (Exception e) {
+						log.warn("Failed to close the uploaded account CSV", e);
+					}
+				}
+			}
+		}
+
+		model.addAttribute("result", result);
+		model.addAttribute("rowErrors", rowErrors);
+
+		return "systemadmin/accounts/importAccounts";
+	}
+
+}
@@ -9,18 +9,17 @@
  */
 package org.openmrs.module.adminui.page.controller.systemadmin.accounts;
 
-import org.openmrs.module.adminui.account.AccountService;
-import org.openmrs.ui.framework.annotation.SpringBean;
+import org.openmrs.module.adminui.fragment.controller.account.AccountFragmentController;
 import org.openmrs.ui.framework.page.PageModel;
 
 public class ManageAccountsPageController {
 	
 	/**
+	 * The accounts are fetched a page at a time by {@link AccountFragmentController#getAccounts}
+	 * 
 	 * @param model
-	 * @param accountService
 	 */
-	public void get(PageModel model, @SpringBean("adminAccountService") AccountService accountService) {
-		model.addAttribute("accounts", accountService.getAllAccounts());
+	public void get(PageModel model) {
 	}
 	
 }
@@ -0,0 +1,176 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.web.controller;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.adminui.account.AccountImporter;
+import org.openmrs.module.adminui.account.AccountService;
+import org.openmrs.module.adminui.account.AccountSummary;
+import org.openmrs.module.adminui.account.AccountSummaryHandler;
+import org.openmrs.module.adminui.util.CsvWriter;
+import org.openmrs.util.PrivilegeConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Streams all accounts with their roles and provider roles as CSV or newline delimited JSON. Rows
+ * are written to the response batch by batch as they are read from the database, see
+ * {@link AccountService#exportAccounts(AccountSummaryHandler)}, so the export starts right away
+ * and memory use doesn't depend on the number of accounts.
+ */
+@Controller
+public class AccountExportController {
+
+	public static final String FORMAT_CSV = "csv";
+
+	public static final String FORMAT_NDJSON = "ndjson";
+
+	/**
+	 * The response is flushed every so many accounts so they reach the client while the export runs
+	 */
+	private static final int FLUSH_INTERVAL = 500;
+
+	@Autowired
+	@Qualifier("adminAccountService")
+	private AccountService accountService;
+
+	@RequestMapping(value = "/module/adminui/accounts/export.form", method = RequestMethod.GET)
+	public void export(@RequestParam(value = "format", defaultValue = FORMAT_CSV) String format,
+	                   HttpServletResponse response) throws IOException {
+		Context.requirePrivilege(PrivilegeConstants.VIEW_USERS);
+
+		String extension = FORMAT_NDJSON.equals(format) ? FORMAT_NDJSON : FORMAT_CSV;
+		response.setCharacterEncoding("UTF-8");
+		response.setContentType(FORMAT_NDJSON.equals(extension) ? "application/x-ndjson" : "text/csv");
+		response.setHeader("Content-Disposition", "attachment; filename=\"accounts-"
+		        + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + "." + extension + "\"");
+
+		if (FORMAT_NDJSON.equals(extension)) {
+			exportNdjson(response);
+		} else {
+			exportCsv(response);
+		}
+	}
+
+	private void exportCsv(final HttpServletResponse response) throws IOException {
+		Writer writer = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+		final CsvWriter csv = new CsvWriter(writer);
+		csv.writeNext("userId", "personId", AccountImporter.COLUMN_USERNAME, "systemId", AccountImporter.COLUMN_GIVEN_NAME,
+		    AccountImporter.COLUMN_FAMILY_NAME, AccountImporter.COLUMN_GENDER, AccountImporter.COLUMN_PRIVILEGE_LEVEL,
+		    "roles", "providerRoles");
+		csv.flush();
+		response.flushBuffer();
+
+		accountService.exportAccounts(new FlushingHandler(response) {
+
+			@Override
+			protected void write(AccountSummary summary) throws IOException {
+				csv.writeNext(String.valueOf(summary.getUserId()), String.valueOf(summary.getPersonId()),
+				    summary.getUsername(), summary.getSystemId(), summary.getGivenName(), summary.getFamilyName(),
+				    summary.getGender(), summary.getPrivilegeLevel(),
+				    StringUtils.join(summary.getRoles(), AccountImporter.CAPABILITY_SEPARATOR),
+				    StringUtils.join(summary.getProviderRoles(), AccountImporter.CAPABILITY_SEPARATOR));
+			}
+
+			@Override
+			protected void flush() throws IOException {
+				csv.flush();
+			}
+		});
+		csv.flush();
+	}
+
+	private void exportNdjson(HttpServletResponse response) throws IOException {
+		final Writer writer = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+		final JsonFactory jsonFactory = new JsonFactory();
+
+		accountService.exportAccounts(new FlushingHandler(response) {
+
+			@Override
+			protected void write(AccountSummary summary) throws IOException {
+				// a generator per line, a shared one would separate the root values with spaces
+				JsonGenerator json = jsonFactory.createJsonGenerator(writer);
+				json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+				json.writeStartObject();
+				json.writeNumberField("userId", summary.getUserId());
+				json.writeNumberField("personId", summary.getPersonId());
+				json.writeStringField(AccountImporter.COLUMN_USERNAME, summary.getUsername());
+				json.writeStringField("systemId", summary.getSystemId());
+				json.writeStringField(AccountImporter.COLUMN_GIVEN_NAME, summary.getGivenName());
+				json.writeStringField(AccountImporter.COLUMN_FAMILY_NAME, summary.getFamilyName());
+				json.writeStringField(AccountImporter.COLUMN_GENDER, summary.getGender());
+				json.writeStringField(AccountImporter.COLUMN_PRIVILEGE_LEVEL, summary.getPrivilegeLevel());
+				json.writeArrayFieldStart("roles");
+				for (String role : summary.getRoles()) {
+					json.writeString(role);
+				}
+				json.writeEndArray();
+				json.writeArrayFieldStart("providerRoles");
+				for (String providerRole : summary.getProviderRoles()) {
+					json.writeString(providerRole);
+				}
+				json.writeEndArray();
+				json.writeEndObject();
+				json.close();
+				writer.write('\n');
+			}
+
+			@Override
+			protected void flush() throws IOException {
+				writer.flush();
+			}
+		});
+		writer.flush();
+	}
+
+	/**
+	 * Writes each account and flushes the response after the first one and then every
+	 * {@link #FLUSH_INTERVAL} accounts
+	 */
+	private abstract static class FlushingHandler implements AccountSummaryHandler {
+
+		private final HttpServletResponse response;
+
+		private int count;
+
+		FlushingHandler(HttpServletResponse response) {
+			this.response = response;
+		}
+
+		@Override
+		public void handle(AccountSummary summary) throws IOException {
+			write(summary);
+			if (count++ % FLUSH_INTERVAL == 0) {
+				flush();
+				response.flushBuffer();
+			}
+		}
+
+		protected abstract void write(AccountSummary summary) throws IOException;
+
+		protected abstract void flush() throws IOException;
+	}
+
+}
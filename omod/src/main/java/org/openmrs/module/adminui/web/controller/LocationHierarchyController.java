@@ -0,0 +1,203 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.web.controller;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.adminui.location.AdminUiLocationService;
+import org.openmrs.module.adminui.location.LocationHierarchy;
+import org.openmrs.module.adminui.location.LocationNode;
+import org.openmrs.module.adminui.location.LocationVersion;
+import org.openmrs.util.PrivilegeConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * Exports the whole location tree as JSON, [ { "Location": "name (tags)", "children": [ ... ] }, ... ],
+ * it is downloaded from the export link of the location hierarchy page, which itself loads the tree
+ * one level at a time. The tree is walked and written straight to the response through a
+ * {@link JsonGenerator}, so no intermediate maps or document are built however many locations there
+ * are. The generator's buffer is only flushed when it fills up, so a small tree that fails to write
+ * still gets an error status, a larger one ends with an error element.
+ * <p>
+ * The {@link LocationVersion} is the ETag of the export, so a client that already has the current
+ * tree gets an empty 304 response without the tree being loaded.
+ */
+@Controller
+public class LocationHierarchyController {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	protected final Log log = LogFactory.getLog(getClass());
+
+	@Autowired
+	@Qualifier("adminLocationService")
+	private AdminUiLocationService locationService;
+
+	@Autowired
+	@Qualifier("adminLocationVersion")
+	private LocationVersion locationVersion;
+
+	@RequestMapping(value = "/module/adminui/locations/hierarchy.form", method = RequestMethod.GET)
+	public void getHierarchy(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Context.requirePrivilege(PrivilegeConstants.VIEW_LOCATIONS);
+
+		String etag = locationVersion.getETag();
+		response.setHeader("ETag", etag);
+		response.setHeader("Cache-Control", "no-cache");
+		if (LocationVersion.matches(request.getHeader("If-None-Match"), etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		// loaded before anything is written, so that a failure still gets an error status
+		LocationHierarchy hierarchy = locationService.getLocationHierarchy();
+
+		response.setCharacterEncoding("UTF-8");
+		response.setContentType("application/json");
+		response.setHeader("Content-Disposition", "attachment; filename=\"locations.json\"");
+		DiscardableOutputStream out = new DiscardableOutputStream(response.getOutputStream());
+		JsonGenerator json = JSON_FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+		try {
+			json.writeStartArray();
+			for (LocationNode root : hierarchy.getRoots()) {
+				writeNode(json, root);
+			}
+			json.writeEndArray();
+		}
+		catch (RuntimeException e) {
+			if (!response.isCommitted()) {
+				// nothing was sent yet, what the generator still holds is dropped so the error gets its own response
+				out.discard();
+				response.reset();
+				throw e;
+			}
+			log.error("Failed to write the location hierarchy", e);
+			writeError(json, e);
+		}
+		finally {
+			json.close();
+		}
+	}
+
+	/**
+	 * Once a 200 has been sent the status can't be changed anymore, so the open objects and arrays
+	 * are closed and an { "error": "message" } element ends the tree to tell the client that it is
+	 * incomplete
+	 */
+	private void writeError(JsonGenerator json, Exception e) throws IOException {
+		if (json.getOutputContext().inRoot()) {
+			json.writeStartArray();
+		}
+		while (!json.getOutputContext().getParent().inRoot()) {
+			if (json.getOutputContext().inObject()) {
+				json.writeEndObject();
+			} else {
+				json.writeEndArray();
+			}
+		}
+		json.writeStartObject();
+		json.writeStringField("error", e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+		json.writeEndObject();
+		json.writeEndArray();
+	}
+
+	/**
+	 * { "Location": "Location's name (tags)", "children": [ recursive calls to this method, ... ] }
+	 */
+	private void writeNode(JsonGenerator json, LocationNode node) throws IOException {
+		String label = getLabel(node);
+		json.writeStartObject();
+		json.writeStringField("Location", label);
+		if (node.getChildren().size() > 0) {
+			json.writeArrayFieldStart("children");
+			for (LocationNode child : node.getChildren()) {
+				writeNode(json, child);
+			}
+			json.writeEndArray();
+		}
+		json.writeEndObject();
+	}
+
+	private String getLabel(LocationNode node) {
+		if (node.getTags().isEmpty()) {
+			return node.getName();
+		}
+		StringBuilder sb = new StringBuilder(node.getName()).append(" (");
+		for (Iterator<String> i = node.getTags().iterator(); i.hasNext();) {
+			sb.append(i.next());
+			if (i.hasNext()) {
+				sb.append(", ");
+			}
+		}
+		return sb.append(")").toString();
+	}
+
+	/**
+	 * Passes everything through to the response until {@link #discard()} is called, from then on
+	 * writes are dropped and the response's stream is left open for the error response
+	 */
+	private static class DiscardableOutputStream extends FilterOutputStream {
+
+		private boolean discarded = false;
+
+		DiscardableOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		void discard() {
+			discarded = true;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (!discarded) {
+				out.write(b);
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (!discarded) {
+				out.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (!discarded) {
+				out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!discarded) {
+				out.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+var adminui_PARENT_LOCATION_PAGE_SIZE = 20;
+
+// the autocomplete source of a typeahead over the unretired locations, a page of them at a time
+function adminui_locationSearchSource(moreMessage) {
+    return function(request, response) {
+        var params = { q: request.term, start: 0, length: adminui_PARENT_LOCATION_PAGE_SIZE };
+        jq.getJSON(emr.fragmentActionLink("adminui", "location/location", "searchLocations", params), function(page) {
+            var items = jq.map(page.results, function(location) {
+                return { label: location.label, value: location.name, locationId: location.locationId };
+            });
+            if (page.totalCount > items.length) {
+                items.push({ label: moreMessage.replace("{0}", page.totalCount - items.length), value: request.term });
+            }
+            response(items);
+        }).error(function() {
+            response([]);
+        });
+    };
+}
+
+// onChange, if given, is called whenever a location is picked or the picked one is cleared
+function adminui_initParentLocationSearch(searchSelector, valueSelector, moreMessage, onChange) {
+    var search = jq(searchSelector);
+    var value = jq(valueSelector);
+    var selectedName = search.val();
+
+    search.autocomplete({
+        minLength: 1,
+        delay: 300,
+        source: adminui_locationSearchSource(moreMessage),
+        select: function(event, ui) {
+            if (!ui.item.locationId) {
+                return false;
+            }
+            value.val(ui.item.locationId);
+            selectedName = ui.item.value;
+            if (onChange) {
+                onChange();
+            }
+        }
+    });
+
+    // a name that was typed but not picked from the suggestions doesn't identify a location
+    search.change(function() {
+        if (search.val() != selectedName) {
+            var changed = value.val() != '';
+            value.val('');
+            selectedName = '';
+            search.val('');
+            if (changed && onChange) {
+                onChange();
+            }
+        }
+    });
+}
+
+function adminui_setLocationSubtreeRetired(locationId, retire, reasonSelector, messages) {
+    var action = retire ? "retireLocationSubtree" : "unretireLocationSubtree";
+    var params = { locationId: locationId };
+    if (retire) {
+        params.reason = jq.trim(jq(reasonSelector).val());
+        if (!params.reason) {
+            emr.errorMessage(messages.reasonRequired);
+            return;
+        }
+    }
+
+    // count the locations first so the user knows how many will change
+    jq.post(emr.fragmentActionLink("adminui", "location/location", action, jq.extend({ dryRun: true }, params)), function(dryRun) {
+        if (!confirm(messages.confirm.replace("{0}", dryRun.count))) {
+            return;
+        }
+        jq.post(emr.fragmentActionLink("adminui", "location/location", action, params), function() {
+            emr.navigateTo({ url: emr.pageLink("adminui", "metadata/locations/manageLocations") });
+        }, "json").error(function(xhr) {
+            emr.errorAlert(xhr);
+        });
+    }, "json").error(function(xhr) {
+        emr.errorAlert(xhr);
+    });
+}
+
+// each location picked in the search is added to the list, as a locationIds input with a remove link
+function adminui_initLocationListPicker(searchSelector, listSelector, moreMessage, removeMessage) {
+    var search = jq(searchSelector);
+    var list = jq(listSelector);
+
+    search.autocomplete({
+        minLength: 1,
+        delay: 300,
+        source: adminui_locationSearchSource(moreMessage),
+        select: function(event, ui) {
+            if (ui.item.locationId && list.find("input[value=" + ui.item.locationId + "]").length == 0) {
+                var item = jq("<li></li>").text(ui.item.label + " ");
+                item.append(jq('<input type="hidden" name="locationIds"/>').val(ui.item.locationId));
+                item.append(jq('<a href="#"></a>').text(removeMessage).click(function() {
+                    item.remove();
+                    return false;
+                }));
+                list.append(item);
+            }
+            search.val('');
+            return false;
+        }
+    });
+}
+
+function adminui_setLocationTagInBulk(formSelector, messages) {
+    var form = jq(formSelector);
+    var params = {
+        locationTagId: form.find("[name=locationTagId]").val(),
+        add: form.find("[name=add]:checked").val(),
+        locationIds: form.find("[name=locationIds]").map(function() {
+            return this.value;
+        }).get()
+    };
+    var query = jq.trim(form.find("[name=q]").val());
+    if (query) {
+        params.q = query;
+    }
+    var subtreeLocationId = form.find("[name=subtreeLocationId]").val();
+    if (subtreeLocationId) {
+        params.subtreeLocationId = subtreeLocationId;
+    }
+
+    // count the selected locations that would change first so the user can confirm
+    var url = emr.fragmentActionLink("adminui", "location/location", "setLocationTag");
+    jq.post(url, jq.param(jq.extend({ dryRun: true }, params), true), function(dryRun) {
+        if (dryRun.count == 0) {
+            emr.errorMessage(messages.none);
+            return;
+        }
+        if (!confirm(messages.confirm.replace("{0}", dryRun.count))) {
+            return;
+        }
+        jq.post(url, jq.param(params, true), function(result) {
+            emr.successMessage(messages.done.replace("{0}", result.count));
+        }, "json").error(function(xhr) {
+            emr.errorAlert(xhr);
+        });
+    }, "json").error(function(xhr) {
+        emr.errorAlert(xhr);
+    });
+}
+
+// warns, without blocking the save, when other locations are positioned close to the entered one
+function adminui_initNearbyLocationWarning(latitudeSelector, longitudeSelector, warningSelector, locationId, message) {
+    var latitude = jq(latitudeSelector);
+    var longitude = jq(longitudeSelector);
+    var warning = jq(warningSelector);
+
+    var check = function() {
+        var params = { latitude: jq.trim(latitude.val()), longitude: jq.trim(longitude.val()) };
+        if (!params.latitude || !params.longitude || isNaN(params.latitude) || isNaN(params.longitude)) {
+            warning.hide();
+            return;
+        }
+        if (locationId) {
+            params.locationId = locationId;
+        }
+        jq.getJSON(emr.fragmentActionLink("adminui", "location/location", "getNearbyLocations", params), function(result) {
+            if (result.locations.length == 0) {
+                warning.hide();
+                return;
+            }
+            var list = jq("<ul></ul>");
+            jq.each(result.locations, function(i, location) {
+                list.append(jq("<li></li>").text(location.name + " (" + location.distance + " m)"));
+            });
+            warning.empty().append(jq("<p></p>").text(message.replace("{0}", result.distance))).append(list).show();
+        }).error(function() {
+            warning.hide();
+        });
+    };
+
+    latitude.change(check);
+    longitude.change(check);
+    check();
+}
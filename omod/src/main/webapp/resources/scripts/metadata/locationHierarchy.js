@@ -0,0 +1,53 @@
+function adminui_loadLocationHierarchy(selector) {
+    adminui_loadChildLocations(jq(selector), null);
+}
+
+function adminui_loadChildLocations(container, parentId) {
+    var params = parentId ? { parentId: parentId } : {};
+    jq.getJSON(emr.fragmentActionLink("adminui", "location/location", "getChildLocations", params), function(nodes) {
+        var list = jq('<ul class="adminui-location-hierarchy"></ul>');
+        jq.each(nodes, function(i, node) {
+            list.append(adminui_createLocationItem(node));
+        });
+        container.append(list);
+    });
+}
+
+function adminui_createLocationItem(node) {
+    var item = jq('<li></li>');
+    var toggle = jq('<i></i>');
+    if (node.childCount > 0) {
+        toggle.addClass('icon-caret-right').css('cursor', 'pointer').click(function() {
+            var children = item.children('ul');
+            if (children.length) {
+                children.toggle();
+            } else {
+                adminui_loadChildLocations(item, node.locationId);
+            }
+            toggle.toggleClass('icon-caret-right icon-caret-down');
+        });
+    } else {
+        toggle.addClass('icon-angle-right');
+    }
+    var text = node.tags.length ? node.name + ' (' + node.tags.join(', ') + ')' : node.name;
+    var label = jq('<span></span>').text(text);
+    if (node.retired) {
+        label.css('text-decoration', 'line-through');
+    }
+    item.append(toggle).append(' ').append(label);
+    if (node.childCount > 0) {
+        item.append(' ').append(jq('<span></span>').text('(' + node.childCount + ')'));
+    }
+    return item;
+}
+
+function adminui_rebuildLocationPaths(messages) {
+    if (!confirm(messages.confirm)) {
+        return;
+    }
+    jq.post(emr.fragmentActionLink("adminui", "location/location", "rebuildLocationPaths"), function(result) {
+        emr.successMessage(messages.success.replace("{0}", result.count));
+    }, "json").error(function(xhr) {
+        emr.errorAlert(xhr);
+    });
+}
@@ -0,0 +1,145 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.fragment.controller.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.openmrs.Location;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.adminui.location.AdminUiLocationService;
+import org.openmrs.module.adminui.location.LocationNode;
+import org.openmrs.module.adminui.location.LocationVersion;
+import org.openmrs.ui.framework.SimpleObject;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class LocationFragmentControllerTest {
+	
+	private LocationFragmentController controller;
+	
+	private AdminUiLocationService locationService;
+	
+	private LocationVersion locationVersion;
+	
+	@Before
+	public void setup() {
+		mockStatic(Context.class);
+		controller = new LocationFragmentController();
+		locationService = mock(AdminUiLocationService.class);
+		locationVersion = new LocationVersion();
+		when(locationService.getChildLocationNodes(null)).thenReturn(
+		    Arrays.asList(new LocationNode(1, null, "Hospital", false)));
+	}
+	
+	@Test
+	public void getChildLocations_shouldReturnTheChildrenWithTheVersionAsETag() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		List<SimpleObject> children = controller.getChildLocations(null, locationService, locationVersion,
+		    new MockHttpServletRequest(), response);
+		
+		assertEquals(1, children.size());
+		assertEquals("Hospital", children.get(0).get("name"));
+		assertEquals("\"" + locationVersion.getVersion() + "\"", response.getHeader("ETag"));
+	}
+	
+	@Test
+	public void getChildLocations_shouldRespondNotModifiedIfTheClientHasTheCurrentVersion() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("If-None-Match", "\"" + locationVersion.getVersion() + "\"");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		assertNull(controller.getChildLocations(null, locationService, locationVersion, request, response));
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		verify(locationService, never()).getChildLocationNodes(null);
+	}
+	
+	@Test
+	public void getChildLocations_shouldReturnTheChildrenAgainOnceTheVersionChanged() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("If-None-Match", "\"" + locationVersion.getVersion() + "\"");
+		locationVersion.locationsChanged();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		List<SimpleObject> children = controller.getChildLocations(null, locationService, locationVersion, request,
+		    response);
+		
+		assertEquals(1, children.size());
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+	}
+	
+	@Test
+	public void rebuildLocationPaths_shouldRebuildThePathsAndReturnTheNumberOfLocations() throws Exception {
+		when(locationService.rebuildLocationPaths()).thenReturn(4);
+		
+		SimpleObject result = controller.rebuildLocationPaths(locationService);
+		
+		assertEquals(4, result.get("count"));
+		verify(locationService).rebuildLocationPaths();
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void setLocationTag_shouldCountTheUnretiredLocationsOfTheSubtreeThatWouldChangeOnADryRun() throws Exception {
+		when(locationService.loadLocations(Collections.singleton(1))).thenReturn(Arrays.asList(new Location(1)));
+		when(locationService.getDescendantLocationNodes(1)).thenReturn(
+		    Arrays.asList(new LocationNode(2, 1, "Ward", false), new LocationNode(3, 2, "Old Bed", true)));
+		when(locationService.addLocationTag(eq(4), anyCollectionOf(Integer.class), eq(true))).thenReturn(1);
+		
+		SimpleObject result = controller.setLocationTag(4, true, null, 1, true, locationService,
+		    new MockHttpServletRequest());
+		
+		assertEquals(1, result.get("count"));
+		ArgumentCaptor<Collection> locationIds = ArgumentCaptor.forClass(Collection.class);
+		verify(locationService).addLocationTag(eq(4), locationIds.capture(), eq(true));
+		assertEquals(Arrays.asList(1, 2), new ArrayList<Object>(locationIds.getValue()));
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void setLocationTag_shouldLeaveOutTheTopOfTheSubtreeIfItIsRetired() throws Exception {
+		Location retired = new Location(1);
+		retired.setRetired(true);
+		when(locationService.loadLocations(Collections.singleton(1))).thenReturn(Arrays.asList(retired));
+		when(locationService.getDescendantLocationNodes(1)).thenReturn(
+		    Arrays.asList(new LocationNode(2, 1, "Ward", false)));
+		
+		controller.setLocationTag(4, false, null, 1, false, locationService, new MockHttpServletRequest());
+		
+		ArgumentCaptor<Collection> locationIds = ArgumentCaptor.forClass(Collection.class);
+		verify(locationService).removeLocationTag(eq(4), locationIds.capture(), eq(false));
+		assertEquals(Arrays.asList(2), new ArrayList<Object>(locationIds.getValue()));
+	}
+	
+}
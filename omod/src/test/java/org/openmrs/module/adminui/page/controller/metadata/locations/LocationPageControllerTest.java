@@ -0,0 +1,114 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.page.controller.metadata.locations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openmrs.Location;
+import org.openmrs.LocationAttribute;
+import org.openmrs.LocationAttributeType;
+import org.openmrs.customdatatype.CustomDatatype;
+import org.openmrs.customdatatype.CustomDatatypeUtil;
+import org.openmrs.customdatatype.datatype.DateDatatype;
+import org.openmrs.customdatatype.datatype.RegexValidatedTextDatatype;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(CustomDatatypeUtil.class)
+public class LocationPageControllerTest {
+	
+	private LocationPageController controller;
+	
+	private Location location;
+	
+	private BindingResult errors;
+	
+	@Before
+	public void setup() {
+		mockStatic(CustomDatatypeUtil.class);
+		controller = new LocationPageController();
+		location = new Location();
+		errors = new BeanPropertyBindingResult(location, "location");
+	}
+	
+	/**
+	 * @see LocationPageController#bindAttribute(Location, LocationAttributeType, String, BindingResult)
+	 * @verifies bind a valid value as a new attribute
+	 */
+	@Test
+	public void bindAttribute_shouldBindAValidValueAsANewAttribute() throws Exception {
+		LocationAttributeType attributeType = attributeType("Code", regexDatatype("\\d+"));
+		
+		controller.bindAttribute(location, attributeType, "123", errors);
+		
+		assertFalse(errors.hasErrors());
+		List<LocationAttribute> attributes = location.getActiveAttributes(attributeType);
+		assertEquals(1, attributes.size());
+		assertEquals("123", attributes.get(0).getValue());
+	}
+	
+	/**
+	 * @see LocationPageController#bindAttribute(Location, LocationAttributeType, String, BindingResult)
+	 * @verifies reject a value the datatype can't read
+	 */
+	@Test
+	public void bindAttribute_shouldRejectAValueTheDatatypeCantRead() throws Exception {
+		LocationAttributeType attributeType = attributeType("Opened", new DateDatatype());
+		
+		controller.bindAttribute(location, attributeType, "not a date", errors);
+		
+		assertTrue(errors.hasErrors());
+		assertEquals("adminui.location.attribute.invalid", errors.getGlobalError().getCode());
+		assertEquals("Opened", errors.getGlobalError().getArguments()[0]);
+		assertTrue(location.getActiveAttributes(attributeType).isEmpty());
+	}
+	
+	/**
+	 * @see LocationPageController#bindAttribute(Location, LocationAttributeType, String, BindingResult)
+	 * @verifies reject a value the datatype doesn't accept
+	 */
+	@Test
+	public void bindAttribute_shouldRejectAValueTheDatatypeDoesntAccept() throws Exception {
+		LocationAttributeType attributeType = attributeType("Code", regexDatatype("\\d+"));
+		
+		controller.bindAttribute(location, attributeType, "abc", errors);
+		
+		assertTrue(errors.hasErrors());
+		assertEquals("adminui.location.attribute.invalid", errors.getGlobalError().getCode());
+		assertTrue(location.getActiveAttributes(attributeType).isEmpty());
+	}
+	
+	private LocationAttributeType attributeType(String name, CustomDatatype<?> datatype) {
+		LocationAttributeType attributeType = new LocationAttributeType();
+		attributeType.setName(name);
+		attributeType.setMaxOccurs(1);
+		attributeType.setDatatypeClassname(datatype.getClass().getName());
+		when(CustomDatatypeUtil.getDatatype(attributeType)).thenReturn(datatype);
+		return attributeType;
+	}
+	
+	private RegexValidatedTextDatatype regexDatatype(String regex) {
+		RegexValidatedTextDatatype datatype = new RegexValidatedTextDatatype();
+		datatype.setConfiguration(regex);
+		return datatype;
+	}
+}
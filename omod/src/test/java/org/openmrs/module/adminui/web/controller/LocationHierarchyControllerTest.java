@@ -0,0 +1,153 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.adminui.web.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.adminui.location.AdminUiLocationService;
+import org.openmrs.module.adminui.location.LocationHierarchy;
+import org.openmrs.module.adminui.location.LocationNode;
+import org.openmrs.module.adminui.location.LocationVersion;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class LocationHierarchyControllerTest {
+	
+	private LocationHierarchyController controller;
+	
+	private AdminUiLocationService locationService;
+	
+	private LocationVersion locationVersion;
+	
+	private LocationNode hospital;
+	
+	private LocationNode broken;
+	
+	@Before
+	public void setup() {
+		mockStatic(Context.class);
+		locationService = mock(AdminUiLocationService.class);
+		controller = new LocationHierarchyController();
+		ReflectionTestUtils.setField(controller, "locationService", locationService);
+		locationVersion = new LocationVersion();
+		ReflectionTestUtils.setField(controller, "locationVersion", locationVersion);
+		
+		hospital = new LocationNode(1, null, "Hospital", false);
+		hospital.getChildren().add(new LocationNode(2, 1, "Ward", false));
+		broken = mock(LocationNode.class);
+		when(broken.getName()).thenThrow(new IllegalStateException("broken node"));
+	}
+	
+	@Test
+	public void getHierarchy_shouldWriteTheTree() throws Exception {
+		whenTheRootsAre(hospital);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		controller.getHierarchy(new MockHttpServletRequest(), response);
+		
+		assertEquals(200, response.getStatus());
+		assertEquals("[{\"Location\":\"Hospital\",\"children\":[{\"Location\":\"Ward\"}]}]", response
+		        .getContentAsString());
+		assertEquals(locationVersion.getETag(), response.getHeader("ETag"));
+		assertEquals("no-cache", response.getHeader("Cache-Control"));
+	}
+	
+	@Test
+	public void getHierarchy_shouldReturnNotModifiedWithoutLoadingTheTreeIfTheETagIsCurrent() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("If-None-Match", locationVersion.getETag());
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		controller.getHierarchy(request, response);
+		
+		assertEquals(304, response.getStatus());
+		assertEquals("", response.getContentAsString());
+		verify(locationService, never()).getLocationHierarchy();
+	}
+	
+	@Test
+	public void getHierarchy_shouldWriteTheTreeIfTheETagIsOutdated() throws Exception {
+		whenTheRootsAre(hospital);
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("If-None-Match", locationVersion.getETag());
+		locationVersion.locationsChanged();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		controller.getHierarchy(request, response);
+		
+		assertEquals(200, response.getStatus());
+		assertEquals(locationVersion.getETag(), response.getHeader("ETag"));
+	}
+	
+	@Test
+	public void getHierarchy_shouldNotWriteAnythingIfTheTreeCannotBeLoaded() throws Exception {
+		when(locationService.getLocationHierarchy()).thenThrow(new APIException("database down"));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		try {
+			controller.getHierarchy(new MockHttpServletRequest(), response);
+			fail();
+		}
+		catch (APIException e) {
+			assertEquals("", response.getContentAsString());
+		}
+	}
+	
+	@Test
+	public void getHierarchy_shouldResetTheResponseIfWritingFailsBeforeItIsCommitted() throws Exception {
+		whenTheRootsAre(hospital, broken);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		try {
+			controller.getHierarchy(new MockHttpServletRequest(), response);
+			fail();
+		}
+		catch (IllegalStateException e) {
+			assertEquals("", response.getContentAsString());
+		}
+	}
+	
+	@Test
+	public void getHierarchy_shouldEndTheTreeWithAnErrorIfWritingFailsAfterItIsCommitted() throws Exception {
+		whenTheRootsAre(hospital, broken);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		response.setCommitted(true);
+		
+		controller.getHierarchy(new MockHttpServletRequest(), response);
+		
+		assertEquals("[{\"Location\":\"Hospital\",\"children\":[{\"Location\":\"Ward\"}]},{\"error\":\"broken node\"}]",
+		    response.getContentAsString());
+	}
+	
+	private void whenTheRootsAre(LocationNode... roots) {
+		LocationHierarchy hierarchy = mock(LocationHierarchy.class);
+		when(hierarchy.getRoots()).thenReturn(Arrays.asList(roots));
+		when(locationService.getLocationHierarchy()).thenReturn(hierarchy);
+	}
+	
+}